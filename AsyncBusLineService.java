@@ -0,0 +1,255 @@
+package edu.virginia.sde.hw5;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A non-blocking front for BusLineService. Every call runs as its own task on a per-task executor (virtual threads
+ * where the JDK has them) and returns a CompletableFuture. Calls that touch the database (writes, refresh, and
+ * reads before the first snapshot is loaded) first take one of a fixed number of permits, so a burst of requests
+ * queues cheaply instead of piling onto the database. Each future fails with a TimeoutException once its timeout
+ * passes. Cancelling it, or timing out, interrupts the task: a call still waiting for a permit gives up at once,
+ * while a query that has already started finishes and its result is dropped. Database failures complete the
+ * future with the SQLException itself rather than a RuntimeException around it.
+ */
+public class AsyncBusLineService implements AutoCloseable {
+    public static final int DEFAULT_MAX_CONCURRENT_DATABASE_CALLS = 4;
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+
+    private final BusLineService busLineService;
+    private final ExecutorService executor;
+    private final Semaphore databasePermits;
+    private final int maxConcurrentDatabaseCalls;
+    private final Duration timeout;
+    private final boolean ownsExecutor;
+
+    public AsyncBusLineService(BusLineService busLineService, int maxConcurrentDatabaseCalls, Duration timeout) {
+        this(busLineService, newPermits(maxConcurrentDatabaseCalls), maxConcurrentDatabaseCalls,
+                requirePositive(timeout), TaskExecutors.newPerTaskExecutor("bus-line-service"), true);
+    }
+
+    public AsyncBusLineService(BusLineService busLineService) {
+        this(busLineService, DEFAULT_MAX_CONCURRENT_DATABASE_CALLS, DEFAULT_TIMEOUT);
+    }
+
+    private AsyncBusLineService(BusLineService busLineService, Semaphore databasePermits,
+                                int maxConcurrentDatabaseCalls, Duration timeout, ExecutorService executor,
+                                boolean ownsExecutor) {
+        this.busLineService = busLineService;
+        this.executor = executor;
+        this.databasePermits = databasePermits;
+        this.maxConcurrentDatabaseCalls = maxConcurrentDatabaseCalls;
+        this.timeout = timeout;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    private static Semaphore newPermits(int maxConcurrentDatabaseCalls) {
+        if (maxConcurrentDatabaseCalls < 1) {
+            throw new IllegalArgumentException("maxConcurrentDatabaseCalls must be positive: "
+                    + maxConcurrentDatabaseCalls);
+        }
+        return new Semaphore(maxConcurrentDatabaseCalls, true);
+    }
+
+    private static Duration requirePositive(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout must be positive: " + timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * Returns a view of this service whose calls time out after timeout instead. The view shares this service's
+     * executor and database permits, and closing it does nothing.
+     */
+    public AsyncBusLineService withTimeout(Duration timeout) {
+        return new AsyncBusLineService(busLineService, databasePermits, maxConcurrentDatabaseCalls,
+                requirePositive(timeout), executor, false);
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public int getMaxConcurrentDatabaseCalls() {
+        return maxConcurrentDatabaseCalls;
+    }
+
+    /**
+     * The number of calls currently holding a database permit
+     */
+    public int getActiveDatabaseCalls() {
+        return maxConcurrentDatabaseCalls - databasePermits.availablePermits();
+    }
+
+    public CompletableFuture<Void> addStops(List<Stop> stops) {
+        return submitDatabaseWork(() -> {
+            busLineService.addStops(stops);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> addBusLines(List<BusLine> busLines) {
+        return submitDatabaseWork(() -> {
+            busLineService.addBusLines(busLines);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> refresh() {
+        return submitDatabaseWork(() -> {
+            busLineService.refresh();
+            return null;
+        });
+    }
+
+    public CompletableFuture<TransitNetwork> getNetwork() {
+        return submitRead(busLineService::getNetwork);
+    }
+
+    public CompletableFuture<List<BusLine>> getBusLines() {
+        return submitRead(busLineService::getBusLines);
+    }
+
+    public CompletableFuture<List<Stop>> getStops() {
+        return submitRead(busLineService::getStops);
+    }
+
+    public CompletableFuture<Optional<Stop>> getStopById(int stopId) {
+        return submitRead(() -> busLineService.getStopById(stopId));
+    }
+
+    public CompletableFuture<Optional<BusLine>> getBusLineById(int busLineId) {
+        return submitRead(() -> busLineService.getBusLineById(busLineId));
+    }
+
+    public CompletableFuture<Optional<BusLine>> getBusLineByShortName(String shortName) {
+        return submitRead(() -> busLineService.getBusLineByShortName(shortName));
+    }
+
+    public CompletableFuture<Optional<BusLine>> getBusLineByLongName(String longName) {
+        return submitRead(() -> busLineService.getBusLineByLongName(longName));
+    }
+
+    public CompletableFuture<List<BusLine>> getBusLinesByStop(Stop stop) {
+        return submitRead(() -> busLineService.getBusLinesByStop(stop));
+    }
+
+    public CompletableFuture<Route> getRoute(BusLine busLine) {
+        return submitRead(() -> busLineService.getRoute(busLine));
+    }
+
+    /**
+     * @see BusLineService#getClosestStop(double, double)
+     */
+    public CompletableFuture<Stop> getClosestStop(double latitude, double longitude) {
+        return submitRead(() -> busLineService.getClosestStop(latitude, longitude));
+    }
+
+    public CompletableFuture<List<Stop>> getKNearestStops(double latitude, double longitude, int k) {
+        return submitRead(() -> busLineService.getKNearestStops(latitude, longitude, k));
+    }
+
+    public CompletableFuture<List<Stop>> getStopsWithinRadius(double latitude, double longitude, double radius) {
+        return submitRead(() -> busLineService.getStopsWithinRadius(latitude, longitude, radius));
+    }
+
+    public CompletableFuture<List<Stop>> getStopsWithinBox(double minLatitude, double minLongitude,
+                                                          double maxLatitude, double maxLongitude) {
+        return submitRead(() -> busLineService.getStopsWithinBox(minLatitude, minLongitude,
+                maxLatitude, maxLongitude));
+    }
+
+    /**
+     * @see BusLineService#getRecommendedBusLine(Stop, Stop)
+     */
+    public CompletableFuture<Optional<BusLine>> getRecommendedBusLine(Stop source, Stop destination) {
+        return submitRead(() -> busLineService.getRecommendedBusLine(source, destination));
+    }
+
+    /**
+     * @see BusLineService#getJourneys(Stop, Stop, int)
+     */
+    public CompletableFuture<List<Journey>> getJourneys(Stop source, Stop destination, int maxTransfers) {
+        return submitRead(() -> busLineService.getJourneys(source, destination, maxTransfers));
+    }
+
+    /**
+     * Stop accepting calls and interrupt the running ones. Views made by withTimeout() leave the executor alone.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads are served from the snapshot and only need a permit while it has not been loaded yet
+     */
+    private <T> CompletableFuture<T> submitRead(Call<T> call) {
+        return submit(call, !busLineService.isNetworkLoaded());
+    }
+
+    private <T> CompletableFuture<T> submitDatabaseWork(Call<T> call) {
+        return submit(call, true);
+    }
+
+    private <T> CompletableFuture<T> submit(Call<T> call, boolean needsDatabase) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> run(call, needsDatabase, result));
+        result.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((value, failure) -> {
+            if (failure != null) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * The permit is released before result completes, so anything that runs once the call is seen to finish,
+     * including stages chained on result, can take it straight away
+     */
+    private <T> void run(Call<T> call, boolean needsDatabase, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        T value;
+        try {
+            value = needsDatabase ? callWithPermit(call) : call.call();
+        } catch (InterruptedException e) {
+            result.completeExceptionally(new CancellationException("Interrupted while waiting for the database"));
+            return;
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e.getCause() instanceof SQLException ? e.getCause() : e);
+            return;
+        } catch (Error e) {
+            result.completeExceptionally(e);
+            throw e;
+        }
+        result.complete(value);
+    }
+
+    private <T> T callWithPermit(Call<T> call) throws InterruptedException {
+        databasePermits.acquire();
+        try {
+            return call.call();
+        } finally {
+            databasePermits.release();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call();
+    }
+}
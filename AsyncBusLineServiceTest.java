@@ -0,0 +1,132 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncBusLineServiceTest {
+    @Mock
+    private BusLineService busLineService;
+
+    private AsyncBusLineService asyncService;
+
+    @BeforeEach
+    void setup() {
+        asyncService = new AsyncBusLineService(busLineService, 1, Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncService.close();
+    }
+
+    @Test
+    void getClosestStop_completesWithResult() throws Exception {
+        Stop stop = new Stop(1, "Rotunda", 38.0356, -78.5034);
+        when(busLineService.isNetworkLoaded()).thenReturn(true);
+        when(busLineService.getClosestStop(38.0, -78.5)).thenReturn(stop);
+
+        assertEquals(stop, asyncService.getClosestStop(38.0, -78.5).get(5, TimeUnit.SECONDS));
+        assertEquals(0, asyncService.getActiveDatabaseCalls());
+    }
+
+    @Test
+    void addStops_databaseFailure_completesWithSQLException() {
+        SQLException failure = new SQLException("disk I/O error");
+        doThrow(new RuntimeException(failure)).when(busLineService).addStops(List.of());
+
+        ExecutionException thrown = assertThrows(ExecutionException.class,
+                () -> asyncService.addStops(List.of()).get(5, TimeUnit.SECONDS));
+        assertSame(failure, thrown.getCause());
+    }
+
+    @Test
+    void databaseCalls_boundedByPermits() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(busLineService).refresh();
+
+        CompletableFuture<Void> first = asyncService.refresh();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> second = asyncService.addStops(List.of());
+        Thread.sleep(100);
+        assertFalse(second.isDone());
+        assertEquals(1, asyncService.getActiveDatabaseCalls());
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(0, asyncService.getActiveDatabaseCalls());
+    }
+
+    @Test
+    void withTimeout_slowCall_timesOutAndInterruptsTask() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        }).when(busLineService).refresh();
+
+        CompletableFuture<Void> refresh = asyncService.withTimeout(Duration.ofMillis(50)).refresh();
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> refresh.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, thrown.getCause());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancel_whileWaitingForPermit_doesNotRunCall() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(busLineService).refresh();
+
+        CompletableFuture<Void> first = asyncService.refresh();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> waiting = asyncService.addStops(List.of());
+        assertTrue(waiting.cancel(true));
+        assertThrows(CancellationException.class, waiting::join);
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(0, asyncService.getActiveDatabaseCalls());
+    }
+
+    @Test
+    void constructor_invalidArguments_throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AsyncBusLineService(busLineService, 0, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new AsyncBusLineService(busLineService, 1, Duration.ZERO));
+    }
+}
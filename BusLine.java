@@ -1,11 +1,19 @@
 package edu.virginia.sde.hw5;
 
+/**
+ * A bus line and its Route. Lines read from the database without their Routes load them on the first call to
+ * getRoute(), together with every other line from the same query (see RouteBatch). Read-only lines, which a
+ * TransitNetwork shares with every reader, throw UnsupportedOperationException from their setters.
+ */
 public class BusLine {
     private int id;
     private boolean isActive;
     private String longName;
     private String shortName;
     private Route route;
+    /* The batch that will load route, or null once route is set */
+    private volatile RouteBatch routeBatch;
+    private boolean readOnly;
 
     public BusLine(int id, boolean isActive, String longName, String shortName, Route route) {
         this.id = id;
@@ -19,13 +27,34 @@ public class BusLine {
         this(id, isActive, longName, shortName, new Route());
     }
 
+    BusLine(int id, boolean isActive, String longName, String shortName, RouteBatch routeBatch) {
+        this(id, isActive, longName, shortName, (Route) null);
+        this.routeBatch = routeBatch;
+    }
+
     public BusLine() { }
 
+    /**
+     * Creates a line whose fields cannot be set. Its Route should be read-only too, e.g. over an unmodifiable list.
+     */
+    static BusLine readOnly(int id, boolean isActive, String longName, String shortName, Route route) {
+        BusLine busLine = new BusLine(id, isActive, longName, shortName, route);
+        busLine.readOnly = true;
+        return busLine;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Bus line " + id + " is read-only");
+        }
+    }
+
     public int getId() {
         return id;
     }
 
     public void setId(int id) {
+        checkWritable();
         this.id = id;
     }
 
@@ -34,6 +63,7 @@ public class BusLine {
     }
 
     public void setActive(boolean active) {
+        checkWritable();
         isActive = active;
     }
 
@@ -42,6 +72,7 @@ public class BusLine {
     }
 
     public void setLongName(String longName) {
+        checkWritable();
         this.longName = longName;
     }
 
@@ -50,19 +81,48 @@ public class BusLine {
     }
 
     public void setShortName(String shortName) {
+        checkWritable();
         this.shortName = shortName;
     }
 
+    /**
+     * Returns the Route, loading it first if this line was read from the database without it
+     *
+     * @throws RuntimeException if the Route had to be loaded and the database could not be read
+     */
     public Route getRoute() {
+        RouteBatch batch = routeBatch;
+        if (batch != null) {
+            batch.load();
+        }
         return route;
     }
 
     public void setRoute(Route route) {
+        checkWritable();
         this.route = route;
+        routeBatch = null;
+    }
+
+    /**
+     * Set the Route loaded by batch, unless setRoute() has replaced it since
+     */
+    void setLoadedRoute(RouteBatch batch, Route route) {
+        if (routeBatch == batch) {
+            this.route = route;
+            routeBatch = null;
+        }
+    }
+
+    /**
+     * Whether getRoute() can return without querying the database
+     */
+    public boolean isRouteLoaded() {
+        return routeBatch == null;
     }
 
     public void addStopToRoute(Stop stop) {
-        route.add(stop);
+        getRoute().add(stop);
     }
 
     @Override
@@ -86,7 +146,7 @@ public class BusLine {
                 "id=" + id +
                 ", isActive=" + isActive +
                 ", longName='" + longName + '\'' +
-                ", route=" + route +
+                ", route=" + (isRouteLoaded() ? route : "<not loaded>") +
                 '}';
     }
 }
@@ -1,69 +1,133 @@
 package edu.virginia.sde.hw5;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class BusLineReader {
     private final URL busLinesApiUrl;
-    private final URL busStopsApiUrl;
+
+    private final HttpResponseCache responseCache;
 
     /* You'll need this to get the Stop objects when building the Routes object */
     private final StopReader stopReader;
+
+    /* When set, stops, routes and lines come from this shared fetcher instead of requests made by this reader */
+    private final TransitFeedFetcher feedFetcher;
+
+    private Map<Integer, List<Integer>> unknownStopIds = Collections.emptyMap();
     /**
      * Returns a list of BusLine objects. This is a "deep" list, meaning all the BusLine objects
      * already have their Route objects fully populated with that line's Stops.
      */
 
     public BusLineReader(Configuration configuration) {
-        this.busStopsApiUrl = configuration.getBusStopsURL();
         this.busLinesApiUrl = configuration.getBusLinesURL();
+        this.responseCache = configuration.getResponseCache();
         stopReader = new StopReader(configuration);
+        feedFetcher = null;
+    }
+
+    /**
+     * Creates a reader that builds its BusLines from the fetcher's shared results, so it makes no requests of its
+     * own and other readers on the same fetcher do not repeat them.
+     */
+    public BusLineReader(Configuration configuration, TransitFeedFetcher feedFetcher) {
+        this.busLinesApiUrl = configuration.getBusLinesURL();
+        this.responseCache = configuration.getResponseCache();
+        stopReader = new StopReader(feedFetcher);
+        this.feedFetcher = feedFetcher;
     }
 
     /**
      * This method returns the BusLines from the API service, including their
-     * complete Routes.
+     * complete Routes. Routes and stops are joined on their ids through hash lookups, so building the lines is
+     * linear in the size of the feeds. Route stop ids that do not match any stop are left out of the Route and
+     * reported through getUnknownStopIds().
      */
     public List<BusLine> getBusLines() {
-        WebServiceReader webLineServiceReader = new WebServiceReader(busLinesApiUrl);
-        JSONObject jsonLineRoot = webLineServiceReader.getJSONObject();
-        WebServiceReader webStopServiceReader = new WebServiceReader(busStopsApiUrl);
-        JSONObject jsonStopRoot = webStopServiceReader.getJSONObject();
         List<BusLine> busList = new ArrayList<>();
-        JSONArray lineArray = jsonLineRoot.getJSONArray("lines");
-        List<Stop> stopList = stopReader.getStops();
-        JSONArray routeArray = jsonStopRoot.getJSONArray("routes");
-        for(Object busLine : lineArray){
-            if(busLine instanceof JSONObject lines){
-                int id = lines.getInt("id");
-                boolean isActive = lines.getBoolean("is_active");
-                String long_name = lines.getString("long_name");
-                String short_name = lines.getString("short_name");
-                Route busRoute = new Route();
-                for(Object route: routeArray){
-                    if(route instanceof JSONObject routes){
-                        if(id == routes.getInt("id")){
-                            JSONArray stopArray = routes.getJSONArray("stops");
-                            for(Object stopPoint: stopArray){
-                                for(Stop s: stopList){
-                                    if(s.getId()==(int)stopPoint){
-                                        busRoute.add(s);
-                                        break;
-                                    }
-                                }
-                            }
-                            break;
-                        }
-                    }
-                }
-                busList.add(new BusLine(id, isActive, long_name, short_name, busRoute));
+        forEachBusLine(busList::add);
+        return busList;
+    }
+
+    /**
+     * Stream the BusLines from the API service, including their complete Routes. The stops and routes are read
+     * first, in one request, since every line needs them. The lines are then parsed one at a time off the
+     * connection, and each is handed to consumer as soon as its Route is built.
+     */
+    public void forEachBusLine(Consumer<BusLine> consumer) {
+        Map<Integer, List<Integer>> unknownStops = new LinkedHashMap<>();
+        if (feedFetcher != null) {
+            StopIdentityMap stopsById = indexStops(feedFetcher.getStops());
+            Map<Integer, int[]> routeStopIdsByLineId = feedFetcher.getRouteStopIds();
+            for (BusLine lineRecord : feedFetcher.getLineRecords()) {
+                consumer.accept(withRoute(lineRecord, stopsById, routeStopIdsByLineId, unknownStops));
             }
+        } else {
+            List<Stop> stops = new ArrayList<>();
+            Map<Integer, int[]> routeStopIdsByLineId = new HashMap<>();
+            stopReader.forEachStopAndRoute(stops::add, routeStopIdsByLineId::putIfAbsent);
+            StopIdentityMap stopsById = indexStops(stops);
+            WebServiceReader webLineServiceReader = new WebServiceReader(busLinesApiUrl, responseCache);
+            webLineServiceReader.streamArrays(Map.of("lines", lines -> consumer.accept(
+                    withRoute(toBusLine(lines), stopsById, routeStopIdsByLineId, unknownStops))));
         }
+        unknownStopIds = Collections.unmodifiableMap(unknownStops);
+    }
 
-        return busList;
+    /**
+     * Parse one element of the "lines" array into a BusLine with an empty Route
+     */
+    static BusLine toBusLine(JSONObject lines) {
+        int id = lines.getInt("id");
+        boolean isActive = lines.getBoolean("is_active");
+        String long_name = lines.getString("long_name");
+        String short_name = lines.getString("short_name");
+        return new BusLine(id, isActive, long_name, short_name);
+    }
+
+    /**
+     * Every Route resolves its stop ids through one identity map, so all the lines that visit a stop share the
+     * first Stop read with its id
+     */
+    private static StopIdentityMap indexStops(List<Stop> stops) {
+        StopIdentityMap stopsById = new StopIdentityMap();
+        stopsById.internAll(stops);
+        return stopsById;
+    }
+
+    /**
+     * Copy lineRecord with its Route resolved from the route's stop ids, recording stop ids that match no stop
+     */
+    private static BusLine withRoute(BusLine lineRecord, StopIdentityMap stopsById,
+                                     Map<Integer, int[]> routeStopIdsByLineId,
+                                     Map<Integer, List<Integer>> unknownStops) {
+        int id = lineRecord.getId();
+        Route busRoute = new Route();
+        for (int stopId : routeStopIdsByLineId.getOrDefault(id, new int[0])) {
+            Stop stop = stopsById.get(stopId);
+            if (stop != null) {
+                busRoute.add(stop);
+            } else {
+                unknownStops.computeIfAbsent(id, lineId -> new ArrayList<>()).add(stopId);
+            }
+        }
+        return new BusLine(id, lineRecord.isActive(), lineRecord.getLongName(), lineRecord.getShortName(), busRoute);
+    }
+
+    /**
+     * Returns the route stop ids from the last call to getBusLines() that did not match any stop, keyed by
+     * BusLine id. The map is empty if every route stop was found.
+     */
+    public Map<Integer, List<Integer>> getUnknownStopIds() {
+        return unknownStopIds;
     }
 }
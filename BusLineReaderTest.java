@@ -0,0 +1,92 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BusLineReaderTest {
+    private static final String STOPS_BODY = "{\"stops\": [" +
+            "{\"id\": 1, \"name\": \"Rice Hall\", \"position\": [38.0316, -78.5108]}, " +
+            "{\"id\": 2, \"name\": \"Rice St\", \"position\": [38.0330, -78.5100]}, " +
+            "{\"id\": 3, \"name\": \"Emmet St @ Ivy Rd\", \"position\": [38.0345, -78.5006]}], " +
+            "\"routes\": [" +
+            "{\"id\": 7, \"stops\": [3, 1, 2]}, " +
+            "{\"id\": 8, \"stops\": [1, 2, 3, 2, 1]}, " +
+            "{\"id\": 9, \"stops\": [2, 99, 3, 98]}]}";
+    private static final String LINES_BODY = "{\"lines\": [" +
+            "{\"id\": 7, \"is_active\": true, \"long_name\": \"Line Seven\", \"short_name\": \"L7\"}, " +
+            "{\"id\": 8, \"is_active\": true, \"long_name\": \"Loop Line\", \"short_name\": \"LL\"}, " +
+            "{\"id\": 9, \"is_active\": false, \"long_name\": \"Line Nine\", \"short_name\": \"L9\"}]}";
+
+    @TempDir
+    Path feedDirectory;
+
+    private Configuration configuration;
+
+    @BeforeEach
+    void setup() throws IOException {
+        Path stopsFile = Files.writeString(feedDirectory.resolve("stops.json"), STOPS_BODY);
+        Path linesFile = Files.writeString(feedDirectory.resolve("lines.json"), LINES_BODY);
+        configuration = new Configuration(stopsFile.toUri().toURL(), linesFile.toUri().toURL(), null);
+    }
+
+    private static BusLine busLine(List<BusLine> busLines, int id) {
+        return busLines.stream().filter(busLine -> busLine.getId() == id).findFirst().orElseThrow();
+    }
+
+    private static List<Integer> routeIds(BusLine busLine) {
+        return busLine.getRoute().getStops().stream().map(Stop::getId).toList();
+    }
+
+    @Test
+    void getBusLines_keepsRouteStopOrder() {
+        List<BusLine> busLines = new BusLineReader(configuration).getBusLines();
+
+        assertEquals(3, busLines.size());
+        BusLine lineSeven = busLine(busLines, 7);
+        assertEquals("Line Seven", lineSeven.getLongName());
+        assertEquals("L7", lineSeven.getShortName());
+        assertEquals(List.of(3, 1, 2), routeIds(lineSeven));
+    }
+
+    @Test
+    void getBusLines_repeatedStop_keptAtEachVisit() {
+        BusLine loopLine = busLine(new BusLineReader(configuration).getBusLines(), 8);
+
+        assertEquals(List.of(1, 2, 3, 2, 1), routeIds(loopLine));
+        assertSame(loopLine.getRoute().get(1), loopLine.getRoute().get(3));
+    }
+
+    @Test
+    void getUnknownStopIds_reportsStopsMissingFromRoutes() {
+        BusLineReader busLineReader = new BusLineReader(configuration);
+        BusLine lineNine = busLine(busLineReader.getBusLines(), 9);
+
+        assertFalse(lineNine.isActive());
+        assertEquals(List.of(2, 3), routeIds(lineNine));
+        assertEquals(Map.of(9, List.of(99, 98)), busLineReader.getUnknownStopIds());
+    }
+
+    @Test
+    void getBusLines_fromFeedFetcher_matchesDirectRead() {
+        List<BusLine> direct = new BusLineReader(configuration).getBusLines();
+        try (TransitFeedFetcher feedFetcher = new TransitFeedFetcher(configuration)) {
+            feedFetcher.start();
+            BusLineReader busLineReader = new BusLineReader(configuration, feedFetcher);
+            List<BusLine> fetched = busLineReader.getBusLines();
+
+            for (int id : List.of(7, 8, 9)) {
+                assertEquals(routeIds(busLine(direct, id)), routeIds(busLine(fetched, id)));
+            }
+            assertEquals(Map.of(9, List.of(99, 98)), busLineReader.getUnknownStopIds());
+        }
+    }
+}
@@ -1,123 +1,456 @@
 package edu.virginia.sde.hw5;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.*;
 
+/**
+ * Reads are served from an in-memory TransitNetwork snapshot that is loaded from the database on first use.
+ * Writes go to the database first and then atomically swap in a new snapshot, so readers never block and never
+ * see a half-applied write. Writes, snapshot loads and the spatial, ranking and planning queries are timed in
+ * getMetrics(); the map lookups behind the other reads are not worth the two clock reads.
+ * <p>
+ * Given a snapshot file path, the first load maps a NetworkSnapshotFile instead of querying the database when the
+ * file exists and was written at the database's current data generation, and every write and refresh() rewrites
+ * it. The file is only a cache: a file that is stale, unreadable or corrupt, and failures to write one, are
+ * recorded under readSnapshotFile and writeSnapshotFile in getMetrics() and fall back to the database.
+ */
 public class BusLineService {
     private final DatabaseDriver databaseDriver;
+    private final Path snapshotPath;
+    private volatile TransitNetwork network;
+    /* The database's data generation as of network, guarded by this */
+    private int generation;
+    private final Metrics metrics = new Metrics();
 
     public BusLineService(DatabaseDriver databaseDriver) {
+        this(databaseDriver, null);
+    }
+
+    /**
+     * Creates a service that starts from, and keeps up to date, the NetworkSnapshotFile at snapshotPath. Other
+     * writers to the database must advance its data generation (as DatabaseSynchronizer does), or the file is not
+     * recognised as stale.
+     */
+    public BusLineService(DatabaseDriver databaseDriver, Path snapshotPath) {
         this.databaseDriver = databaseDriver;
+        this.snapshotPath = snapshotPath;
+    }
+
+    /**
+     * Creates a service whose calls lease long-lived connections from the pool instead of opening the database
+     * file on every call.
+     */
+    public BusLineService(ConnectionPool connectionPool) {
+        this(new DatabaseDriver(connectionPool));
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
     }
 
-    public void addStops(List<Stop> stops) {
+    /**
+     * Add and commit stops, then publish a snapshot that includes them
+     */
+    public synchronized void addStops(List<Stop> stops) {
+        OperationMetrics operation = metrics.operation("addStops");
+        long started = System.nanoTime();
         try {
-            databaseDriver.connect();
-            databaseDriver.addStops(stops);
-            databaseDriver.disconnect();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            generation = withConnection(databaseDriver -> {
+                databaseDriver.addStops(stops);
+                int next = databaseDriver.advanceDataGeneration();
+                databaseDriver.commit();
+                return next;
+            });
+            TransitNetwork current = network;
+            if (current != null) {
+                network = current.withStops(stops);
+            }
+            saveSnapshotFile(network);
+            operation.recordSuccess(started, 0, stops.size());
+        } catch (RuntimeException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
     }
 
-    public void addBusLines(List<BusLine> busLines) {
+    /**
+     * Add and commit bus lines with their routes, then publish a snapshot that includes them
+     */
+    public synchronized void addBusLines(List<BusLine> busLines) {
+        OperationMetrics operation = metrics.operation("addBusLines");
+        long started = System.nanoTime();
         try {
-            databaseDriver.connect();
-            databaseDriver.addBusLines(busLines);
-            databaseDriver.disconnect();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            generation = withConnection(databaseDriver -> {
+                databaseDriver.addBusLines(busLines);
+                int next = databaseDriver.advanceDataGeneration();
+                databaseDriver.commit();
+                return next;
+            });
+            TransitNetwork current = network;
+            if (current != null) {
+                network = current.withBusLines(busLines);
+            }
+            saveSnapshotFile(network);
+            operation.recordSuccess(started, 0, busLines.size());
+        } catch (RuntimeException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
     }
 
-    public List<BusLine> getBusLines() {
+    /**
+     * Returns the current snapshot, loading it from the snapshot file or the database if this is the first read
+     */
+    public TransitNetwork getNetwork() {
+        TransitNetwork current = network;
+        if (current == null) {
+            synchronized (this) {
+                current = network;
+                if (current == null) {
+                    current = loadSnapshotFile();
+                    if (current == null) {
+                        current = loadNetwork();
+                        saveSnapshotFile(current);
+                    }
+                    network = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Whether a snapshot has been loaded, so reads will not touch the database
+     */
+    public boolean isNetworkLoaded() {
+        return network != null;
+    }
+
+    /**
+     * Reload the snapshot from the database, for when the database was changed outside this service
+     */
+    public synchronized void refresh() {
+        network = loadNetwork();
+        saveSnapshotFile(network);
+    }
+
+    private TransitNetwork loadNetwork() {
+        OperationMetrics operation = metrics.operation("loadNetwork");
+        long started = System.nanoTime();
         try {
-            databaseDriver.connect();
-            var busLines = databaseDriver.getBusLines();
-            databaseDriver.disconnect();
-            return busLines;
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            TransitNetwork loaded = withConnection(databaseDriver -> {
+                generation = databaseDriver.getDataGeneration();
+                return TransitNetwork.load(databaseDriver);
+            });
+            operation.recordSuccess(started, loaded.getStops().size() + loaded.getBusLines().size(), 0);
+            return loaded;
+        } catch (RuntimeException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
     }
 
-    public List<Stop> getStops() {
+    /**
+     * Returns the network in the snapshot file, or null if there is no usable file. Checking that the file is
+     * current costs one read of the database's data generation.
+     */
+    private TransitNetwork loadSnapshotFile() {
+        if (snapshotPath == null || !Files.exists(snapshotPath)) {
+            return null;
+        }
+        OperationMetrics operation = metrics.operation("readSnapshotFile");
+        long started = System.nanoTime();
         try {
-            databaseDriver.connect();
-            var stops = databaseDriver.getAllStops();
-            databaseDriver.disconnect();
-            return stops;
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            NetworkSnapshotFile snapshotFile = NetworkSnapshotFile.open(snapshotPath);
+            int databaseGeneration = withConnection(DatabaseDriver::getDataGeneration);
+            if (snapshotFile.getGeneration() != databaseGeneration) {
+                throw new IOException("Stale network snapshot at generation " + snapshotFile.getGeneration()
+                        + ", database is at " + databaseGeneration + ": " + snapshotPath);
+            }
+            TransitNetwork loaded = snapshotFile.toTransitNetwork();
+            generation = databaseGeneration;
+            operation.recordSuccess(started, loaded.getStops().size() + loaded.getBusLines().size(), 0);
+            return loaded;
+        } catch (IOException | RuntimeException e) {
+            //a corrupt body shows up as an out-of-range offset or row while the network is built
+            operation.recordFailure(started, e);
+            return null;
         }
     }
 
-    public Route getRoute(BusLine busLine) {
+    /**
+     * Rewrite the snapshot file from current, or delete it when no snapshot is loaded, so that it never lags the
+     * database
+     */
+    private void saveSnapshotFile(TransitNetwork current) {
+        if (snapshotPath == null) {
+            return;
+        }
+        OperationMetrics operation = metrics.operation("writeSnapshotFile");
+        long started = System.nanoTime();
         try {
-            databaseDriver.connect();
-            var stops = databaseDriver.getRouteForBusLine(busLine);
-            databaseDriver.disconnect();
-            return stops;
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            if (current == null) {
+                Files.deleteIfExists(snapshotPath);
+                operation.recordSuccess(started, 0, 0);
+            } else {
+                NetworkSnapshotFile.write(snapshotPath, current, generation);
+                operation.recordSuccess(started, 0, current.getStops().size() + current.getBusLines().size());
+            }
+        } catch (IOException e) {
+            operation.recordFailure(started, e);
         }
     }
 
+    /**
+     * Return every BusLine with its complete Route
+     */
+    public List<BusLine> getBusLines() {
+        return getNetwork().getBusLines();
+    }
+
+    /**
+     * Return every BusLine with its complete Route. This is the same as getBusLines(), since the snapshot always
+     * holds complete Routes.
+     */
+    public List<BusLine> getBusLinesWithRoutes() {
+        return getNetwork().getBusLines();
+    }
+
+    public List<Stop> getStops() {
+        return getNetwork().getStops();
+    }
+
+    public Optional<Stop> getStopById(int stopId) {
+        return getNetwork().getStopById(stopId);
+    }
+
+    public Optional<BusLine> getBusLineById(int busLineId) {
+        return getNetwork().getBusLineById(busLineId);
+    }
+
+    public Optional<BusLine> getBusLineByShortName(String shortName) {
+        return getNetwork().getBusLineByShortName(shortName);
+    }
+
+    public Optional<BusLine> getBusLineByLongName(String longName) {
+        return getNetwork().getBusLineByLongName(longName);
+    }
+
+    public List<BusLine> getBusLinesByStop(Stop stop) {
+        return getNetwork().getBusLinesByStop(stop);
+    }
+
+    /**
+     * Returns a BusLine's route, or an empty Route if the line is not in the database
+     */
+    public Route getRoute(BusLine busLine) {
+        return getNetwork().getRoute(busLine).orElseGet(Route::new);
+    }
+
     /**
      * Return the closest stop to a given coordinate (using Euclidean distance, not great circle distance)
      * @param latitude - North/South coordinate (positive is North, Negative is South) in degrees
      * @param longitude - East/West coordinate (negative is West, Positive is East) in degrees
-     * @return the closest Stop
+     * @return the closest Stop, or null if there are no stops in the database
      */
     public Stop getClosestStop(double latitude, double longitude) {
+        return getClosestStop(latitude, longitude, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * Return the closest stop to a given coordinate under metric. EUCLIDEAN uses the 2-d tree; the other metrics
+     * scan the snapshot's StopTable with the metric's batch kernel.
+     * @return the closest Stop, or null if there are no stops in the database
+     */
+    public Stop getClosestStop(double latitude, double longitude, DistanceMetric metric) {
+        OperationMetrics operation = metrics.operation("getClosestStop");
+        long started = System.nanoTime();
         try {
-            databaseDriver.connect();
-            Stop closest = null;
-            double small_distance = Double.POSITIVE_INFINITY;
-            for (Stop stop : databaseDriver.getAllStops()) {
-                double stop_lat = stop.getLatitude();
-                double stop_long = stop.getLongitude();
-                if(Math.sqrt(Math.pow(latitude-stop_lat, 2)+Math.pow(longitude-stop_long, 2))<small_distance){
-                    closest = stop;
-                }
+            TransitNetwork snapshot = getNetwork();
+            Stop closest;
+            if (metric == DistanceMetric.EUCLIDEAN) {
+                closest = snapshot.getStopIndex().nearest(latitude, longitude).orElse(null);
+            } else {
+                int row = snapshot.getStopTable().nearestRow(latitude, longitude, metric);
+                closest = row < 0 ? null : snapshot.getStops().get(row);
             }
-            databaseDriver.disconnect();
+            operation.recordSuccess(started, closest == null ? 0 : 1, 0);
             return closest;
+        } catch (RuntimeException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
-        catch(SQLException e){
-            throw new RuntimeException(e);
+    }
+
+    /**
+     * Return up to k stops closest to a given coordinate (using Euclidean distance), nearest first
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<Stop> getKNearestStops(double latitude, double longitude, int k) {
+        return getKNearestStops(latitude, longitude, k, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * Return up to k stops closest to a given coordinate under metric, nearest first
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<Stop> getKNearestStops(double latitude, double longitude, int k, DistanceMetric metric) {
+        OperationMetrics operation = metrics.operation("getKNearestStops");
+        long started = System.nanoTime();
+        try {
+            TransitNetwork snapshot = getNetwork();
+            if (metric == DistanceMetric.EUCLIDEAN) {
+                return operation.completedRead(started, snapshot.getStopIndex().kNearest(latitude, longitude, k));
+            }
+            return operation.completedRead(started,
+                    stopsAt(snapshot, snapshot.getStopTable().kNearestRows(latitude, longitude, k, metric)));
+        } catch (RuntimeException e) {
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Return all stops within radius degrees of a given coordinate (using Euclidean distance), nearest first
+     * @throws IllegalArgumentException if radius is negative
+     */
+    public List<Stop> getStopsWithinRadius(double latitude, double longitude, double radius) {
+        return getStopsWithinRadius(latitude, longitude, radius, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * Return all stops within radius of a given coordinate under metric, nearest first. radius is in degrees for
+     * EUCLIDEAN and metres otherwise.
+     * @throws IllegalArgumentException if radius is negative
+     */
+    public List<Stop> getStopsWithinRadius(double latitude, double longitude, double radius, DistanceMetric metric) {
+        OperationMetrics operation = metrics.operation("getStopsWithinRadius");
+        long started = System.nanoTime();
+        try {
+            TransitNetwork snapshot = getNetwork();
+            if (metric == DistanceMetric.EUCLIDEAN) {
+                return operation.completedRead(started,
+                        snapshot.getStopIndex().withinRadius(latitude, longitude, radius));
+            }
+            return operation.completedRead(started,
+                    stopsAt(snapshot, snapshot.getStopTable().rowsWithinDistance(latitude, longitude, radius, metric)));
+        } catch (RuntimeException e) {
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Return all stops inside a latitude/longitude box (bounds inclusive), in the order of getStops()
+     * @throws IllegalArgumentException if a minimum is greater than its maximum
+     */
+    public List<Stop> getStopsWithinBox(double minLatitude, double minLongitude,
+                                        double maxLatitude, double maxLongitude) {
+        OperationMetrics operation = metrics.operation("getStopsWithinBox");
+        long started = System.nanoTime();
+        try {
+            TransitNetwork snapshot = getNetwork();
+            int[] rows = snapshot.getStopTable().rowsWithinBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+            return operation.completedRead(started, stopsAt(snapshot, rows));
+        } catch (RuntimeException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
     }
 
     /**
      * Given two stop, a source and a destination, find the shortest (by distance) BusLine that starts
-     * from source and ends at Destination.
+     * from source and ends at Destination. A line only qualifies if it reaches destination after source, and
+     * lines are ranked by the distance ridden between the two stops, not by the length of their whole Route.
      * @return Optional.empty() if no bus route visits both points
      * @throws IllegalArgumentException if either stop doesn't exist in the database
      */
     public Optional<BusLine> getRecommendedBusLine(Stop source, Stop destination) {
+        return getRecommendedBusLine(source, destination, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * The same as getRecommendedBusLine(Stop, Stop), with ride distances measured under metric
+     * @throws IllegalArgumentException if either stop doesn't exist in the database
+     */
+    public Optional<BusLine> getRecommendedBusLine(Stop source, Stop destination, DistanceMetric metric) {
+        OperationMetrics operation = metrics.operation("getRecommendedBusLine");
+        long started = System.nanoTime();
         try {
-            Optional<BusLine> best_line = Optional.empty();
-            double best_distance = Double.POSITIVE_INFINITY;
-            databaseDriver.connect();
-            if(!databaseDriver.getAllStops().containsAll(Arrays.asList(source, destination))){
+            TransitNetwork snapshot = getNetwork();
+            if(!snapshot.containsStop(source) || !snapshot.containsStop(destination)){
                 throw new IllegalArgumentException("stops not in database");
             }
-            for(BusLine bus_line: databaseDriver.getBusLines()){
-                Route bus_route = bus_line.getRoute();
-                if(bus_route.contains(source)&&bus_route.contains(destination)){
-                    double distance = bus_route.getRouteDistance();
-                    if(distance<best_distance){
-                        best_distance = distance;
-                        best_line = Optional.of(bus_line);
-                    }
-                }
+            return operation.completedRead(started,
+                    snapshot.getStopLineIndex().getShortestRide(source.getId(), destination.getId(), metric));
+        } catch (RuntimeException e) {
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Plan journeys from source to destination that may transfer between bus lines at shared stops, with at most
+     * maxTransfers transfers. Each returned journey is shorter than every journey with fewer transfers, and the
+     * list is ranked by distance, then by number of transfers.
+     * @return an empty list if destination cannot be reached within maxTransfers transfers
+     * @throws IllegalArgumentException if either stop doesn't exist in the database, or maxTransfers is negative
+     */
+    public List<Journey> getJourneys(Stop source, Stop destination, int maxTransfers) {
+        return getJourneys(source, destination, maxTransfers, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * The same as getJourneys(Stop, Stop, int), with ride distances measured under metric
+     * @throws IllegalArgumentException if either stop doesn't exist in the database, or maxTransfers is negative
+     */
+    public List<Journey> getJourneys(Stop source, Stop destination, int maxTransfers, DistanceMetric metric) {
+        OperationMetrics operation = metrics.operation("getJourneys");
+        long started = System.nanoTime();
+        try {
+            TransitNetwork snapshot = getNetwork();
+            if(!snapshot.containsStop(source) || !snapshot.containsStop(destination)){
+                throw new IllegalArgumentException("stops not in database");
             }
-            databaseDriver.disconnect();
-            return best_line;
+            return operation.completedRead(started,
+                    snapshot.getJourneyPlanner(metric).plan(source.getId(), destination.getId(), maxTransfers));
+        } catch (RuntimeException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
-        catch(SQLException e){
+    }
+
+    private static List<Stop> stopsAt(TransitNetwork snapshot, int[] rows) {
+        List<Stop> stops = snapshot.getStops();
+        List<Stop> found = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            found.add(stops.get(row));
+        }
+        return found;
+    }
+
+    /**
+     * Runs work between connect() and disconnect(). The connection is always handed back, even when the work
+     * throws, so a failed call cannot leave the driver connected or leak a pooled connection.
+     */
+    private <T> T withConnection(DatabaseWork<T> work) {
+        try {
+            databaseDriver.connect();
+            try {
+                return work.apply(databaseDriver);
+            } finally {
+                databaseDriver.disconnect();
+            }
+        } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
+
+    @FunctionalInterface
+    private interface DatabaseWork<T> {
+        T apply(DatabaseDriver databaseDriver) throws SQLException;
+    }
 }
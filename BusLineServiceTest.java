@@ -0,0 +1,100 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BusLineServiceTest {
+    private static final Stop RICE_HALL = new Stop(7, "Whitehead Rd @ Rice Hall", 38.0316, -78.5108);
+    private static final Stop EMMET = new Stop(3, "Emmet St @ Ivy Rd", 38.0345, -78.5006);
+    private static final Stop CORNER = new Stop(12, "University Ave @ The Corner", 38.0350, -78.4990);
+
+    private BusLineService busLineService;
+
+    @TempDir
+    Path databaseDirectory;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        DatabaseDriver databaseDriver = new DatabaseDriver(databaseDirectory.resolve("test.sqlite").toString());
+        databaseDriver.connect();
+        databaseDriver.createTables();
+        databaseDriver.addStops(List.of(RICE_HALL, EMMET));
+        databaseDriver.addBusLines(List.of(
+                new BusLine(4, true, "Northline", "NL", new Route(List.of(RICE_HALL, EMMET)))));
+        databaseDriver.commit();
+        databaseDriver.disconnect();
+        busLineService = new BusLineService(databaseDriver);
+    }
+
+    private static List<Integer> ids(List<Stop> stops) {
+        return stops.stream().map(Stop::getId).toList();
+    }
+
+    @Test
+    void addStops_publishesNewNetwork_earlierSnapshotUnchanged() {
+        TransitNetwork before = busLineService.getNetwork();
+        busLineService.addStops(List.of(CORNER));
+        TransitNetwork after = busLineService.getNetwork();
+
+        assertNotSame(before, after);
+        assertEquals(List.of(3, 7), ids(before.getStops()));
+        assertTrue(before.getStopById(12).isEmpty());
+        assertEquals(List.of(3, 7, 12), ids(after.getStops()));
+        assertEquals(CORNER, busLineService.getClosestStop(38.0351, -78.4980));
+        assertEquals(EMMET, before.getStopIndex().nearest(38.0351, -78.4980).orElseThrow());
+    }
+
+    @Test
+    void addBusLines_publishesNewNetwork_earlierSnapshotUnchanged() {
+        busLineService.addStops(List.of(CORNER));
+        TransitNetwork before = busLineService.getNetwork();
+        busLineService.addBusLines(List.of(
+                new BusLine(20, false, "Night Pilot", "NP", new Route(List.of(CORNER, EMMET)))));
+        TransitNetwork after = busLineService.getNetwork();
+
+        assertNotSame(before, after);
+        assertEquals(1, before.getBusLines().size());
+        assertTrue(before.getBusLineByShortName("NP").isEmpty());
+        assertEquals(List.of(4), before.getBusLinesByStop(EMMET).stream().map(BusLine::getId).toList());
+        assertEquals(2, after.getBusLines().size());
+        assertEquals(List.of(12, 3), ids(after.getBusLineById(20).orElseThrow().getRoute().getStops()));
+        assertEquals(List.of(4, 20), after.getBusLinesByStop(EMMET).stream().map(BusLine::getId).toList());
+    }
+
+    @Test
+    void addBusLines_callerKeepsOwnLines() {
+        busLineService.getNetwork();
+        BusLine nightPilot = new BusLine(20, false, "Night Pilot", "NP",
+                new Route(new ArrayList<>(List.of(EMMET))));
+        busLineService.addBusLines(List.of(nightPilot));
+
+        nightPilot.setLongName("Renamed");
+        nightPilot.addStopToRoute(RICE_HALL);
+        BusLine published = busLineService.getBusLineById(20).orElseThrow();
+        assertNotSame(nightPilot, published);
+        assertEquals("Night Pilot", published.getLongName());
+        assertEquals(List.of(3), ids(published.getRoute().getStops()));
+    }
+
+    @Test
+    void getNetwork_busLinesAreReadOnly() {
+        BusLine northline = busLineService.getBusLineById(4).orElseThrow();
+
+        assertThrows(UnsupportedOperationException.class, () -> northline.setLongName("Southline"));
+        assertThrows(UnsupportedOperationException.class, () -> northline.setActive(false));
+        assertThrows(UnsupportedOperationException.class, () -> northline.setRoute(new Route()));
+        assertThrows(UnsupportedOperationException.class, () -> northline.addStopToRoute(CORNER));
+        assertThrows(UnsupportedOperationException.class, () -> northline.getRoute().getStops().remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> busLineService.getBusLines().clear());
+        assertEquals("Northline", busLineService.getBusLineById(4).orElseThrow().getLongName());
+        assertEquals(List.of(7, 3), ids(busLineService.getRoute(northline).getStops()));
+    }
+}
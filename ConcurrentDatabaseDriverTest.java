@@ -0,0 +1,226 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentDatabaseDriverTest {
+    private DatabaseDriver databaseDriver;
+    private ExecutorService executor;
+    private String databaseFilename;
+
+    @TempDir
+    Path databaseDirectory;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        databaseFilename = databaseDirectory.resolve("test.sqlite").toString();
+        databaseDriver = DatabaseDriver.concurrent(databaseFilename, 4);
+        executor = Executors.newCachedThreadPool();
+        inSession(() -> {
+            databaseDriver.createTables();
+            databaseDriver.addStops(List.of(new Stop(1, "a", 38.0, -78.0)));
+            databaseDriver.commit();
+            return null;
+        });
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        executor.shutdownNow();
+        databaseDriver.close();
+    }
+
+    private <T> T inSession(Callable<T> work) {
+        try {
+            databaseDriver.connect();
+            try {
+                return work.call();
+            } finally {
+                databaseDriver.disconnect();
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private <T> Future<T> inSessionOnAnotherThread(Callable<T> work) {
+        return executor.submit(() -> inSession(work));
+    }
+
+    @Test
+    void concurrent_usesWriteAheadLog() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFilename);
+             Statement statement = connection.createStatement();
+             ResultSet resultset = statement.executeQuery("PRAGMA journal_mode")) {
+            assertTrue(resultset.next());
+            assertEquals("wal", resultset.getString(1));
+        }
+    }
+
+    @Test
+    void connect_perThread() throws Exception {
+        databaseDriver.connect();
+        try {
+            assertThrows(IllegalStateException.class, databaseDriver::connect);
+            assertTrue(inSessionOnAnotherThread(() -> databaseDriver.getStopById(1).isPresent())
+                    .get(10, TimeUnit.SECONDS));
+        } finally {
+            databaseDriver.disconnect();
+        }
+    }
+
+    @Test
+    void uncommittedWrites_onlyVisibleToTheirSession() throws Exception {
+        databaseDriver.connect();
+        try {
+            databaseDriver.addStops(List.of(new Stop(2, "b", 38.0, -78.0)));
+            assertTrue(databaseDriver.getStopById(2).isPresent());
+            assertFalse(inSessionOnAnotherThread(() -> databaseDriver.getStopById(2).isPresent())
+                    .get(10, TimeUnit.SECONDS));
+            databaseDriver.commit();
+            assertTrue(inSessionOnAnotherThread(() -> databaseDriver.getStopById(2).isPresent())
+                    .get(10, TimeUnit.SECONDS));
+        } finally {
+            databaseDriver.disconnect();
+        }
+    }
+
+    @Test
+    void commit_endsReadSnapshot() throws Exception {
+        databaseDriver.connect();
+        try {
+            assertTrue(databaseDriver.getStopById(2).isEmpty());
+            inSessionOnAnotherThread(() -> {
+                databaseDriver.addStops(List.of(new Stop(2, "b", 38.0, -78.0)));
+                databaseDriver.commit();
+                return null;
+            }).get(10, TimeUnit.SECONDS);
+            assertTrue(databaseDriver.getStopById(2).isEmpty());
+            databaseDriver.commit();
+            assertTrue(databaseDriver.getStopById(2).isPresent());
+        } finally {
+            databaseDriver.disconnect();
+        }
+    }
+
+    @Test
+    void writers_takeTurns() throws Exception {
+        databaseDriver.connect();
+        Future<Void> secondWriter;
+        try {
+            databaseDriver.addStops(List.of(new Stop(2, "b", 38.0, -78.0)));
+            CountDownLatch started = new CountDownLatch(1);
+            secondWriter = inSessionOnAnotherThread(() -> {
+                started.countDown();
+                databaseDriver.addStops(List.of(new Stop(3, "c", 38.0, -78.0)));
+                databaseDriver.commit();
+                return null;
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertFalse(secondWriter.isDone());
+            databaseDriver.commit();
+        } finally {
+            databaseDriver.disconnect();
+        }
+        secondWriter.get(10, TimeUnit.SECONDS);
+        assertEquals(3, inSession(() -> databaseDriver.getAllStops().size()));
+    }
+
+    @Test
+    void reads_proceedDuringWrites() throws Exception {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Future<Void> writer = inSessionOnAnotherThread(() -> {
+            try {
+                for (int id = 2; id <= 200; id++) {
+                    databaseDriver.addStops(List.of(new Stop(id, "stop " + id, 38.0, -78.0)));
+                    databaseDriver.commit();
+                }
+            } finally {
+                writing.set(false);
+            }
+            return null;
+        });
+        List<Future<Integer>> readers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(inSessionOnAnotherThread(() -> {
+                int reads = 0;
+                do {
+                    assertTrue(databaseDriver.getStopById(1).isPresent());
+                    databaseDriver.commit();
+                    reads++;
+                } while (writing.get());
+                return reads;
+            }));
+        }
+        writer.get(30, TimeUnit.SECONDS);
+        for (Future<Integer> reader : readers) {
+            assertTrue(reader.get(30, TimeUnit.SECONDS) > 0);
+        }
+        assertEquals(200, inSession(() -> databaseDriver.getAllStops().size()));
+    }
+
+    @Test
+    void bulkLoad_keepsWriteAheadLog() throws SQLException {
+        inSession(() -> {
+            databaseDriver.beginBulkLoad();
+            databaseDriver.addStops(List.of(new Stop(2, "b", 38.0, -78.0)));
+            databaseDriver.commit();
+            databaseDriver.endBulkLoad();
+            return null;
+        });
+        concurrent_usesWriteAheadLog();
+    }
+
+    @Test
+    void fileModeWriter_alongsideConcurrentReaders() throws Exception {
+        CountDownLatch readerOpen = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        Future<List<Integer>> reader = inSessionOnAnotherThread(() -> {
+            int before = databaseDriver.getAllStops().size();
+            readerOpen.countDown();
+            assertTrue(written.await(10, TimeUnit.SECONDS));
+            int sameSnapshot = databaseDriver.getAllStops().size();
+            databaseDriver.commit();
+            return List.of(before, sameSnapshot, databaseDriver.getAllStops().size());
+        });
+        assertTrue(readerOpen.await(10, TimeUnit.SECONDS));
+
+        DatabaseDriver fileDriver = new DatabaseDriver(databaseFilename);
+        fileDriver.connect();
+        try {
+            fileDriver.beginBulkLoad();
+            fileDriver.addStops(List.of(new Stop(2, "b", 38.0, -78.0)));
+            fileDriver.commit();
+            fileDriver.endBulkLoad();
+            fileDriver.addStops(List.of(new Stop(3, "c", 38.0, -78.0)));
+            fileDriver.commit();
+        } finally {
+            fileDriver.disconnect();
+        }
+        written.countDown();
+
+        assertEquals(List.of(1, 1, 3), reader.get(10, TimeUnit.SECONDS));
+        concurrent_usesWriteAheadLog();
+    }
+}
@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.Objects;
 
 public class Configuration {
@@ -19,8 +20,26 @@ public class Configuration {
 
     private String databaseFilename;
 
+    private String responseCacheDirectory;
+
+    private String snapshotFilename;
+
+    private HttpResponseCache responseCache;
+
+    private boolean parsed;
+
     public Configuration() { }
 
+    /**
+     * Creates a configuration from the given values instead of config.json, with no response cache
+     */
+    public Configuration(URL busStopsURL, URL busLinesURL, String databaseFilename) {
+        this.busStopsURL = busStopsURL;
+        this.busLinesURL = busLinesURL;
+        this.databaseFilename = databaseFilename;
+        this.parsed = true;
+    }
+
     public URL getBusStopsURL() {
         if (busStopsURL == null) {
             parseJsonConfigFile();
@@ -42,9 +61,35 @@ public class Configuration {
         return databaseFilename;
     }
 
+    /**
+     * Returns the HTTP response cache for the optional "cache" directory in config.json, or null if the
+     * configuration doesn't name one
+     */
+    public synchronized HttpResponseCache getResponseCache() {
+        if (!parsed) {
+            parseJsonConfigFile();
+        }
+        if (responseCache == null && responseCacheDirectory != null) {
+            responseCache = new HttpResponseCache(Path.of(responseCacheDirectory));
+        }
+        return responseCache;
+    }
+
+    /**
+     * Returns the network snapshot file named by the optional "snapshot" key in config.json, or null if the
+     * configuration doesn't name one
+     */
+    public String getSnapshotFilename() {
+        if (!parsed) {
+            parseJsonConfigFile();
+        }
+        return snapshotFilename;
+    }
+
     /**
      * Parse the JSON file config.json to set all three of the fields:
      *  busStopsURL, busLinesURL, databaseFilename
+     * along with responseCacheDirectory and snapshotFilename if the optional "cache" and "snapshot" keys are present
      */
     private void parseJsonConfigFile() {
         try (InputStream inputStream = Objects.requireNonNull(Configuration.class.getResourceAsStream(configurationFilename));
@@ -60,6 +105,9 @@ public class Configuration {
             busStopsURL = new URL(endpoints.getString("stops"));
             busLinesURL = new URL(endpoints.getString("lines"));
             databaseFilename = busInfo.getString("database");
+            responseCacheDirectory = busInfo.optString("cache", null);
+            snapshotFilename = busInfo.optString("snapshot", null);
+            parsed = true;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
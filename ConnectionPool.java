@@ -0,0 +1,265 @@
+package edu.virginia.sde.hw5;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed-size pool of long-lived SQLite connections. Connections are opened lazily, configured the same way as
+ * DatabaseDriver.connect (foreign keys on, auto-commit off), leased out one caller at a time and health checked
+ * before they are handed out again. Each connection keeps its StatementCache for as long as it stays open, so
+ * statements compiled during one lease are reused by the next. The idle connections and the open count are
+ * guarded by the pool's monitor, so a caller waiting for a lease is woken both when a connection is returned and
+ * when a broken one is closed and leaves room to open another.
+ */
+public class ConnectionPool implements AutoCloseable {
+    public static final int DEFAULT_SIZE = 4;
+    public static final long DEFAULT_LEASE_TIMEOUT_MILLIS = 30_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    /**
+     * How the pool's connections are configured on top of foreign keys and auto-commit off
+     */
+    public enum Mode {
+        /** The file keeps its journal mode, as with DatabaseDriver.connect */
+        DEFAULT,
+        /** The file is switched to write-ahead logging, with fsyncs only at checkpoints */
+        WAL_WRITER,
+        /** Connections refuse writes; meant for a file a WAL_WRITER pool has switched to write-ahead logging */
+        WAL_READER
+    }
+
+    private final String sqliteFilename;
+    private final int size;
+    private final long leaseTimeoutMillis;
+    private final Mode mode;
+    /* Guarded by this */
+    private final Deque<Connection> idleConnections = new ArrayDeque<>();
+    private final Map<Connection, StatementCache> statementCaches = new ConcurrentHashMap<>();
+    private int openConnections;
+    private boolean closed;
+
+    public ConnectionPool(String sqliteFilename, int size, long leaseTimeoutMillis, Mode mode) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        this.sqliteFilename = sqliteFilename;
+        this.size = size;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+        this.mode = mode;
+    }
+
+    public ConnectionPool(String sqliteFilename, int size, long leaseTimeoutMillis) {
+        this(sqliteFilename, size, leaseTimeoutMillis, Mode.DEFAULT);
+    }
+
+    public ConnectionPool(String sqliteFilename, int size) {
+        this(sqliteFilename, size, DEFAULT_LEASE_TIMEOUT_MILLIS);
+    }
+
+    public ConnectionPool(Configuration configuration) {
+        this(configuration.getDatabaseFilename(), DEFAULT_SIZE);
+    }
+
+    public String getSqliteFilename() {
+        return sqliteFilename;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public synchronized int getOpenConnections() {
+        return openConnections;
+    }
+
+    public synchronized int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    /**
+     * Lease a connection, opening a new one if the pool has not reached its size. Idle connections that fail a
+     * health check are closed and replaced. Blocks until a connection is returned if all of them are leased.
+     *
+     * @throws SQLException if no connection becomes available within the lease timeout
+     */
+    public Connection lease() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseTimeoutMillis);
+        while (true) {
+            Connection connection = awaitIdleConnectionOrCapacity(deadline);
+            if (connection == null) {
+                return openConnection();
+            }
+            if (isHealthy(connection)) {
+                return connection;
+            }
+            discard(connection);
+        }
+    }
+
+    /**
+     * Returns the statement cache of a connection leased from this pool. Only the current leaseholder may use it.
+     */
+    public StatementCache getStatementCache(Connection connection) {
+        return statementCaches.computeIfAbsent(connection, StatementCache::new);
+    }
+
+    /**
+     * Return a leased connection to the pool. Any uncommitted changes are rolled back. Connections that are
+     * broken, or returned after the pool was closed, are closed instead of being reused.
+     */
+    public void release(Connection connection) {
+        boolean reusable;
+        try {
+            reusable = !connection.isClosed();
+            if (reusable) {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+        synchronized (this) {
+            if (reusable && !closed && idleConnections.size() < size) {
+                idleConnections.addLast(connection);
+                notifyAll();
+                return;
+            }
+        }
+        discard(connection);
+    }
+
+    /**
+     * Close every idle connection. Connections that are currently leased are closed when they are released, and
+     * callers waiting for a lease fail with IllegalStateException.
+     */
+    @Override
+    public void close() throws SQLException {
+        List<Connection> idle;
+        synchronized (this) {
+            closed = true;
+            idle = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+            notifyAll();
+        }
+        SQLException failure = null;
+        for (Connection connection : idle) {
+            try {
+                closeStatementCache(connection);
+                connection.close();
+            } catch (SQLException e) {
+                failure = e;
+            } finally {
+                connectionClosed();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Wait until there is an idle connection, returning it, or room to open a new one, reserving it and returning
+     * null. Capacity is checked again every time the wait is woken.
+     *
+     * @throws SQLException if neither happens before the deadline
+     * @throws IllegalStateException if the pool is closed
+     */
+    private synchronized Connection awaitIdleConnectionOrCapacity(long deadline) throws SQLException {
+        while (true) {
+            if (closed) {
+                throw new IllegalStateException("The connection pool is closed");
+            }
+            Connection connection = idleConnections.pollFirst();
+            if (connection != null) {
+                return connection;
+            }
+            if (openConnections < size) {
+                openConnections++;
+                return null;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new SQLException("Timed out after " + leaseTimeoutMillis + " ms waiting for a connection to "
+                        + sqliteFilename);
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a connection", e);
+            }
+        }
+    }
+
+    private synchronized void connectionClosed() {
+        openConnections--;
+        notifyAll();
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection connection = null;
+        try {
+            connection = DriverManager.getConnection("jdbc:sqlite:" + sqliteFilename);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA foreign_keys = ON");
+                if (mode == Mode.WAL_WRITER) {
+                    statement.execute("PRAGMA journal_mode = WAL");
+                    statement.execute("PRAGMA synchronous = NORMAL");
+                } else if (mode == Mode.WAL_READER) {
+                    statement.execute("PRAGMA query_only = ON");
+                }
+            }
+            connection.setAutoCommit(false);
+            return connection;
+        } catch (SQLException e) {
+            if (connection != null) {
+                discard(connection);
+            } else {
+                connectionClosed();
+            }
+            throw e;
+        }
+    }
+
+    private void closeStatementCache(Connection connection) {
+        StatementCache statementCache = statementCaches.remove(connection);
+        if (statementCache != null) {
+            try {
+                statementCache.close();
+            } catch (SQLException ignored) {
+                //closing the connection closes its statements anyway
+            }
+        }
+    }
+
+    private boolean isHealthy(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(Connection connection) {
+        try {
+            closeStatementCache(connection);
+            connection.close();
+        } catch (SQLException ignored) {
+            //the connection is being thrown away either way
+        } finally {
+            connectionClosed();
+        }
+    }
+}
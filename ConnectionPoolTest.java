@@ -0,0 +1,132 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionPoolTest {
+    private String databaseFilename;
+    private ConnectionPool connectionPool;
+
+    @TempDir
+    Path databaseDirectory;
+
+    @BeforeEach
+    void setup() {
+        databaseFilename = databaseDirectory.resolve("test.sqlite").toString();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+    }
+
+    @Test
+    void lease_opensUpToSize() throws SQLException {
+        connectionPool = new ConnectionPool(databaseFilename, 2, 5_000);
+        Connection first = connectionPool.lease();
+        Connection second = connectionPool.lease();
+        assertNotSame(first, second);
+        assertEquals(2, connectionPool.getOpenConnections());
+        assertFalse(first.getAutoCommit());
+
+        connectionPool.release(first);
+        assertEquals(1, connectionPool.getIdleConnections());
+        assertSame(first, connectionPool.lease());
+        assertEquals(2, connectionPool.getOpenConnections());
+        connectionPool.release(first);
+        connectionPool.release(second);
+    }
+
+    @Test
+    void lease_allLeased_timesOut() throws SQLException {
+        connectionPool = new ConnectionPool(databaseFilename, 1, 100);
+        Connection connection = connectionPool.lease();
+        long started = System.nanoTime();
+        SQLException thrown = assertThrows(SQLException.class, () -> connectionPool.lease());
+        assertTrue(thrown.getMessage().startsWith("Timed out"), thrown.getMessage());
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(100));
+        connectionPool.release(connection);
+    }
+
+    @Test
+    void lease_blocksUntilRelease() throws Exception {
+        connectionPool = new ConnectionPool(databaseFilename, 1, 5_000);
+        Connection connection = connectionPool.lease();
+        CompletableFuture<Connection> waiter = CompletableFuture.supplyAsync(this::leaseUnchecked);
+        Thread.sleep(100);
+        assertFalse(waiter.isDone());
+
+        connectionPool.release(connection);
+        assertSame(connection, waiter.get(1, TimeUnit.SECONDS));
+        connectionPool.release(connection);
+    }
+
+    @Test
+    void lease_replacesBrokenIdleConnection() throws SQLException {
+        connectionPool = new ConnectionPool(databaseFilename, 1, 5_000);
+        Connection broken = connectionPool.lease();
+        connectionPool.release(broken);
+        broken.close();
+
+        Connection replacement = connectionPool.lease();
+        assertNotSame(broken, replacement);
+        assertTrue(replacement.isValid(1));
+        assertEquals(1, connectionPool.getOpenConnections());
+        connectionPool.release(replacement);
+    }
+
+    @Test
+    void release_brokenConnection_wakesWaiterToOpenAnother() throws Exception {
+        connectionPool = new ConnectionPool(databaseFilename, 1, 5_000);
+        Connection broken = connectionPool.lease();
+        CompletableFuture<Connection> waiter = CompletableFuture.supplyAsync(this::leaseUnchecked);
+        Thread.sleep(100);
+        assertFalse(waiter.isDone());
+
+        broken.close();
+        connectionPool.release(broken);
+        Connection replacement = waiter.get(1, TimeUnit.SECONDS);
+        assertNotSame(broken, replacement);
+        assertEquals(1, connectionPool.getOpenConnections());
+        connectionPool.release(replacement);
+    }
+
+    @Test
+    void close_whileLeased() throws Exception {
+        connectionPool = new ConnectionPool(databaseFilename, 1, 5_000);
+        Connection leased = connectionPool.lease();
+        CompletableFuture<Connection> waiter = CompletableFuture.supplyAsync(this::leaseUnchecked);
+        Thread.sleep(100);
+
+        connectionPool.close();
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> waiter.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, thrown.getCause());
+        assertFalse(leased.isClosed());
+
+        connectionPool.release(leased);
+        assertTrue(leased.isClosed());
+        assertEquals(0, connectionPool.getOpenConnections());
+        assertThrows(IllegalStateException.class, () -> connectionPool.lease());
+    }
+
+    private Connection leaseUnchecked() {
+        try {
+            return connectionPool.lease();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -2,109 +2,504 @@ package edu.virginia.sde.hw5;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public class DatabaseDriver {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /* Point lookups, kept here so tests can check that each one is answered from an index */
+    static final String STOP_BY_ID_SQL = "SELECT ID, StopName, Latitude, Longitude FROM Stops WHERE ID = ?";
+    static final String BUS_LINE_BY_ID_SQL = "SELECT ID, IsActive, LongName, ShortName FROM BusLines WHERE ID = ?";
+    static final String BUS_LINE_BY_LONG_NAME_SQL =
+            "SELECT ID, IsActive, LongName, ShortName FROM BusLines WHERE LongName = ? COLLATE NOCASE";
+    static final String BUS_LINE_BY_SHORT_NAME_SQL =
+            "SELECT ID, IsActive, LongName, ShortName FROM BusLines WHERE ShortName = ? COLLATE NOCASE";
+    static final String BUS_LINES_BY_STOP_SQL = "SELECT ID, IsActive, LongName, ShortName FROM BusLines " +
+            "WHERE ID IN (SELECT BusLineID FROM Routes WHERE StopID = ?)";
+    static final String STOPS_BY_NAME_PREFIX_SQL = "SELECT ID, StopName, Latitude, Longitude FROM Stops " +
+            "WHERE StopName LIKE ? ESCAPE '\\' ORDER BY StopName COLLATE NOCASE, ID LIMIT ?";
+    static final String STOPS_BY_NAME_SUBSTRING_SQL = "SELECT s.ID, s.StopName, s.Latitude, s.Longitude " +
+            "FROM StopNames n JOIN Stops s ON s.ID = n.rowid WHERE StopNames MATCH ? ORDER BY s.ID";
+    static final String ROUTE_FOR_BUS_LINE_SQL = "SELECT s.ID, s.StopName, s.Latitude, s.Longitude FROM Routes r " +
+            "JOIN Stops s ON s.ID = r.StopID WHERE r.BusLineID = ? ORDER BY r.RouteOrder";
+    /* The one parameter is a JSON array of line ids, so a single cached statement serves batches of any size */
+    static final String ROUTES_FOR_BUS_LINES_SQL = "SELECT r.BusLineID, s.ID, s.StopName, s.Latitude, s.Longitude " +
+            "FROM Routes r JOIN Stops s ON s.ID = r.StopID " +
+            "WHERE r.BusLineID IN (SELECT value FROM json_each(?)) ORDER BY r.BusLineID, r.RouteOrder";
+
     private final String sqliteFilename;
-    private Connection connection;
+    /* The caller's pool in pooled mode, or the read-only connections in concurrent mode */
+    private final ConnectionPool connectionPool;
+    /* The single writer connection in concurrent mode, null otherwise */
+    private final ConnectionPool writerPool;
+    /* Each thread's session in concurrent mode, null otherwise */
+    private final ThreadLocal<Session> threadSessions;
+    /* The single session in file and pooled modes, read by other threads to see whether they own it */
+    private volatile Session session;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private final Metrics metrics = new Metrics();
 
     public DatabaseDriver(Configuration configuration) {
-        this.sqliteFilename = configuration.getDatabaseFilename();
+        this(configuration.getDatabaseFilename());
     }
 
     public DatabaseDriver(String sqlListDatabaseFilename) {
         this.sqliteFilename = sqlListDatabaseFilename;
+        this.connectionPool = null;
+        this.writerPool = null;
+        this.threadSessions = null;
+    }
+
+    /**
+     * Creates a driver whose connect() and disconnect() lease and return long-lived connections from the pool
+     * instead of opening and closing the SQLite file each time.
+     */
+    public DatabaseDriver(ConnectionPool connectionPool) {
+        this.sqliteFilename = connectionPool.getSqliteFilename();
+        this.connectionPool = connectionPool;
+        this.writerPool = null;
+        this.threadSessions = null;
+    }
+
+    private DatabaseDriver(ConnectionPool writerPool, ConnectionPool readerPool) {
+        this.sqliteFilename = writerPool.getSqliteFilename();
+        this.connectionPool = readerPool;
+        this.writerPool = writerPool;
+        this.threadSessions = new ThreadLocal<>();
+    }
+
+    /**
+     * Creates a driver that any number of threads can share. The file is switched to write-ahead logging, and
+     * every thread calls connect() and disconnect() for its own session. A session leases the one writer connection
+     * on its first write and keeps it until disconnect(), so writing sessions take turns, while reads use one of
+     * readerCount read-only connections and run alongside them. Reads in a session that has written go to the
+     * writer, so they see its uncommitted changes; other reads see the database as of the last commit when they
+     * started, until the session's next commit() or rollback(). Call close() when the driver is no longer needed.
+     * The file stays in write-ahead logging afterwards, and file and pooled drivers on it keep it too, so they can
+     * write (bulk loads included) while this driver's readers are open.
+     *
+     * @throws IllegalArgumentException if readerCount is not positive
+     */
+    public static DatabaseDriver concurrent(String sqliteFilename, int readerCount) throws SQLException {
+        ConnectionPool writerPool = new ConnectionPool(sqliteFilename, 1,
+                ConnectionPool.DEFAULT_LEASE_TIMEOUT_MILLIS, ConnectionPool.Mode.WAL_WRITER);
+        //readers must not open the file before the writer has switched it to write-ahead logging
+        writerPool.release(writerPool.lease());
+        ConnectionPool readerPool = new ConnectionPool(sqliteFilename, readerCount,
+                ConnectionPool.DEFAULT_LEASE_TIMEOUT_MILLIS, ConnectionPool.Mode.WAL_READER);
+        return new DatabaseDriver(writerPool, readerPool);
+    }
+
+    public boolean isConcurrent() {
+        return threadSessions != null;
+    }
+
+    /**
+     * Close the connections of a concurrent() driver. Sessions that are still connected have their connections
+     * closed when they disconnect. Drivers on a file or a caller's ConnectionPool have nothing to close.
+     */
+    public void close() throws SQLException {
+        if (isConcurrent()) {
+            try {
+                writerPool.close();
+            } finally {
+                connectionPool.close();
+            }
+        }
     }
 
     /**
-     * Connect to a SQLite Database. This turns out Foreign Key enforcement, and disables auto-commits
+     * Connect to a SQLite Database. This turns out Foreign Key enforcement, and disables auto-commits. In
+     * concurrent mode this opens the calling thread's session, and connections are leased as the session needs them.
      *
      * @throws SQLException
      */
     public void connect() throws SQLException {
-        if (connection != null && !connection.isClosed()) {
+        if (isConcurrent()) {
+            if (threadSessions.get() != null) {
+                throw new IllegalStateException("The connection is already opened");
+            }
+            threadSessions.set(new Session());
+            return;
+        }
+        if (session != null) {
             throw new IllegalStateException("The connection is already opened");
         }
-        connection = DriverManager.getConnection("jdbc:sqlite:" + sqliteFilename);
+        if (connectionPool != null) {
+            Connection connection = connectionPool.lease();
+            session = new Session(connection, connectionPool.getStatementCache(connection));
+            return;
+        }
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + sqliteFilename);
         //the next line enables foreign key enforcement - do not delete/comment out
         connection.createStatement().execute("PRAGMA foreign_keys = ON");
         //the next line disables auto-commit - do not delete/comment out
         connection.setAutoCommit(false);
+        session = new Session(connection, new StatementCache(connection));
     }
 
     /**
-     * Commit all changes since the connection was opened OR since the last commit/rollback
+     * Commit all changes since the connection was opened OR since the last commit/rollback. During a bulk load,
+     * deferred foreign key violations are reported here, and the load is rolled back before the exception is thrown.
      */
     public void commit() throws SQLException {
-        connection.commit();
+        Session current = session();
+        if (current.writer != null) {
+            OperationMetrics operation = metrics.operation("commit");
+            long started = System.nanoTime();
+            try {
+                current.writer.commit();
+                operation.recordSuccess(started, 0, 0);
+            } catch (SQLException e) {
+                operation.recordFailure(started, e);
+                if (current.bulkLoad) {
+                    rollback();
+                }
+                throw e;
+            }
+        }
+        endReadSnapshot(current);
     }
 
     /**
      * Rollback to the last commit, or when the connection was opened
      */
     public void rollback() throws SQLException {
-        connection.rollback();
+        Session current = session();
+        if (current.writer != null) {
+            current.writer.rollback();
+        }
+        endReadSnapshot(current);
     }
 
     /**
-     * Ends the connection to the database
+     * Ends the connection to the database, closing its cached statements. Pooled connections are returned to the
+     * pool with their statement cache intact, with any uncommitted changes rolled back and bulk load settings
+     * restored.
      */
     public void disconnect() throws SQLException {
-        connection.close();
+        Session current = session();
+        try {
+            if (current.bulkLoad && (connectionPool != null || writerPool != null)) {
+                endBulkLoad();
+            }
+        } finally {
+            current.bulkLoad = false;
+            if (isConcurrent()) {
+                threadSessions.remove();
+            } else {
+                session = null;
+            }
+            releaseConnections(current);
+        }
+    }
+
+    private void releaseConnections(Session current) throws SQLException {
+        if (isConcurrent()) {
+            try {
+                if (current.writer != null) {
+                    writerPool.release(current.writer);
+                }
+            } finally {
+                if (current.reader != null) {
+                    connectionPool.release(current.reader);
+                }
+            }
+        } else if (connectionPool != null) {
+            connectionPool.release(current.writer);
+        } else {
+            try {
+                current.writerStatements.close();
+            } finally {
+                current.writer.close();
+            }
+        }
+    }
+
+    /**
+     * The number of prepare calls on the current connection's statement cache that reused a compiled statement.
+     * For pooled connections this counts every lease of the connection, not just this driver's.
+     */
+    public long getStatementCacheHits() {
+        Session current = currentSession();
+        long hits = 0;
+        for (StatementCache statements : current == null ? List.<StatementCache>of() : current.statementCaches()) {
+            hits += statements.getHits();
+        }
+        return hits;
+    }
+
+    /**
+     * The number of prepare calls on the current connection's statement cache that had to compile their SQL
+     */
+    public long getStatementCacheMisses() {
+        Session current = currentSession();
+        long misses = 0;
+        for (StatementCache statements : current == null ? List.<StatementCache>of() : current.statementCaches()) {
+            misses += statements.getMisses();
+        }
+        return misses;
+    }
+
+    private Session currentSession() {
+        return isConcurrent() ? threadSessions.get() : session;
+    }
+
+    private Session session() {
+        Session current = currentSession();
+        if (current == null) {
+            throw new IllegalStateException("The connection is not open");
+        }
+        return current;
+    }
+
+    /**
+     * The connection for reads: the writer if this session holds it, so the session sees its own changes, and
+     * otherwise a reader, leased on first use in concurrent mode
+     */
+    private Connection readConnection() throws SQLException {
+        Session current = session();
+        if (current.writer != null) {
+            return current.writer;
+        }
+        if (current.reader == null) {
+            current.reader = connectionPool.lease();
+            current.readerStatements = connectionPool.getStatementCache(current.reader);
+        }
+        return current.reader;
+    }
+
+    /**
+     * The connection for writes, leased on first use in concurrent mode and held until disconnect()
+     */
+    private Connection writeConnection() throws SQLException {
+        Session current = session();
+        if (current.writer == null) {
+            current.writer = writerPool.lease();
+            current.writerStatements = writerPool.getStatementCache(current.writer);
+        }
+        return current.writer;
+    }
+
+    /**
+     * Every query goes through the connection's statement cache, so the returned statement must not be closed
+     */
+    private PreparedStatement prepareRead(String sql) throws SQLException {
+        Connection connection = readConnection();
+        Session current = session();
+        return (connection == current.writer ? current.writerStatements : current.readerStatements).prepare(sql);
+    }
+
+    private PreparedStatement prepareWrite(String sql) throws SQLException {
+        writeConnection();
+        return session().writerStatements.prepare(sql);
+    }
+
+    /**
+     * In concurrent mode a reader keeps reading the snapshot its transaction started with, so commit() and
+     * rollback() end that transaction and the session's next read sees the latest commit. In every mode they end
+     * the snapshot the session's canonical Stops were read from.
+     */
+    private static void endReadSnapshot(Session current) throws SQLException {
+        current.stops.clear();
+        if (current.reader != null && current.reader != current.writer) {
+            current.reader.rollback();
+        }
+    }
+
+    /**
+     * Latency, call, error and row counts for every data operation and commit() this driver has run
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set how many rows addStops and addBusLines send to SQLite per executeBatch call
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public boolean isBulkLoad() {
+        Session current = currentSession();
+        return current != null && current.bulkLoad;
+    }
+
+    /**
+     * Switch the open connection into a load-optimized profile: the rollback journal is kept in memory, fsyncs are
+     * skipped, the page cache is enlarged and foreign key checks are deferred until commit. A file in write-ahead
+     * log mode (as concurrent() leaves it, in any mode of this driver) keeps its log, since leaving it would block
+     * on, and then block, every other connection to the file. This must be called before any changes are made in
+     * the current transaction, since changing these settings commits it. Call endBulkLoad() once the load has been
+     * committed.
+     */
+    public void beginBulkLoad() throws SQLException {
+        Session current = session();
+        if (current.bulkLoad) {
+            throw new IllegalStateException("A bulk load is already in progress");
+        }
+        Connection connection = writeConnection();
+        String journalMode = queryPragma(connection, "journal_mode");
+        List<String> restore = new ArrayList<>();
+        List<String> bulkLoad = new ArrayList<>();
+        if (!journalMode.equalsIgnoreCase("wal")) {
+            restore.add("PRAGMA journal_mode = " + journalMode);
+            bulkLoad.add("PRAGMA journal_mode = MEMORY");
+        }
+        restore.add("PRAGMA synchronous = " + queryPragma(connection, "synchronous"));
+        restore.add("PRAGMA cache_size = " + queryPragma(connection, "cache_size"));
+        bulkLoad.add("PRAGMA synchronous = OFF");
+        bulkLoad.add("PRAGMA cache_size = -65536");
+        applyPragmas(bulkLoad);
+        current.settingsBeforeBulkLoad = restore;
+        current.bulkLoad = true;
+    }
+
+    /**
+     * Restore the settings the connection had before beginBulkLoad(). This must be called after commit() or
+     * rollback(); any changes that are still uncommitted are rolled back first.
+     */
+    public void endBulkLoad() throws SQLException {
+        Session current = session();
+        if (!current.bulkLoad) {
+            throw new IllegalStateException("No bulk load is in progress");
+        }
+        rollback();
+        current.bulkLoad = false;
+        applyPragmas(current.settingsBeforeBulkLoad);
+        current.settingsBeforeBulkLoad = null;
+    }
+
+    private static String queryPragma(Connection connection, String pragma) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA " + pragma)) {
+            return resultSet.getString(1);
+        }
+    }
+
+    /**
+     * SQLite refuses to change the journal mode or sync level inside a transaction, so these run with
+     * auto-commit briefly turned back on.
+     */
+    private void applyPragmas(List<String> pragmas) throws SQLException {
+        Connection connection = writeConnection();
+        connection.setAutoCommit(true);
+        try (Statement statement = connection.createStatement()) {
+            for (String pragma : pragmas) {
+                statement.execute(pragma);
+            }
+        } finally {
+            connection.setAutoCommit(false);
+        }
+    }
+
+    private void deferForeignKeysIfBulkLoad() throws SQLException {
+        if (isBulkLoad()) {
+            try (Statement statement = writeConnection().createStatement()) {
+                statement.execute("PRAGMA defer_foreign_keys = ON");
+            }
+        }
     }
 
     /**
      * Creates the three database tables Stops, BusLines, and Routes, with the appropriate constraints including
-     * foreign keys, if they do not exist already. If they already exist, this method does nothing.
-     * As a hint, you'll need to create Routes last, and Routes must include Foreign Keys to Stops and
-     * BusLines.
+     * foreign keys, if they do not exist already, and brings existing tables up to the latest schema version
+     * through SchemaMigrations. If the schema is already current, this method does nothing. If any SQLExceptions
+     * occur, this method will rollback and throw the exception.
      *
      * @throws SQLException
      */
     public void createTables() throws SQLException {
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute("CREATE TABLE IF NOT EXISTS Stops (" +
-                    "ID INTEGER PRIMARY KEY, " +
-                    "StopName TEXT NOT NULL, " +
-                    "Latitude REAL NOT NULL, " +
-                    "Longitude REAL NOT NULL)");
+        try {
+            SchemaMigrations.migrate(writeConnection());
+        } catch (SQLException e) {
+            rollback();
+            throw e;
+        }
+    }
 
-            stmt.execute("CREATE TABLE IF NOT EXISTS BusLines (" +
-                    "ID INTEGER PRIMARY KEY, " +
-                    "IsActive BOOLEAN NOT NULL, " +
-                    "LongName TEXT NOT NULL, " +
-                    "ShortName TEXT NOT NULL)");
+    /**
+     * Returns the schema version of the connected database, or 0 if createTables() has never run on it
+     */
+    public int getSchemaVersion() throws SQLException {
+        return SchemaMigrations.getVersion(readConnection());
+    }
 
-            stmt.execute("CREATE TABLE IF NOT EXISTS Routes (" +
-                    "ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "BusLineID INTEGER NOT NULL, " +
-                    "StopID INTEGER NOT NULL, " +
-                    "RouteOrder INTEGER NOT NULL, " +
-                    "FOREIGN KEY (BusLineID) REFERENCES BusLines(ID) ON DELETE CASCADE, " +
-                    "FOREIGN KEY (StopID) REFERENCES Stops(ID) ON DELETE CASCADE)");
+    /**
+     * Returns the data generation of the connected database, a counter that writers advance in the transaction
+     * that changes the data, so that a copy of the data taken at one generation can tell whether it is still
+     * current. It is kept in SQLite's user_version header field, and is 0 until a writer first advances it.
+     */
+    public int getDataGeneration() throws SQLException {
+        try (Statement statement = readConnection().createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+            return resultSet.getInt(1);
+        }
+    }
+
+    /**
+     * Advance the data generation as part of the current transaction, so a rollback leaves it unchanged
+     *
+     * @return the new generation
+     */
+    public int advanceDataGeneration() throws SQLException {
+        try (Statement statement = writeConnection().createStatement()) {
+            int generation;
+            try (ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+                generation = resultSet.getInt(1) + 1;
+            }
+            statement.execute("PRAGMA user_version = " + generation);
+            return generation;
         }
     }
 
     /**
      * Add a list of Stops to the Database. After adding all the stops, the changes will be committed. However,
-     * if any SQLExceptions occur, this method will rollback and throw the exception.
+     * if any SQLExceptions occur, this method will rollback and throw the exception. Rows are sent in batches
+     * of getBatchSize().
      *
      * @param stops - the stops to be added to the database
      */
     public void addStops(List<Stop> stops) throws SQLException {
+        OperationMetrics operation = metrics.operation("addStops");
+        long started = System.nanoTime();
         String sql = "INSERT INTO Stops (ID, StopName, Latitude, Longitude) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql)) {
+        try {
+            PreparedStatement prepared_statement = prepareWrite(sql);
+            deferForeignKeysIfBulkLoad();
+            int pending = 0;
             for (Stop stop : stops) {
                 prepared_statement.setInt(1, stop.getId());
                 prepared_statement.setString(2, stop.getName());
                 prepared_statement.setDouble(3, stop.getLatitude());
                 prepared_statement.setDouble(4, stop.getLongitude());
-                prepared_statement.executeUpdate();
+                prepared_statement.addBatch();
+                if (++pending == batchSize) {
+                    prepared_statement.executeBatch();
+                    pending = 0;
+                }
             }
+            flushBatch(prepared_statement, pending);
+            operation.recordSuccess(started, 0, stops.size());
         } catch (SQLException e) {
             rollback();
+            operation.recordFailure(started, e);
             throw e;
         }
     }
@@ -113,57 +508,230 @@ public class DatabaseDriver {
      * Gets a list of all Stops in the database
      */
     public List<Stop> getAllStops() throws SQLException {
-        List<Stop> stops = new ArrayList<>();
-        String sql = "SELECT ID, StopName, Latitude, Longitude FROM Stops";
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql);
-             ResultSet resultset = prepared_statement.executeQuery()) {
-            while (resultset.next()) {
-                stops.add(new Stop(resultset.getInt("ID"), resultset.getString("StopName"),
-                        resultset.getDouble("Latitude"), resultset.getDouble("Longitude")));
+        OperationMetrics operation = metrics.operation("getAllStops");
+        long started = System.nanoTime();
+        try {
+            List<Stop> stops = new ArrayList<>();
+            StopIdentityMap stopsById = session().stops;
+            String sql = "SELECT ID, StopName, Latitude, Longitude FROM Stops";
+            try (ResultSet resultset = prepareRead(sql).executeQuery()) {
+                while (resultset.next()) {
+                    stops.add(readStop(resultset, "ID", stopsById));
+                }
             }
+            return operation.completedRead(started, stops);
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
-        return stops;
     }
 
     /**
      * Get a Stop by its ID number. Returns Optional.isEmpty() if no Stop matches the ID.
      */
     public Optional<Stop> getStopById(int stopId) throws SQLException {
-        String sql = "SELECT ID, StopName, Latitude, Longitude FROM Stops WHERE ID = ?";
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql)) {
+        OperationMetrics operation = metrics.operation("getStopById");
+        long started = System.nanoTime();
+        try {
+            PreparedStatement prepared_statement = prepareRead(STOP_BY_ID_SQL);
             prepared_statement.setInt(1, stopId);
             try (ResultSet resultset = prepared_statement.executeQuery()) {
                 if (resultset.next()) {
-                    Stop stop = new Stop(
-                            resultset.getInt("ID"),
-                            resultset.getString("StopName"),
-                            resultset.getDouble("Latitude"),
-                            resultset.getDouble("Longitude")
-                    );
-                    return Optional.of(stop);
+                    Stop stop = readStop(resultset, "ID", session().stops);
+                    return operation.completedRead(started, Optional.of(stop));
                 }
             }
+            return operation.completedRead(started, Optional.empty());
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
-        return Optional.empty();
     }
 
     /**
-     * Get all Stops whose name contains the substring (case-insensitive). For example, the parameter "Rice"
-     * would return a List of Stops containing "Whitehead Rd @ Rice Hall"
+     * Get all Stops whose name contains the substring (case-insensitive), in id order. For example, the parameter
+     * "Rice" would return a List of Stops containing "Whitehead Rd @ Rice Hall". Substrings of three or more
+     * characters are looked up in the StopNames trigram index; shorter ones scan the Stops table.
      */
     public List<Stop> getStopsByName(String subString) throws SQLException {
-        List<Stop> stops = new ArrayList<>();
-        String sql = "SELECT * FROM Stops WHERE StopName LIKE ?";
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql)) {
-            prepared_statement.setString(1, "%" + subString + "%");
-            try (ResultSet resultset = prepared_statement.executeQuery()) {
-                while (resultset.next()) {
-                    stops.add(new Stop(resultset.getInt("ID"), resultset.getString("StopName"),
-                            resultset.getDouble("Latitude"), resultset.getDouble("Longitude")));
+        OperationMetrics operation = metrics.operation("getStopsByName");
+        long started = System.nanoTime();
+        try {
+            List<Stop> stops = new ArrayList<>();
+            if (subString.codePointCount(0, subString.length()) >= 3) {
+                collectStops(stops, STOPS_BY_NAME_SUBSTRING_SQL, ftsPhrase(subString));
+                return operation.completedRead(started, stops);
+            }
+            String sql = "SELECT ID, StopName, Latitude, Longitude FROM Stops WHERE StopName LIKE ? ESCAPE '\\' " +
+                    "ORDER BY ID";
+            collectStops(stops, sql, "%" + escapeLike(subString) + "%");
+            return operation.completedRead(started, stops);
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Get up to limit Stops whose name starts with prefix (case-insensitive), in name order
+     *
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public List<Stop> getStopsByNamePrefix(String prefix, int limit) throws SQLException {
+        OperationMetrics operation = metrics.operation("getStopsByNamePrefix");
+        long started = System.nanoTime();
+        try {
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit must not be negative: " + limit);
+            }
+            List<Stop> stops = new ArrayList<>();
+            collectStops(stops, STOPS_BY_NAME_PREFIX_SQL, escapeLike(prefix) + "%", limit);
+            return operation.completedRead(started, stops);
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Search stop names for autocomplete, returning up to limit Stops ranked in three tiers: names that start with
+     * query (in name order), then names that contain it elsewhere (shortest first), then, if there is still room,
+     * names that share any three-character sequence with it, ranked by BM25 so closer spellings come first.
+     * Queries under three characters only match by prefix. Matching is case-insensitive throughout.
+     *
+     * @throws IllegalArgumentException if limit is negative
+     */
+    public List<Stop> searchStopsByName(String query, int limit) throws SQLException {
+        OperationMetrics operation = metrics.operation("searchStopsByName");
+        long started = System.nanoTime();
+        try {
+            Map<Integer, Stop> found = new LinkedHashMap<>();
+            for (Stop stop : getStopsByNamePrefix(query, limit)) {
+                found.put(stop.getId(), stop);
+            }
+            List<String> trigrams = trigrams(query);
+            if (found.size() < limit && !trigrams.isEmpty()) {
+                String substringSQL = "SELECT s.ID, s.StopName, s.Latitude, s.Longitude FROM StopNames n " +
+                        "JOIN Stops s ON s.ID = n.rowid WHERE StopNames MATCH ? " +
+                        "ORDER BY length(s.StopName), s.ID LIMIT ?";
+                List<Stop> stops = new ArrayList<>();
+                //the prefix matches are substring matches too, so ask for enough rows to fill limit without them
+                collectStops(stops, substringSQL, ftsPhrase(query), limit + found.size());
+                for (Stop stop : stops) {
+                    found.putIfAbsent(stop.getId(), stop);
                 }
             }
+            if (found.size() < limit && !trigrams.isEmpty()) {
+                String fuzzySQL = "SELECT s.ID, s.StopName, s.Latitude, s.Longitude FROM StopNames n " +
+                        "JOIN Stops s ON s.ID = n.rowid WHERE StopNames MATCH ? ORDER BY n.rank, s.ID LIMIT ?";
+                List<Stop> stops = new ArrayList<>();
+                collectStops(stops, fuzzySQL, String.join(" OR ", trigrams), limit + found.size());
+                for (Stop stop : stops) {
+                    found.putIfAbsent(stop.getId(), stop);
+                }
+            }
+            List<Stop> ranked = new ArrayList<>(found.values());
+            return operation.completedRead(started,
+                    ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked);
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Run a query whose parameters are bound in order and add each (ID, StopName, Latitude, Longitude) row to stops
+     */
+    private void collectStops(List<Stop> stops, String sql, Object... parameters) throws SQLException {
+        PreparedStatement prepared_statement = prepareRead(sql);
+        for (int i = 0; i < parameters.length; i++) {
+            prepared_statement.setObject(i + 1, parameters[i]);
+        }
+        StopIdentityMap stopsById = session().stops;
+        try (ResultSet resultset = prepared_statement.executeQuery()) {
+            while (resultset.next()) {
+                stops.add(readStop(resultset, "ID", stopsById));
+            }
+        }
+    }
+
+    /**
+     * Returns the session's canonical Stop for a row with StopName, Latitude and Longitude columns, only reading
+     * those the first time the session's snapshot sees the stop's id
+     */
+    private static Stop readStop(ResultSet resultset, String idColumn, StopIdentityMap stopsById)
+            throws SQLException {
+        int stopId = resultset.getInt(idColumn);
+        Stop stop = stopsById.get(stopId);
+        if (stop == null) {
+            stop = stopsById.intern(new Stop(stopId, resultset.getString("StopName"),
+                    resultset.getDouble("Latitude"), resultset.getDouble("Longitude")));
+        }
+        return stop;
+    }
+
+    private static String escapeLike(String text) {
+        return text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Quote text as a single FTS5 phrase. With the trigram tokenizer, a phrase matches any name containing text.
+     */
+    private static String ftsPhrase(String text) {
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * The distinct three-code-point sequences of text, each quoted as an FTS5 phrase
+     */
+    private static List<String> trigrams(String text) {
+        int[] codePoints = text.codePoints().toArray();
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= codePoints.length; i++) {
+            trigrams.add(ftsPhrase(new String(codePoints, i, 3)));
+        }
+        return new ArrayList<>(trigrams);
+    }
+
+    /**
+     * Update the name and coordinates of Stops that are already in the database, matching them by id. If any
+     * SQLExceptions occur, this method will rollback and throw the exception.
+     */
+    public void updateStops(List<Stop> stops) throws SQLException {
+        OperationMetrics operation = metrics.operation("updateStops");
+        long started = System.nanoTime();
+        String sql = "UPDATE Stops SET StopName = ?, Latitude = ?, Longitude = ? WHERE ID = ?";
+        session().stops.clear();
+        try {
+            PreparedStatement prepared_statement = prepareWrite(sql);
+            int pending = 0;
+            for (Stop stop : stops) {
+                prepared_statement.setString(1, stop.getName());
+                prepared_statement.setDouble(2, stop.getLatitude());
+                prepared_statement.setDouble(3, stop.getLongitude());
+                prepared_statement.setInt(4, stop.getId());
+                prepared_statement.addBatch();
+                if (++pending == batchSize) {
+                    prepared_statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            flushBatch(prepared_statement, pending);
+            operation.recordSuccess(started, 0, stops.size());
+        } catch (SQLException e) {
+            rollback();
+            operation.recordFailure(started, e);
+            throw e;
         }
-        return stops;
+    }
+
+    /**
+     * Delete Stops by id, along with any Routes entries that visit them. If any SQLExceptions occur, this method
+     * will rollback and throw the exception.
+     */
+    public void deleteStops(Collection<Integer> stopIds) throws SQLException {
+        session().stops.clear();
+        deleteByIds(metrics.operation("deleteStops"), "DELETE FROM Stops WHERE ID = ?", stopIds);
     }
 
     /**
@@ -171,135 +739,333 @@ public class DatabaseDriver {
      * Stops are added to the database via addStops, since Routes depends on the StopIds already being
      * in the database. If any SQLExceptions occur, this method will rollback all changes since
      * the method was called. This could happen if, for example, a BusLine contains a Stop that is not in the database.
+     * Rows are sent in batches of getBatchSize(); during a bulk load, missing Stops are only detected by commit().
      */
     public void addBusLines(List<BusLine> busLines) throws SQLException {
+        OperationMetrics operation = metrics.operation("addBusLines");
+        long started = System.nanoTime();
         String insertBusLineSQL = "INSERT INTO BusLines (ID, IsActive, LongName, ShortName) VALUES (?, ?, ?, ?)";
         String insertRouteSQL = "INSERT INTO Routes (BusLineID, StopID, RouteOrder) VALUES (?, ?, ?)";
 
-        try (PreparedStatement preparedStatementBusLine = connection.prepareStatement(insertBusLineSQL);
-             PreparedStatement preparedstatementRoute = connection.prepareStatement(insertRouteSQL)) {
+        try {
+            PreparedStatement preparedStatementBusLine = prepareWrite(insertBusLineSQL);
+            PreparedStatement preparedstatementRoute = prepareWrite(insertRouteSQL);
 
+            deferForeignKeysIfBulkLoad();
+            int pendingBusLines = 0;
+            int pendingRoutes = 0;
+            long rowsWritten = busLines.size();
             for (BusLine busLine : busLines) {
                 preparedStatementBusLine.setInt(1, busLine.getId());
                 preparedStatementBusLine.setBoolean(2, busLine.isActive());
                 preparedStatementBusLine.setString(3, busLine.getLongName());
                 preparedStatementBusLine.setString(4, busLine.getShortName());
-                preparedStatementBusLine.executeUpdate();
+                preparedStatementBusLine.addBatch();
+                pendingBusLines++;
+
+                int order = 0;
+                for (Stop stop : busLine.getRoute().getStops()) {
+                    preparedstatementRoute.setInt(1, busLine.getId());
+                    preparedstatementRoute.setInt(2, stop.getId());
+                    preparedstatementRoute.setInt(3, order++);
+                    preparedstatementRoute.addBatch();
+                    rowsWritten++;
+                    if (++pendingRoutes == batchSize) {
+                        //BusLines go first so the Routes rows never reference a line that isn't inserted yet
+                        flushBatch(preparedStatementBusLine, pendingBusLines);
+                        pendingBusLines = 0;
+                        preparedstatementRoute.executeBatch();
+                        pendingRoutes = 0;
+                    }
+                }
+                if (pendingBusLines == batchSize) {
+                    flushBatch(preparedStatementBusLine, pendingBusLines);
+                    pendingBusLines = 0;
+                }
+            }
+            flushBatch(preparedStatementBusLine, pendingBusLines);
+            flushBatch(preparedstatementRoute, pendingRoutes);
+            operation.recordSuccess(started, 0, rowsWritten);
+        } catch (SQLException e) {
+            rollback();
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Update the active flag and names of BusLines that are already in the database, matching them by id. Their
+     * Routes are left alone; use replaceRoutes for those. If any SQLExceptions occur, this method will rollback
+     * and throw the exception.
+     */
+    public void updateBusLines(List<BusLine> busLines) throws SQLException {
+        OperationMetrics operation = metrics.operation("updateBusLines");
+        long started = System.nanoTime();
+        String sql = "UPDATE BusLines SET IsActive = ?, LongName = ?, ShortName = ? WHERE ID = ?";
+        try {
+            PreparedStatement prepared_statement = prepareWrite(sql);
+            int pending = 0;
+            for (BusLine busLine : busLines) {
+                prepared_statement.setBoolean(1, busLine.isActive());
+                prepared_statement.setString(2, busLine.getLongName());
+                prepared_statement.setString(3, busLine.getShortName());
+                prepared_statement.setInt(4, busLine.getId());
+                prepared_statement.addBatch();
+                if (++pending == batchSize) {
+                    prepared_statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            flushBatch(prepared_statement, pending);
+            operation.recordSuccess(started, 0, busLines.size());
+        } catch (SQLException e) {
+            rollback();
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
 
+    /**
+     * Replace the stored Routes of BusLines that are already in the database with their current Routes. If any
+     * SQLExceptions occur, this method will rollback and throw the exception.
+     */
+    public void replaceRoutes(List<BusLine> busLines) throws SQLException {
+        OperationMetrics operation = metrics.operation("replaceRoutes");
+        long started = System.nanoTime();
+        String deleteRouteSQL = "DELETE FROM Routes WHERE BusLineID = ?";
+        String insertRouteSQL = "INSERT INTO Routes (BusLineID, StopID, RouteOrder) VALUES (?, ?, ?)";
+        try {
+            PreparedStatement preparedStatementDelete = prepareWrite(deleteRouteSQL);
+            PreparedStatement preparedstatementRoute = prepareWrite(insertRouteSQL);
+            for (BusLine busLine : busLines) {
+                preparedStatementDelete.setInt(1, busLine.getId());
+                preparedStatementDelete.addBatch();
+            }
+            flushBatch(preparedStatementDelete, busLines.size());
+
+            int pending = 0;
+            long rowsWritten = 0;
+            for (BusLine busLine : busLines) {
                 int order = 0;
                 for (Stop stop : busLine.getRoute().getStops()) {
                     preparedstatementRoute.setInt(1, busLine.getId());
                     preparedstatementRoute.setInt(2, stop.getId());
                     preparedstatementRoute.setInt(3, order++);
-                    preparedstatementRoute.executeUpdate();
+                    preparedstatementRoute.addBatch();
+                    rowsWritten++;
+                    if (++pending == batchSize) {
+                        preparedstatementRoute.executeBatch();
+                        pending = 0;
+                    }
+                }
+            }
+            flushBatch(preparedstatementRoute, pending);
+            operation.recordSuccess(started, 0, rowsWritten);
+        } catch (SQLException e) {
+            rollback();
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Delete BusLines by id, along with their Routes. If any SQLExceptions occur, this method will rollback and
+     * throw the exception.
+     */
+    public void deleteBusLines(Collection<Integer> busLineIds) throws SQLException {
+        deleteByIds(metrics.operation("deleteBusLines"), "DELETE FROM BusLines WHERE ID = ?", busLineIds);
+    }
+
+    private void deleteByIds(OperationMetrics operation, String sql, Collection<Integer> ids) throws SQLException {
+        long started = System.nanoTime();
+        try {
+            PreparedStatement prepared_statement = prepareWrite(sql);
+            int pending = 0;
+            for (int id : ids) {
+                prepared_statement.setInt(1, id);
+                prepared_statement.addBatch();
+                if (++pending == batchSize) {
+                    prepared_statement.executeBatch();
+                    pending = 0;
                 }
             }
+            flushBatch(prepared_statement, pending);
+            operation.recordSuccess(started, 0, ids.size());
         } catch (SQLException e) {
             rollback();
+            operation.recordFailure(started, e);
             throw e;
         }
     }
 
+    private static void flushBatch(PreparedStatement preparedStatement, int pending) throws SQLException {
+        if (pending > 0) {
+            preparedStatement.executeBatch();
+        }
+    }
+
     /**
-     * Return a list of all BusLines
+     * Return a list of all BusLines. Their Routes are loaded, all with one query, the first time any of them is
+     * asked for its Route.
      */
     public List<BusLine> getBusLines() {
+        OperationMetrics operation = metrics.operation("getBusLines");
+        long started = System.nanoTime();
         List<BusLine> busLines = new ArrayList<>();
         String sql = "SELECT ID, IsActive, LongName, ShortName FROM BusLines";
 
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql);
-             ResultSet resultset = prepared_statement.executeQuery()) {
+        try (ResultSet resultset = prepareRead(sql).executeQuery()) {
+            RouteBatch routeBatch = new RouteBatch(this);
             while (resultset.next()) {
-                BusLine busLine = new BusLine(
-                        resultset.getInt("ID"),
-                        resultset.getBoolean("IsActive"),
-                        resultset.getString("LongName"),
-                        resultset.getString("ShortName")
-                );
-                busLines.add(busLine);
+                busLines.add(readBusLine(resultset, routeBatch));
             }
         } catch (SQLException e) {
+            operation.recordFailure(started, e);
             throw new RuntimeException("Error accessing database", e);
         }
-        return busLines;
+        return operation.completedRead(started, busLines);
     }
 
     /**
-     * Get a BusLine by its id number. Return Optional.empty() if no busLine is found
+     * Return a list of all BusLines with their Routes populated in-order, loaded with a single ordered scan over
+     * BusLines, Routes and Stops instead of one getRouteForBusLine query per line. Every Route that visits a stop
+     * shares the session's canonical Stop object.
+     */
+    public List<BusLine> getBusLinesWithRoutes() throws SQLException {
+        OperationMetrics operation = metrics.operation("getBusLinesWithRoutes");
+        long started = System.nanoTime();
+        try {
+            List<BusLine> busLines = new ArrayList<>();
+            StopIdentityMap stopsById = session().stops;
+            long rowsRead = 0;
+            String sql = "SELECT b.ID AS BusLineID, b.IsActive, b.LongName, b.ShortName, " +
+                    "s.ID AS StopID, s.StopName, s.Latitude, s.Longitude FROM BusLines b " +
+                    "LEFT JOIN Routes r ON r.BusLineID = b.ID " +
+                    "LEFT JOIN Stops s ON s.ID = r.StopID " +
+                    "ORDER BY b.ID, r.RouteOrder";
+
+            try (ResultSet resultset = prepareRead(sql).executeQuery()) {
+                BusLine busLine = null;
+                while (resultset.next()) {
+                    rowsRead++;
+                    int busLineId = resultset.getInt("BusLineID");
+                    if (busLine == null || busLine.getId() != busLineId) {
+                        busLine = new BusLine(busLineId,
+                                resultset.getBoolean("IsActive"),
+                                resultset.getString("LongName"),
+                                resultset.getString("ShortName"));
+                        busLines.add(busLine);
+                    }
+                    resultset.getInt("StopID");
+                    if (resultset.wasNull()) {
+                        continue;
+                    }
+                    busLine.addStopToRoute(readStop(resultset, "StopID", stopsById));
+                }
+            }
+            operation.recordSuccess(started, rowsRead, 0);
+            return busLines;
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    private static BusLine readBusLine(ResultSet resultset, RouteBatch routeBatch) throws SQLException {
+        return routeBatch.newBusLine(resultset.getInt("ID"),
+                resultset.getBoolean("IsActive"),
+                resultset.getString("LongName"),
+                resultset.getString("ShortName"));
+    }
+
+    /**
+     * Get a BusLine by its id number, with its Route loaded on first use. Return Optional.empty() if no busLine is
+     * found
      */
     public Optional<BusLine> getBusLinesById(int busLineId) throws SQLException {
-        String sql = "SELECT * FROM BusLines WHERE ID = ?";
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql)) {
+        OperationMetrics operation = metrics.operation("getBusLinesById");
+        long started = System.nanoTime();
+        try {
+            PreparedStatement prepared_statement = prepareRead(BUS_LINE_BY_ID_SQL);
             prepared_statement.setInt(1, busLineId);
             try (ResultSet resultset = prepared_statement.executeQuery()) {
                 if (resultset.next()) {
-                    return Optional.of(new BusLine(resultset.getInt("ID"),
-                            resultset.getBoolean("IsActive"),
-                            resultset.getString("LongName"),
-                            resultset.getString("ShortName")));
+                    return operation.completedRead(started, Optional.of(readBusLine(resultset, new RouteBatch(this))));
                 }
             }
+            return operation.completedRead(started, Optional.empty());
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
-        return Optional.empty();
     }
 
     /**
-     * Get BusLine by its full long name (case-insensitive). Return Optional.empty() if no busLine is found.
+     * Get BusLine by its full long name (case-insensitive), with its Route loaded on first use. Return
+     * Optional.empty() if no busLine is found.
      */
     public Optional<BusLine> getBusLineByLongName(String longName) throws SQLException {
-        String sql = "SELECT * FROM BusLines WHERE LongName LIKE ?";
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql)) {
+        OperationMetrics operation = metrics.operation("getBusLineByLongName");
+        long started = System.nanoTime();
+        try {
+            PreparedStatement prepared_statement = prepareRead(BUS_LINE_BY_LONG_NAME_SQL);
             prepared_statement.setString(1, longName);
             try (ResultSet resultset = prepared_statement.executeQuery()) {
                 if (resultset.next()) {
-                    return Optional.of(new BusLine(resultset.getInt("ID"),
-                            resultset.getBoolean("IsActive"),
-                            resultset.getString("LongName"),
-                            resultset.getString("ShortName")));
+                    return operation.completedRead(started, Optional.of(readBusLine(resultset, new RouteBatch(this))));
                 }
             }
+            return operation.completedRead(started, Optional.empty());
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
-        return Optional.empty();
     }
 
     /**
-     * Get BusLine by its full short name (case-insensitive). Return Optional.empty() if no busLine is found.
+     * Get BusLine by its full short name (case-insensitive), with its Route loaded on first use. Return
+     * Optional.empty() if no busLine is found.
      */
     public Optional<BusLine> getBusLineByShortName(String shortName) throws SQLException {
-        String sql = "SELECT * FROM BusLines WHERE ShortName LIKE ?";
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql)) {
+        OperationMetrics operation = metrics.operation("getBusLineByShortName");
+        long started = System.nanoTime();
+        try {
+            PreparedStatement prepared_statement = prepareRead(BUS_LINE_BY_SHORT_NAME_SQL);
             prepared_statement.setString(1, shortName);
             try (ResultSet resultset = prepared_statement.executeQuery()) {
                 if (resultset.next()) {
-                    return Optional.of(new BusLine(resultset.getInt("ID"),
-                            resultset.getBoolean("IsActive"),
-                            resultset.getString("LongName"),
-                            resultset.getString("ShortName")));
+                    return operation.completedRead(started, Optional.of(readBusLine(resultset, new RouteBatch(this))));
                 }
             }
+            return operation.completedRead(started, Optional.empty());
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
-        return Optional.empty();
     }
 
     /**
-     * Get all BusLines that visit a particular stop
+     * Get all BusLines that visit a particular stop. Their Routes are loaded, all with one query, the first time
+     * any of them is asked for its Route.
      */
     public List<BusLine> getBusLinesByStop(Stop stop) throws SQLException {
-        List<BusLine> busLines = new ArrayList<>();
-        String sql = "SELECT DISTINCT b.ID, b.IsActive, b.LongName, b.ShortName FROM BusLines b " +
-                "JOIN Routes r ON b.ID = r.BusLineID WHERE r.StopID = ?";
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql)) {
+        OperationMetrics operation = metrics.operation("getBusLinesByStop");
+        long started = System.nanoTime();
+        try {
+            List<BusLine> busLines = new ArrayList<>();
+            PreparedStatement prepared_statement = prepareRead(BUS_LINES_BY_STOP_SQL);
             prepared_statement.setInt(1, stop.getId());
             try (ResultSet resultset = prepared_statement.executeQuery()) {
+                RouteBatch routeBatch = new RouteBatch(this);
                 while (resultset.next()) {
-                    busLines.add(new BusLine(resultset.getInt("ID"),
-                            resultset.getBoolean("IsActive"),
-                            resultset.getString("LongName"),
-                            resultset.getString("ShortName")));
+                    busLines.add(readBusLine(resultset, routeBatch));
                 }
             }
+            return operation.completedRead(started, busLines);
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
-        return busLines;
     }
 
     /**
@@ -310,25 +1076,102 @@ public class DatabaseDriver {
      * @throws java.util.NoSuchElementException if busLine is not in the database
      */
     public Route getRouteForBusLine(BusLine busLine) throws SQLException {
-        List<Stop> stops = new ArrayList<>();
-        String sql = "SELECT s.ID, s.StopName, s.Latitude, s.Longitude FROM Stops s "
-                + "JOIN Routes r ON s.ID = r.StopID WHERE r.BusLineID = ? ORDER BY r.RouteOrder";
-
-        try (PreparedStatement prepared_statement = connection.prepareStatement(sql)) {
+        OperationMetrics operation = metrics.operation("getRouteForBusLine");
+        long started = System.nanoTime();
+        try {
+            List<Stop> stops = new ArrayList<>();
+            StopIdentityMap stopsById = session().stops;
+            PreparedStatement prepared_statement = prepareRead(ROUTE_FOR_BUS_LINE_SQL);
             prepared_statement.setInt(1, busLine.getId());
             try (ResultSet resultset = prepared_statement.executeQuery()) {
                 while (resultset.next()) {
-                    Stop stop = new Stop(
-                            resultset.getInt("ID"),
-                            resultset.getString("StopName"),
-                            resultset.getDouble("Latitude"),
-                            resultset.getDouble("Longitude")
-                    );
-                    stops.add(stop);
+                    stops.add(readStop(resultset, "ID", stopsById));
                 }
             }
+            operation.recordSuccess(started, stops.size(), 0);
+            return new Route(stops);
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the Routes of busLines keyed by line id, with one query. Lines without a Route in the database have
+     * no entry. Runs in the session if the calling thread opened it, and every Route that visits a stop then shares
+     * the session's canonical Stop object. Otherwise the query runs on a connection of its own (a reader session
+     * in concurrent mode, a connection leased from the pool, or a new connection to the file) and sees only
+     * committed data, so a line's Route can be loaded after the query that read the line has disconnected, or from
+     * another thread, without touching the session's transaction.
+     */
+    public Map<Integer, Route> getRoutesForBusLines(Collection<BusLine> busLines) throws SQLException {
+        Session current = currentSession();
+        if (current != null && current.owner == Thread.currentThread()) {
+            return queryRoutesForBusLines(busLines, prepareRead(ROUTES_FOR_BUS_LINES_SQL), current.stops);
+        }
+        if (isConcurrent()) {
+            connect();
+            try {
+                return queryRoutesForBusLines(busLines, prepareRead(ROUTES_FOR_BUS_LINES_SQL), session().stops);
+            } finally {
+                disconnect();
+            }
+        }
+        if (connectionPool != null) {
+            Connection connection = connectionPool.lease();
+            try {
+                return queryRoutesForBusLines(busLines,
+                        connectionPool.getStatementCache(connection).prepare(ROUTES_FOR_BUS_LINES_SQL),
+                        new StopIdentityMap());
+            } finally {
+                connectionPool.release(connection);
+            }
+        }
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + sqliteFilename);
+             StatementCache statements = new StatementCache(connection)) {
+            return queryRoutesForBusLines(busLines, statements.prepare(ROUTES_FOR_BUS_LINES_SQL),
+                    new StopIdentityMap());
+        }
+    }
+
+    private Map<Integer, Route> queryRoutesForBusLines(Collection<BusLine> busLines,
+                                                       PreparedStatement prepared_statement,
+                                                       StopIdentityMap stopsById) throws SQLException {
+        OperationMetrics operation = metrics.operation("getRoutesForBusLines");
+        long started = System.nanoTime();
+        try {
+            StringBuilder busLineIds = new StringBuilder("[");
+            for (BusLine busLine : busLines) {
+                if (busLineIds.length() > 1) {
+                    busLineIds.append(',');
+                }
+                busLineIds.append(busLine.getId());
+            }
+            busLineIds.append(']');
+
+            Map<Integer, Route> routes = new HashMap<>();
+            long rowsRead = 0;
+            prepared_statement.setString(1, busLineIds.toString());
+            try (ResultSet resultset = prepared_statement.executeQuery()) {
+                Route route = null;
+                int routeBusLineId = 0;
+                while (resultset.next()) {
+                    rowsRead++;
+                    int busLineId = resultset.getInt("BusLineID");
+                    if (route == null || routeBusLineId != busLineId) {
+                        route = new Route();
+                        routeBusLineId = busLineId;
+                        routes.put(busLineId, route);
+                    }
+                    route.add(readStop(resultset, "ID", stopsById));
+                }
+            }
+            operation.recordSuccess(started, rowsRead, 0);
+            return routes;
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
         }
-        return new Route(stops);
     }
 
     /**
@@ -336,18 +1179,68 @@ public class DatabaseDriver {
      * contents of Routes firesultsett in order to avoid violating foreign key constraints.
      */
     public void clearTables() throws SQLException {
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute("DELETE FROM Routes");
-            stmt.execute("DELETE FROM BusLines");
-            stmt.execute("DELETE FROM Stops");
+        OperationMetrics operation = metrics.operation("clearTables");
+        long started = System.nanoTime();
+        session().stops.clear();
+        try {
+            try (Statement stmt = writeConnection().createStatement()) {
+                int rowsWritten = stmt.executeUpdate("DELETE FROM Routes");
+                rowsWritten += stmt.executeUpdate("DELETE FROM BusLines");
+                rowsWritten += stmt.executeUpdate("DELETE FROM Stops");
+                operation.recordSuccess(started, 0, rowsWritten);
+            }
+        } catch (SQLException e) {
+            operation.recordFailure(started, e);
+            throw e;
+        }
+    }
+
+    /**
+     * The connections one connect()/disconnect() session works with. Outside concurrent mode the writer and reader
+     * are the same connection, opened by connect(); in concurrent mode each is leased when the session first needs
+     * it. A session is only ever used by one thread.
+     */
+    private static final class Session {
+        private Connection writer;
+        private StatementCache writerStatements;
+        private Connection reader;
+        private StatementCache readerStatements;
+        private boolean bulkLoad;
+        /* The pragmas that undo beginBulkLoad(), read from the connection before it changed them */
+        private List<String> settingsBeforeBulkLoad;
+        /* Sessions are opened by connect(), on the thread that may use them */
+        private final Thread owner = Thread.currentThread();
+        /* Stops read since the last commit or rollback, cleared whenever this session changes Stops rows */
+        private final StopIdentityMap stops = new StopIdentityMap();
+
+        Session() { }
+
+        Session(Connection connection, StatementCache statements) {
+            this.writer = connection;
+            this.writerStatements = statements;
+            this.reader = connection;
+            this.readerStatements = statements;
+        }
+
+        List<StatementCache> statementCaches() {
+            List<StatementCache> statementCaches = new ArrayList<>(2);
+            if (writerStatements != null) {
+                statementCaches.add(writerStatements);
+            }
+            if (readerStatements != null && readerStatements != writerStatements) {
+                statementCaches.add(readerStatements);
+            }
+            return statementCaches;
         }
     }
 
     public static void main(String[] args) {
         Configuration config = new Configuration();
         DatabaseDriver databaseDriver = new DatabaseDriver(config);
-        StopReader stopReader = new StopReader(config);
-        BusLineReader busLineReader = new BusLineReader(config);
+        TransitFeedFetcher feedFetcher = new TransitFeedFetcher(config);
+        feedFetcher.start();
+        StopReader stopReader = new StopReader(feedFetcher);
+        BusLineReader busLineReader = new BusLineReader(config, feedFetcher);
 
         try {
             databaseDriver.connect();
@@ -397,6 +1290,7 @@ public class DatabaseDriver {
             System.err.println("Database error: " + e.getMessage());
             e.printStackTrace();
         } finally {
+            feedFetcher.close();
             try {
                 if (databaseDriver != null) {
                     databaseDriver.disconnect();
@@ -0,0 +1,399 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseDriverTest {
+    private DatabaseDriver databaseDriver;
+    private String databaseFilename;
+
+    @TempDir
+    Path databaseDirectory;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        databaseFilename = databaseDirectory.resolve("test.sqlite").toString();
+        databaseDriver = new DatabaseDriver(databaseFilename);
+        databaseDriver.connect();
+        databaseDriver.createTables();
+        databaseDriver.addStops(List.of(
+                new Stop(1, "Whitehead Rd @ Rice Hall", 38.0, -78.0),
+                new Stop(2, "Rice St", 38.0, -78.0),
+                new Stop(3, "Emmet St @ Ivy Rd", 38.0, -78.0),
+                new Stop(4, "100% Main_St", 38.0, -78.0),
+                new Stop(5, "Ricey Ave", 38.0, -78.0)));
+        databaseDriver.commit();
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        databaseDriver.disconnect();
+    }
+
+    private static List<Integer> ids(List<Stop> stops) {
+        return stops.stream().map(Stop::getId).toList();
+    }
+
+    @Test
+    void getStopsByName() throws SQLException {
+        assertEquals(List.of(1, 2, 5), ids(databaseDriver.getStopsByName("rice")));
+        assertEquals(List.of(3), ids(databaseDriver.getStopsByName("t @ I")));
+        assertTrue(databaseDriver.getStopsByName("xyz").isEmpty());
+    }
+
+    @Test
+    void getStopsByName_short() throws SQLException {
+        assertEquals(List.of(3), ids(databaseDriver.getStopsByName("iv")));
+        assertEquals(5, databaseDriver.getStopsByName("").size());
+    }
+
+    @Test
+    void getStopsByName_wildcardsAreLiteral() throws SQLException {
+        assertEquals(List.of(4), ids(databaseDriver.getStopsByName("0% M")));
+        assertEquals(List.of(4), ids(databaseDriver.getStopsByName("_")));
+    }
+
+    @Test
+    void getStopsByName_followsChanges() throws SQLException {
+        databaseDriver.updateStops(List.of(new Stop(2, "Rugby Rd", 38.0, -78.0)));
+        databaseDriver.deleteStops(List.of(5));
+        databaseDriver.addStops(List.of(new Stop(6, "Price Ln", 38.0, -78.0)));
+        databaseDriver.commit();
+        assertEquals(List.of(1, 6), ids(databaseDriver.getStopsByName("rice")));
+        assertEquals(List.of(2), ids(databaseDriver.getStopsByName("rugby")));
+    }
+
+    @Test
+    void getStopsByNamePrefix() throws SQLException {
+        assertEquals(List.of(2, 5), ids(databaseDriver.getStopsByNamePrefix("RI", 10)));
+        assertEquals(List.of(2), ids(databaseDriver.getStopsByNamePrefix("ri", 1)));
+        assertThrows(IllegalArgumentException.class, () -> databaseDriver.getStopsByNamePrefix("ri", -1));
+    }
+
+    @Test
+    void searchStopsByName_prefixThenSubstringThenFuzzy() throws SQLException {
+        //"Rice St" and "Ricey Ave" start with "rice", "Whitehead Rd @ Rice Hall" contains it, and "Price Ln"
+        //only shares the trigrams "ric" and "ice"
+        databaseDriver.addStops(List.of(new Stop(6, "Price Ln", 38.0, -78.0)));
+        databaseDriver.commit();
+        assertEquals(List.of(2, 5, 6, 1), ids(databaseDriver.searchStopsByName("rice", 10)));
+        List<Integer> fuzzy = ids(databaseDriver.searchStopsByName("rice st", 10));
+        assertEquals(2, fuzzy.get(0));
+        assertTrue(fuzzy.containsAll(List.of(1, 5, 6)));
+    }
+
+    @Test
+    void searchStopsByName_misspelled() throws SQLException {
+        assertEquals(3, databaseDriver.searchStopsByName("Emmit St", 1).get(0).getId());
+    }
+
+    @Test
+    void searchStopsByName_limit() throws SQLException {
+        assertEquals(List.of(2, 5), ids(databaseDriver.searchStopsByName("rice", 2)));
+        assertTrue(databaseDriver.searchStopsByName("rice", 0).isEmpty());
+    }
+
+    @Test
+    void queryPlans_useNameIndexes() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFilename)) {
+            List<String> prefixPlan = queryPlan(connection, DatabaseDriver.STOPS_BY_NAME_PREFIX_SQL, "ri%", 10);
+            assertTrue(prefixPlan.stream().anyMatch(step -> step.contains("INDEX StopsByName")), prefixPlan::toString);
+            List<String> substringPlan = queryPlan(connection, DatabaseDriver.STOPS_BY_NAME_SUBSTRING_SQL, "\"rice\"");
+            assertTrue(substringPlan.stream().anyMatch(step -> step.contains("VIRTUAL TABLE")), substringPlan::toString);
+            assertTrue(substringPlan.stream().noneMatch(step -> step.startsWith("SCAN s")), substringPlan::toString);
+        }
+    }
+
+    @Test
+    void queryPlans_routesForBusLinesUsePrimaryKey() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFilename)) {
+            List<String> plan = queryPlan(connection, DatabaseDriver.ROUTES_FOR_BUS_LINES_SQL, "[1,2]");
+            assertTrue(plan.stream().anyMatch(step -> step.startsWith("SEARCH r USING PRIMARY KEY")), plan::toString);
+            assertTrue(plan.stream().noneMatch(step -> step.contains("TEMP B-TREE")), plan::toString);
+        }
+    }
+
+    private static List<String> queryPlan(Connection connection, String sql, Object... parameters)
+            throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            try (ResultSet resultset = statement.executeQuery()) {
+                while (resultset.next()) {
+                    plan.add(resultset.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+
+    @Test
+    void metrics_countCallsRowsAndErrors() throws SQLException {
+        databaseDriver.getStopsByName("rice");
+        databaseDriver.getStopById(99);
+        assertThrows(SQLException.class, () -> databaseDriver.addStops(List.of(new Stop(1, "Duplicate", 0, 0))));
+
+        Metrics metrics = databaseDriver.getMetrics();
+        assertEquals(1, metrics.operation("getStopsByName").getCalls());
+        assertEquals(3, metrics.operation("getStopsByName").getRowsRead());
+        assertEquals(0, metrics.operation("getStopById").getRowsRead());
+        OperationMetrics addStops = metrics.operation("addStops");
+        assertEquals(2, addStops.getCalls());
+        assertEquals(1, addStops.getErrors());
+        assertEquals(5, addStops.getRowsWritten());
+        assertInstanceOf(SQLException.class, addStops.getLastError());
+        assertEquals(1, metrics.operation("commit").getCalls());
+    }
+
+    private void addBusLines() throws SQLException {
+        Stop whitehead = databaseDriver.getStopById(1).orElseThrow();
+        Stop rice = databaseDriver.getStopById(2).orElseThrow();
+        Stop emmet = databaseDriver.getStopById(3).orElseThrow();
+        databaseDriver.addBusLines(List.of(
+                new BusLine(1, true, "Line One", "L1", new Route(new ArrayList<>(List.of(whitehead, rice, emmet)))),
+                new BusLine(2, true, "Line Two", "L2", new Route(new ArrayList<>(List.of(emmet, rice)))),
+                new BusLine(3, false, "Line Three", "L3")));
+        databaseDriver.commit();
+    }
+
+    @Test
+    void getBusLines_loadRoutesLazilyInOneQuery() throws SQLException {
+        addBusLines();
+        List<BusLine> busLines = databaseDriver.getBusLines();
+        OperationMetrics routeQueries = databaseDriver.getMetrics().operation("getRoutesForBusLines");
+        assertTrue(busLines.stream().noneMatch(BusLine::isRouteLoaded));
+        assertEquals(0, routeQueries.getCalls());
+
+        BusLine lineOne = busLines.get(0);
+        assertEquals(List.of(1, 2, 3), ids(lineOne.getRoute().getStops()));
+        assertTrue(busLines.stream().allMatch(BusLine::isRouteLoaded));
+        BusLine lineTwo = busLines.get(1);
+        assertEquals(List.of(3, 2), ids(lineTwo.getRoute().getStops()));
+        assertTrue(busLines.get(2).getRoute().isEmpty());
+        assertSame(lineOne.getRoute().get(2), lineTwo.getRoute().get(0));
+        assertEquals(1, routeQueries.getCalls());
+        assertEquals(5, routeQueries.getRowsRead());
+    }
+
+    @Test
+    void getBusLinesWithRoutes_lineWithoutRouteRows_hasEmptyRoute() throws SQLException {
+        addBusLines();
+        List<BusLine> busLines = databaseDriver.getBusLinesWithRoutes();
+
+        assertEquals(List.of(1, 2, 3), busLines.stream().map(BusLine::getId).toList());
+        assertEquals(List.of(1, 2, 3), ids(busLines.get(0).getRoute().getStops()));
+        assertEquals(List.of(3, 2), ids(busLines.get(1).getRoute().getStops()));
+        BusLine lineThree = busLines.get(2);
+        assertEquals("Line Three", lineThree.getLongName());
+        assertFalse(lineThree.isActive());
+        assertTrue(lineThree.getRoute().isEmpty());
+        assertEquals(6, databaseDriver.getMetrics().operation("getBusLinesWithRoutes").getRowsRead());
+    }
+
+    @Test
+    void getBusLinesByStop_loadRoutesAfterDisconnect() throws SQLException {
+        addBusLines();
+        List<BusLine> busLines = databaseDriver.getBusLinesByStop(new Stop(2, "Rice St", 38.0, -78.0));
+        databaseDriver.disconnect();
+        try {
+            assertEquals(List.of(1, 2), busLines.stream().map(BusLine::getId).sorted().toList());
+            assertEquals(2, busLines.stream().mapToInt(busLine -> busLine.getRoute().size()).min().orElseThrow());
+            assertEquals(1, databaseDriver.getMetrics().operation("getRoutesForBusLines").getCalls());
+        } finally {
+            databaseDriver.connect();
+        }
+    }
+
+    @Test
+    void getRoute_fromAnotherThread_leavesSessionAlone() throws Exception {
+        addBusLines();
+        List<BusLine> busLines = databaseDriver.getBusLines();
+        databaseDriver.updateStops(List.of(new Stop(2, "Rice Street", 38.0, -78.0)));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Route route = executor.submit(() -> busLines.get(0).getRoute()).get(10, TimeUnit.SECONDS);
+            assertEquals(List.of(1, 2, 3), ids(route.getStops()));
+            assertEquals("Rice St", route.get(1).getName());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Rice Street", databaseDriver.getStopById(2).orElseThrow().getName());
+        databaseDriver.commit();
+        assertEquals("Rice Street", databaseDriver.getStopById(2).orElseThrow().getName());
+    }
+
+    @Test
+    void setRoute_replacesLazyRoute() throws SQLException {
+        addBusLines();
+        BusLine lineOne = databaseDriver.getBusLineByShortName("L1").orElseThrow();
+        Route replacement = new Route();
+        lineOne.setRoute(replacement);
+        assertTrue(lineOne.isRouteLoaded());
+        assertSame(replacement, lineOne.getRoute());
+        assertEquals(0, databaseDriver.getMetrics().operation("getRoutesForBusLines").getCalls());
+    }
+
+    @Test
+    void stopReads_shareCanonicalStopsUntilCommit() throws SQLException {
+        addBusLines();
+        List<Stop> allStops = databaseDriver.getAllStops();
+        List<BusLine> busLines = databaseDriver.getBusLinesWithRoutes();
+        Stop rice = allStops.get(1);
+        assertSame(rice, busLines.get(0).getRoute().get(1));
+        assertSame(rice, busLines.get(1).getRoute().get(1));
+        assertSame(rice, databaseDriver.getStopById(2).orElseThrow());
+        assertSame(rice, databaseDriver.getStopsByName("Rice St").get(0));
+        assertSame(rice, databaseDriver.getRouteForBusLine(busLines.get(1)).get(1));
+
+        databaseDriver.commit();
+        assertNotSame(rice, databaseDriver.getStopById(2).orElseThrow());
+    }
+
+    @Test
+    void updateStops_replacesCanonicalStops() throws SQLException {
+        Stop before = databaseDriver.getStopById(2).orElseThrow();
+        databaseDriver.updateStops(List.of(new Stop(2, "Rice Street", 38.5, -78.5)));
+        Stop after = databaseDriver.getStopById(2).orElseThrow();
+        assertEquals("Rice St", before.getName());
+        assertEquals("Rice Street", after.getName());
+        assertEquals(38.5, after.getLatitude());
+    }
+
+    @Test
+    void statementCache_reusesLookups() throws SQLException {
+        databaseDriver.getStopById(1);
+        long misses = databaseDriver.getStatementCacheMisses();
+        long hits = databaseDriver.getStatementCacheHits();
+        for (int i = 1; i <= 5; i++) {
+            assertEquals(i, databaseDriver.getStopById(i).orElseThrow().getId());
+        }
+        assertEquals(misses, databaseDriver.getStatementCacheMisses());
+        assertEquals(hits + 5, databaseDriver.getStatementCacheHits());
+    }
+
+    @Test
+    void statementCache_survivesPooledLeases() throws SQLException {
+        try (ConnectionPool connectionPool = new ConnectionPool(databaseFilename, 1)) {
+            DatabaseDriver pooledDriver = new DatabaseDriver(connectionPool);
+            pooledDriver.connect();
+            pooledDriver.getStopById(1);
+            long misses = pooledDriver.getStatementCacheMisses();
+            pooledDriver.disconnect();
+
+            pooledDriver.connect();
+            assertEquals(2, pooledDriver.getStopById(2).orElseThrow().getId());
+            assertEquals(misses, pooledDriver.getStatementCacheMisses());
+            pooledDriver.disconnect();
+        }
+    }
+
+    private String journalMode() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFilename);
+             Statement statement = connection.createStatement();
+             ResultSet resultset = statement.executeQuery("PRAGMA journal_mode")) {
+            return resultset.getString(1);
+        }
+    }
+
+    private void bulkLoadStop(int stopId) throws SQLException {
+        databaseDriver.beginBulkLoad();
+        databaseDriver.addStops(List.of(new Stop(stopId, "Bulk " + stopId, 38.0, -78.0)));
+        databaseDriver.commit();
+        databaseDriver.endBulkLoad();
+    }
+
+    @Test
+    void bulkLoad_restoresRollbackJournal() throws SQLException {
+        bulkLoadStop(6);
+        assertEquals("delete", journalMode());
+        assertEquals(6, databaseDriver.getAllStops().size());
+    }
+
+    private static List<Stop> newStops(int firstId, int count) {
+        List<Stop> stops = new ArrayList<>();
+        for (int id = firstId; id < firstId + count; id++) {
+            stops.add(new Stop(id, "Stop " + id, 38.0, -78.0));
+        }
+        return stops;
+    }
+
+    @Test
+    void addStops_batchSizeBoundaries() throws SQLException {
+        databaseDriver.setBatchSize(3);
+        databaseDriver.addStops(newStops(6, 3));
+        databaseDriver.addStops(newStops(9, 4));
+        databaseDriver.commit();
+        assertEquals(12, databaseDriver.getAllStops().size());
+        assertEquals("Stop 12", databaseDriver.getStopById(12).orElseThrow().getName());
+    }
+
+    @Test
+    void addBusLines_batchSizeBoundaries() throws SQLException {
+        databaseDriver.setBatchSize(3);
+        List<Stop> stops = databaseDriver.getAllStops();
+        databaseDriver.addBusLines(List.of(
+                new BusLine(1, true, "Line One", "L1", new Route(new ArrayList<>(stops.subList(0, 3)))),
+                new BusLine(2, true, "Line Two", "L2", new Route(new ArrayList<>(stops.subList(0, 4)))),
+                new BusLine(3, true, "Line Three", "L3")));
+        databaseDriver.addBusLines(List.of(
+                new BusLine(4, true, "Line Four", "L4"),
+                new BusLine(5, true, "Line Five", "L5"),
+                new BusLine(6, true, "Line Six", "L6"),
+                new BusLine(7, true, "Line Seven", "L7", new Route(new ArrayList<>(stops.subList(1, 2))))));
+        databaseDriver.commit();
+
+        List<BusLine> busLines = databaseDriver.getBusLinesWithRoutes();
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7), busLines.stream().map(BusLine::getId).toList());
+        assertEquals(List.of(1, 2, 3), ids(busLines.get(0).getRoute().getStops()));
+        assertEquals(List.of(1, 2, 3, 4), ids(busLines.get(1).getRoute().getStops()));
+        assertEquals(List.of(2), ids(busLines.get(6).getRoute().getStops()));
+    }
+
+    @Test
+    void bulkLoad_missingStopFailsCommit_rollsBackWholeLoad() throws SQLException {
+        databaseDriver.beginBulkLoad();
+        databaseDriver.addStops(newStops(6, 1));
+        Route missingStop = new Route(new ArrayList<>(List.of(new Stop(99, "Nowhere", 38.0, -78.0))));
+        databaseDriver.addBusLines(List.of(new BusLine(4, true, "Line Four", "L4", missingStop)));
+
+        assertThrows(SQLException.class, () -> databaseDriver.commit());
+        databaseDriver.endBulkLoad();
+        assertTrue(databaseDriver.getStopById(6).isEmpty());
+        assertTrue(databaseDriver.getBusLinesById(4).isEmpty());
+        assertEquals(5, databaseDriver.getAllStops().size());
+    }
+
+    @Test
+    void bulkLoad_keepsWriteAheadLog() throws SQLException {
+        databaseDriver.disconnect();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFilename);
+             Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+        }
+        databaseDriver.connect();
+
+        bulkLoadStop(6);
+        assertEquals("wal", journalMode());
+        assertEquals(6, databaseDriver.getAllStops().size());
+    }
+}
@@ -0,0 +1,170 @@
+package edu.virginia.sde.hw5;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Brings the database in line with a freshly read set of Stops and BusLines by applying only the differences:
+ * new rows are inserted, changed rows are updated, rows missing from the feed are deleted, and a line's Routes
+ * rows are only rewritten when its stop sequence changed. Unchanged rows are not touched. If a snapshot path is
+ * given, a NetworkSnapshotFile of the synchronized network is written there after every successful commit. A
+ * synchronization that changes anything advances the database's data generation in the same transaction, so an
+ * older snapshot file is recognisably stale even if writing the new one fails.
+ */
+public class DatabaseSynchronizer {
+    private final DatabaseDriver databaseDriver;
+    private final Path snapshotPath;
+
+    public DatabaseSynchronizer(DatabaseDriver databaseDriver) {
+        this(databaseDriver, null);
+    }
+
+    /**
+     * @param snapshotPath - where to write a NetworkSnapshotFile after each synchronization, or null for none
+     */
+    public DatabaseSynchronizer(DatabaseDriver databaseDriver, Path snapshotPath) {
+        this.databaseDriver = databaseDriver;
+        this.snapshotPath = snapshotPath;
+    }
+
+    /**
+     * Synchronize the database with stops and deep busLines (lines with their Routes populated) in one
+     * transaction, using the driver's open connection. The changes are committed if every step succeeds;
+     * otherwise they are all rolled back and the exception, checked or not, is thrown.
+     *
+     * @return counts of the rows changed in each table
+     * @throws UncheckedIOException if the snapshot file could not be written; the database changes stay committed
+     */
+    public SyncReport synchronize(List<Stop> stops, List<BusLine> busLines) throws SQLException {
+        try {
+            Map<Integer, Stop> currentStops = new HashMap<>();
+            for (Stop stop : databaseDriver.getAllStops()) {
+                currentStops.put(stop.getId(), stop);
+            }
+            Map<Integer, BusLine> currentBusLines = new HashMap<>();
+            for (BusLine busLine : databaseDriver.getBusLinesWithRoutes()) {
+                currentBusLines.put(busLine.getId(), busLine);
+            }
+
+            Map<Integer, Stop> freshStops = new LinkedHashMap<>();
+            for (Stop stop : stops) {
+                freshStops.putIfAbsent(stop.getId(), stop);
+            }
+            List<Stop> insertedStops = new ArrayList<>();
+            List<Stop> updatedStops = new ArrayList<>();
+            for (Stop stop : freshStops.values()) {
+                Stop current = currentStops.get(stop.getId());
+                if (current == null) {
+                    insertedStops.add(stop);
+                } else if (!sameStop(current, stop)) {
+                    updatedStops.add(stop);
+                }
+            }
+            List<Integer> deletedStops = new ArrayList<>();
+            for (int stopId : currentStops.keySet()) {
+                if (!freshStops.containsKey(stopId)) {
+                    deletedStops.add(stopId);
+                }
+            }
+
+            Map<Integer, BusLine> freshBusLines = new LinkedHashMap<>();
+            for (BusLine busLine : busLines) {
+                freshBusLines.putIfAbsent(busLine.getId(), busLine);
+            }
+            List<BusLine> insertedBusLines = new ArrayList<>();
+            List<BusLine> updatedBusLines = new ArrayList<>();
+            List<BusLine> changedRoutes = new ArrayList<>();
+            for (BusLine busLine : freshBusLines.values()) {
+                BusLine current = currentBusLines.get(busLine.getId());
+                if (current == null) {
+                    insertedBusLines.add(busLine);
+                    continue;
+                }
+                if (!sameBusLine(current, busLine)) {
+                    updatedBusLines.add(busLine);
+                }
+                if (!sameStopSequence(current.getRoute(), busLine.getRoute())) {
+                    changedRoutes.add(busLine);
+                }
+            }
+            List<Integer> deletedBusLines = new ArrayList<>();
+            for (int busLineId : currentBusLines.keySet()) {
+                if (!freshBusLines.containsKey(busLineId)) {
+                    deletedBusLines.add(busLineId);
+                }
+            }
+
+            //stops first, so new and changed Routes can refer to them; deletions last, once nothing refers to them
+            databaseDriver.addStops(insertedStops);
+            databaseDriver.updateStops(updatedStops);
+            databaseDriver.addBusLines(insertedBusLines);
+            databaseDriver.updateBusLines(updatedBusLines);
+            databaseDriver.replaceRoutes(changedRoutes);
+            databaseDriver.deleteBusLines(deletedBusLines);
+            databaseDriver.deleteStops(deletedStops);
+            boolean changed = !(insertedStops.isEmpty() && updatedStops.isEmpty() && deletedStops.isEmpty()
+                    && insertedBusLines.isEmpty() && updatedBusLines.isEmpty() && changedRoutes.isEmpty()
+                    && deletedBusLines.isEmpty());
+            int generation = changed ? databaseDriver.advanceDataGeneration() : databaseDriver.getDataGeneration();
+            databaseDriver.commit();
+            if (snapshotPath != null) {
+                writeSnapshot(new ArrayList<>(freshStops.values()), new ArrayList<>(freshBusLines.values()),
+                        generation);
+            }
+
+            int routeRowsWritten = 0;
+            for (BusLine busLine : insertedBusLines) {
+                routeRowsWritten += busLine.getRoute().size();
+            }
+            for (BusLine busLine : changedRoutes) {
+                routeRowsWritten += busLine.getRoute().size();
+            }
+            return new SyncReport(insertedStops.size(), updatedStops.size(), deletedStops.size(),
+                    insertedBusLines.size(), updatedBusLines.size(), deletedBusLines.size(),
+                    insertedBusLines.size() + changedRoutes.size(), routeRowsWritten);
+        } catch (SQLException | RuntimeException e) {
+            databaseDriver.rollback();
+            throw e;
+        }
+    }
+
+    private void writeSnapshot(List<Stop> stops, List<BusLine> busLines, int generation) {
+        try {
+            NetworkSnapshotFile.write(snapshotPath, stops, busLines, generation);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Database synchronized, but writing " + snapshotPath + " failed", e);
+        }
+    }
+
+    private static boolean sameStop(Stop current, Stop fresh) {
+        return Objects.equals(current.getName(), fresh.getName())
+                && Double.compare(current.getLatitude(), fresh.getLatitude()) == 0
+                && Double.compare(current.getLongitude(), fresh.getLongitude()) == 0;
+    }
+
+    private static boolean sameBusLine(BusLine current, BusLine fresh) {
+        return current.isActive() == fresh.isActive()
+                && Objects.equals(current.getLongName(), fresh.getLongName())
+                && Objects.equals(current.getShortName(), fresh.getShortName());
+    }
+
+    private static boolean sameStopSequence(Route current, Route fresh) {
+        if (current.size() != fresh.size()) {
+            return false;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i).getId() != fresh.get(i).getId()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,173 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseSynchronizerTest {
+    private DatabaseDriver databaseDriver;
+    private DatabaseSynchronizer databaseSynchronizer;
+
+    @TempDir
+    Path databaseDirectory;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        databaseDriver = new DatabaseDriver(databaseDirectory.resolve("test.sqlite").toString());
+        databaseDriver.connect();
+        databaseDriver.createTables();
+        databaseDriver.commit();
+        databaseSynchronizer = new DatabaseSynchronizer(databaseDriver);
+        databaseSynchronizer.synchronize(stops(), busLines(route(1, 2, 3), route(3, 2)));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        databaseDriver.disconnect();
+    }
+
+    private static List<Stop> stops() {
+        return List.of(
+                new Stop(1, "Whitehead Rd @ Rice Hall", 38.0316, -78.5108),
+                new Stop(2, "Rice St", 38.0330, -78.5100),
+                new Stop(3, "Emmet St @ Ivy Rd", 38.0345, -78.5006));
+    }
+
+    private static Route route(int... stopIds) {
+        List<Stop> routeStops = new ArrayList<>();
+        for (int stopId : stopIds) {
+            routeStops.add(stops().get(stopId - 1));
+        }
+        return new Route(routeStops);
+    }
+
+    private static List<BusLine> busLines(Route lineOneRoute, Route lineTwoRoute) {
+        return List.of(
+                new BusLine(1, true, "Line One", "L1", lineOneRoute),
+                new BusLine(2, true, "Line Two", "L2", lineTwoRoute));
+    }
+
+    private List<Integer> routeIds(int busLineId) throws SQLException {
+        BusLine busLine = databaseDriver.getBusLinesById(busLineId).orElseThrow();
+        return databaseDriver.getRouteForBusLine(busLine).getStops().stream().map(Stop::getId).toList();
+    }
+
+    private long rowsWritten() {
+        return databaseDriver.getMetrics().getOperations().stream()
+                .mapToLong(OperationStatistics::getRowsWritten).sum();
+    }
+
+    @Test
+    void synchronize_identicalData_writesNothing() throws SQLException {
+        databaseDriver.getMetrics().reset();
+        SyncReport syncReport = databaseSynchronizer.synchronize(stops(), busLines(route(1, 2, 3), route(3, 2)));
+        assertTrue(syncReport.isUnchanged(), syncReport::toString);
+        assertEquals(0, syncReport.getRouteRowsWritten());
+        assertEquals(0, rowsWritten());
+        assertEquals(1, databaseDriver.getDataGeneration());
+    }
+
+    @Test
+    void synchronize_renamedStop_updated() throws SQLException {
+        List<Stop> renamed = new ArrayList<>(stops());
+        renamed.set(1, new Stop(2, "Rice Street", 38.0330, -78.5100));
+        SyncReport syncReport = databaseSynchronizer.synchronize(renamed, busLines(route(1, 2, 3), route(3, 2)));
+
+        assertEquals(1, syncReport.getStopsUpdated());
+        assertEquals(0, syncReport.getStopsInserted() + syncReport.getStopsDeleted());
+        assertEquals(0, syncReport.getRoutesReplaced());
+        assertEquals("Rice Street", databaseDriver.getStopById(2).orElseThrow().getName());
+    }
+
+    @Test
+    void synchronize_removedStop_cascadesToRoutes() throws SQLException {
+        SyncReport syncReport = databaseSynchronizer.synchronize(stops().subList(0, 2),
+                busLines(route(1, 2, 3), route(3, 2)));
+
+        assertEquals(1, syncReport.getStopsDeleted());
+        assertTrue(databaseDriver.getStopById(3).isEmpty());
+        assertEquals(List.of(1, 2), routeIds(1));
+        assertEquals(List.of(2), routeIds(2));
+    }
+
+    @Test
+    void synchronize_reorderedRoute_rewritesOnlyThatLine() throws SQLException {
+        SyncReport syncReport = databaseSynchronizer.synchronize(stops(), busLines(route(1, 2, 3), route(2, 3)));
+
+        assertEquals(1, syncReport.getRoutesReplaced());
+        assertEquals(2, syncReport.getRouteRowsWritten());
+        assertEquals(0, syncReport.getBusLinesUpdated());
+        assertEquals(List.of(1, 2, 3), routeIds(1));
+        assertEquals(List.of(2, 3), routeIds(2));
+    }
+
+    @Test
+    void synchronize_failurePartway_rollsBackEverything() throws SQLException {
+        List<Stop> renamed = new ArrayList<>(stops());
+        renamed.set(1, new Stop(2, "Rice Street", 38.0330, -78.5100));
+        Route unknownStop = new Route(new ArrayList<>(List.of(new Stop(99, "Nowhere", 0, 0))));
+        List<BusLine> lines = new ArrayList<>(busLines(route(1, 2, 3), route(3, 2)));
+        lines.add(new BusLine(3, true, "Line Three", "L3", unknownStop));
+
+        assertThrows(SQLException.class, () -> databaseSynchronizer.synchronize(renamed, lines));
+        assertEquals("Rice St", databaseDriver.getStopById(2).orElseThrow().getName());
+        assertTrue(databaseDriver.getBusLinesById(3).isEmpty());
+        assertEquals(1, databaseDriver.getDataGeneration());
+    }
+
+    @Test
+    void synchronize_uncheckedFailurePartway_rollsBackEverything() throws SQLException {
+        List<Stop> renamed = new ArrayList<>(stops());
+        renamed.set(1, new Stop(2, "Rice Street", 38.0330, -78.5100));
+        Route missingStop = new Route(new ArrayList<>(Arrays.asList(stops().get(0), null)));
+        List<BusLine> lines = new ArrayList<>(busLines(route(1, 2, 3), route(3, 2)));
+        lines.add(new BusLine(3, true, "Line Three", "L3", missingStop));
+
+        assertThrows(NullPointerException.class, () -> databaseSynchronizer.synchronize(renamed, lines));
+        assertEquals("Rice St", databaseDriver.getStopById(2).orElseThrow().getName());
+        assertTrue(databaseDriver.getBusLinesById(3).isEmpty());
+        assertEquals(1, databaseDriver.getDataGeneration());
+    }
+
+    @Test
+    void synchronize_writesSnapshotFileAfterCommit() throws SQLException, IOException {
+        Path snapshotPath = databaseDirectory.resolve("network.snapshot");
+        List<Stop> renamed = new ArrayList<>(stops());
+        renamed.set(1, new Stop(2, "Rice Street", 38.0330, -78.5100));
+        new DatabaseSynchronizer(databaseDriver, snapshotPath).synchronize(renamed,
+                busLines(route(1, 2, 3), route(3, 2)));
+
+        NetworkSnapshotFile snapshotFile = NetworkSnapshotFile.open(snapshotPath);
+        assertEquals(2, databaseDriver.getDataGeneration());
+        assertEquals(2, snapshotFile.getGeneration());
+        assertEquals(3, snapshotFile.getStopCount());
+        assertEquals("Rice Street", snapshotFile.getStopName(snapshotFile.findStopRow(2)));
+        assertEquals(2, snapshotFile.getRouteLength(snapshotFile.findBusLineRow(2)));
+    }
+
+    @Test
+    void synchronize_snapshotWriteFails_keepsCommittedChanges() throws SQLException {
+        Path snapshotPath = databaseDirectory.resolve("missing").resolve("network.snapshot");
+        List<Stop> renamed = new ArrayList<>(stops());
+        renamed.set(1, new Stop(2, "Rice Street", 38.0330, -78.5100));
+        DatabaseSynchronizer synchronizer = new DatabaseSynchronizer(databaseDriver, snapshotPath);
+
+        assertThrows(UncheckedIOException.class,
+                () -> synchronizer.synchronize(renamed, busLines(route(1, 2, 3), route(3, 2))));
+        databaseDriver.rollback();
+        assertEquals("Rice Street", databaseDriver.getStopById(2).orElseThrow().getName());
+        assertFalse(Files.exists(snapshotPath));
+    }
+}
@@ -0,0 +1,270 @@
+package edu.virginia.sde.hw5;
+
+/**
+ * How the distance between two latitude/longitude points is measured. EUCLIDEAN is the straight-line distance on
+ * raw degrees that Stop.distanceTo has always used, which is cheap but stretches east-west distances the further a
+ * point is from the equator. EQUIRECTANGULAR and HAVERSINE return metres on a spherical Earth: EQUIRECTANGULAR
+ * flattens the sphere around the two points, which is accurate to well under 1% over the few kilometres of a bus
+ * network, while HAVERSINE is exact on the sphere at any range.
+ * <p>
+ * The hot paths take primitives and each point's cos(latitude), which callers such as StopTable compute once per
+ * stop. Ranking compares keys, a cheap value that orders points the same way as distance (the squared distance,
+ * or the haversine of the angle), and converts only the winners with keyToDistance. keys() is the batch kernel for
+ * one point against many, and keysWithin() its filtering form, which the spherical metrics use to skip rows by
+ * latitude alone. Each metric runs its own loops, so they compile to straight-line arithmetic.
+ */
+public enum DistanceMetric {
+    EUCLIDEAN {
+        @Override
+        public double key(double latitude1, double longitude1, double cosLatitude1,
+                          double latitude2, double longitude2, double cosLatitude2) {
+            double latDiff = latitude1 - latitude2;
+            double longDiff = longitude1 - longitude2;
+            return (latDiff * latDiff) + (longDiff * longDiff);
+        }
+
+        @Override
+        public void keys(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                         double[] longitudes, double[] cosLatitudes, int from, int to, double[] keys) {
+            for (int row = from; row < to; row++) {
+                double latDiff = latitude - latitudes[row];
+                double longDiff = longitude - longitudes[row];
+                keys[row - from] = (latDiff * latDiff) + (longDiff * longDiff);
+            }
+        }
+
+        @Override
+        public int keysWithin(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                              double[] longitudes, double[] cosLatitudes, int from, int to, double maxKey,
+                              int[] rows, double[] keys) {
+            int count = 0;
+            for (int row = from; row < to; row++) {
+                double latDiff = latitude - latitudes[row];
+                double longDiff = longitude - longitudes[row];
+                double key = (latDiff * latDiff) + (longDiff * longDiff);
+                if (key <= maxKey) {
+                    rows[count] = row;
+                    keys[count++] = key;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public double keyToDistance(double key) {
+            return Math.sqrt(key);
+        }
+
+        @Override
+        public double distanceToKey(double distance) {
+            return distance * distance;
+        }
+
+        @Override
+        public double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+            return Math.sqrt(key(latitude1, longitude1, 0, latitude2, longitude2, 0));
+        }
+    },
+
+    /**
+     * The east-west leg is scaled by the mean of the two points' cos(latitude), which stands in for the cosine of
+     * their mean latitude without another trigonometric call per pair
+     */
+    EQUIRECTANGULAR {
+        @Override
+        public double key(double latitude1, double longitude1, double cosLatitude1,
+                          double latitude2, double longitude2, double cosLatitude2) {
+            double x = wrapLongitude(longitude1 - longitude2) * RADIANS_PER_DEGREE
+                    * 0.5 * (cosLatitude1 + cosLatitude2);
+            double y = (latitude1 - latitude2) * RADIANS_PER_DEGREE;
+            return (x * x) + (y * y);
+        }
+
+        @Override
+        public void keys(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                         double[] longitudes, double[] cosLatitudes, int from, int to, double[] keys) {
+            double halfCosLatitude = 0.5 * cosLatitude;
+            for (int row = from; row < to; row++) {
+                double x = wrapLongitude(longitude - longitudes[row]) * RADIANS_PER_DEGREE
+                        * (halfCosLatitude + 0.5 * cosLatitudes[row]);
+                double y = (latitude - latitudes[row]) * RADIANS_PER_DEGREE;
+                keys[row - from] = (x * x) + (y * y);
+            }
+        }
+
+        /**
+         * The north-south leg alone bounds the key, so rows too far north or south are skipped first
+         */
+        @Override
+        public int keysWithin(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                              double[] longitudes, double[] cosLatitudes, int from, int to, double maxKey,
+                              int[] rows, double[] keys) {
+            double halfCosLatitude = 0.5 * cosLatitude;
+            double latitudeSpan = Math.sqrt(maxKey) / RADIANS_PER_DEGREE * (1 + 1e-9);
+            int count = 0;
+            for (int row = from; row < to; row++) {
+                double latDiff = latitude - latitudes[row];
+                if (Math.abs(latDiff) > latitudeSpan) {
+                    continue;
+                }
+                double x = wrapLongitude(longitude - longitudes[row]) * RADIANS_PER_DEGREE
+                        * (halfCosLatitude + 0.5 * cosLatitudes[row]);
+                double y = latDiff * RADIANS_PER_DEGREE;
+                double key = (x * x) + (y * y);
+                if (key <= maxKey) {
+                    rows[count] = row;
+                    keys[count++] = key;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public double keyToDistance(double key) {
+            return EARTH_RADIUS_METRES * Math.sqrt(key);
+        }
+
+        @Override
+        public double distanceToKey(double distance) {
+            double angle = distance / EARTH_RADIUS_METRES;
+            return angle * angle;
+        }
+    },
+
+    HAVERSINE {
+        @Override
+        public double key(double latitude1, double longitude1, double cosLatitude1,
+                          double latitude2, double longitude2, double cosLatitude2) {
+            double sinHalfLat = Math.sin((latitude1 - latitude2) * (0.5 * RADIANS_PER_DEGREE));
+            double sinHalfLong = Math.sin((longitude1 - longitude2) * (0.5 * RADIANS_PER_DEGREE));
+            return (sinHalfLat * sinHalfLat) + (cosLatitude1 * cosLatitude2 * sinHalfLong * sinHalfLong);
+        }
+
+        @Override
+        public void keys(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                         double[] longitudes, double[] cosLatitudes, int from, int to, double[] keys) {
+            for (int row = from; row < to; row++) {
+                double sinHalfLat = Math.sin((latitude - latitudes[row]) * (0.5 * RADIANS_PER_DEGREE));
+                double sinHalfLong = Math.sin((longitude - longitudes[row]) * (0.5 * RADIANS_PER_DEGREE));
+                keys[row - from] = (sinHalfLat * sinHalfLat)
+                        + (cosLatitude * cosLatitudes[row] * sinHalfLong * sinHalfLong);
+            }
+        }
+
+        /**
+         * A great-circle distance is never shorter than the difference in latitude, so rows further than maxKey's
+         * angle north or south are skipped before any trigonometry
+         */
+        @Override
+        public int keysWithin(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                              double[] longitudes, double[] cosLatitudes, int from, int to, double maxKey,
+                              int[] rows, double[] keys) {
+            //the slack keeps rounding from skipping a row that is exactly maxKey away
+            double latitudeSpan = maxKey >= 1 ? Double.POSITIVE_INFINITY
+                    : 2 * Math.asin(Math.sqrt(maxKey)) / RADIANS_PER_DEGREE * (1 + 1e-9) + 1e-12;
+            int count = 0;
+            for (int row = from; row < to; row++) {
+                double latDiff = latitude - latitudes[row];
+                if (Math.abs(latDiff) > latitudeSpan) {
+                    continue;
+                }
+                double sinHalfLat = Math.sin(latDiff * (0.5 * RADIANS_PER_DEGREE));
+                double sinHalfLong = Math.sin((longitude - longitudes[row]) * (0.5 * RADIANS_PER_DEGREE));
+                double key = (sinHalfLat * sinHalfLat) + (cosLatitude * cosLatitudes[row] * sinHalfLong * sinHalfLong);
+                if (key <= maxKey) {
+                    rows[count] = row;
+                    keys[count++] = key;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public double keyToDistance(double key) {
+            return 2 * EARTH_RADIUS_METRES * Math.asin(Math.sqrt(Math.min(1.0, key)));
+        }
+
+        @Override
+        public double distanceToKey(double distance) {
+            if (distance >= Math.PI * EARTH_RADIUS_METRES) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double sinHalfAngle = Math.sin(distance / (2 * EARTH_RADIUS_METRES));
+            return sinHalfAngle * sinHalfAngle;
+        }
+    };
+
+    /**
+     * The mean radius of the Earth (IUGG), in metres
+     */
+    public static final double EARTH_RADIUS_METRES = 6_371_008.8;
+
+    private static final double RADIANS_PER_DEGREE = Math.PI / 180.0;
+
+    /**
+     * Returns a value that orders point pairs the same way as their distance. Both cosLatitude arguments must be
+     * cosLatitude() of the matching latitude; EUCLIDEAN ignores them.
+     */
+    public abstract double key(double latitude1, double longitude1, double cosLatitude1,
+                               double latitude2, double longitude2, double cosLatitude2);
+
+    /**
+     * Writes key(latitude, longitude, cosLatitude, latitudes[row], longitudes[row], cosLatitudes[row]) to
+     * keys[row - from] for every row in [from, to)
+     */
+    public abstract void keys(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                              double[] longitudes, double[] cosLatitudes, int from, int to, double[] keys);
+
+    /**
+     * The filtering form of keys(): for every row in [from, to) whose key is at most maxKey, in row order, writes
+     * the row to rows and its key to keys, and returns how many were written. Metrics may skip rows they can rule
+     * out without computing their key.
+     */
+    public abstract int keysWithin(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                                   double[] longitudes, double[] cosLatitudes, int from, int to, double maxKey,
+                                   int[] rows, double[] keys);
+
+    public abstract double keyToDistance(double key);
+
+    /**
+     * Returns the key of a pair exactly distance apart, so radius queries can compare keys. Distances too long to
+     * exist on the sphere map to positive infinity.
+     */
+    public abstract double distanceToKey(double distance);
+
+    /**
+     * Returns the distance between two points: degrees for EUCLIDEAN, metres otherwise
+     */
+    public double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        return keyToDistance(key(latitude1, longitude1, cosLatitude(latitude1),
+                latitude2, longitude2, cosLatitude(latitude2)));
+    }
+
+    /**
+     * Writes the distance from one point to every row in [from, to) to distances[row - from]
+     */
+    public void distances(double latitude, double longitude, double cosLatitude, double[] latitudes,
+                          double[] longitudes, double[] cosLatitudes, int from, int to, double[] distances) {
+        keys(latitude, longitude, cosLatitude, latitudes, longitudes, cosLatitudes, from, to, distances);
+        for (int i = 0; i < to - from; i++) {
+            distances[i] = keyToDistance(distances[i]);
+        }
+    }
+
+    public static double cosLatitude(double latitude) {
+        return Math.cos(latitude * RADIANS_PER_DEGREE);
+    }
+
+    /**
+     * Folds a longitude difference into [-180, 180], so pairs either side of the antimeridian are close
+     */
+    private static double wrapLongitude(double longDiff) {
+        if (longDiff > 180) {
+            return longDiff - 360;
+        }
+        if (longDiff < -180) {
+            return longDiff + 360;
+        }
+        return longDiff;
+    }
+}
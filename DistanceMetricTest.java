@@ -0,0 +1,83 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistanceMetricTest {
+    private static final double ONE_DEGREE_METRES = DistanceMetric.EARTH_RADIUS_METRES * Math.PI / 180;
+
+    @Test
+    void euclidean_matchesStopDistanceTo() {
+        Stop a = new Stop(1, "a", 38.03, -78.51);
+        Stop b = new Stop(2, "b", 38.05, -78.47);
+        assertEquals(a.distanceTo(b), a.distanceTo(b, DistanceMetric.EUCLIDEAN));
+    }
+
+    @Test
+    void oneDegreeOfLatitude() {
+        assertEquals(ONE_DEGREE_METRES, DistanceMetric.HAVERSINE.distance(38.0, -78.5, 39.0, -78.5), 1e-6);
+        assertEquals(ONE_DEGREE_METRES, DistanceMetric.EQUIRECTANGULAR.distance(38.0, -78.5, 39.0, -78.5), 1e-6);
+    }
+
+    @Test
+    void longitudeShrinksAwayFromEquator() {
+        assertEquals(55_597.0, DistanceMetric.HAVERSINE.distance(60.0, 0.0, 60.0, 1.0), 1.0);
+        assertEquals(55_597.0, DistanceMetric.EQUIRECTANGULAR.distance(60.0, 0.0, 60.0, 1.0), 10.0);
+        assertEquals(1.0, DistanceMetric.EUCLIDEAN.distance(60.0, 0.0, 60.0, 1.0));
+    }
+
+    @Test
+    void charlottesvilleToRichmond() {
+        double haversine = DistanceMetric.HAVERSINE.distance(38.0293, -78.4767, 37.5407, -77.4360);
+        double equirectangular = DistanceMetric.EQUIRECTANGULAR.distance(38.0293, -78.4767, 37.5407, -77.4360);
+        assertEquals(106_375.2, haversine, 1.0);
+        assertEquals(haversine, equirectangular, haversine * 0.001);
+    }
+
+    @Test
+    void acrossAntimeridian() {
+        assertEquals(ONE_DEGREE_METRES, DistanceMetric.HAVERSINE.distance(0.0, 179.5, 0.0, -179.5), 1e-6);
+        assertEquals(ONE_DEGREE_METRES, DistanceMetric.EQUIRECTANGULAR.distance(0.0, 179.5, 0.0, -179.5), 1e-6);
+    }
+
+    @Test
+    void distanceToKey_roundTrips() {
+        for (DistanceMetric metric : DistanceMetric.values()) {
+            assertEquals(1234.5, metric.keyToDistance(metric.distanceToKey(1234.5)), 1e-6, metric.name());
+        }
+        assertEquals(Double.POSITIVE_INFINITY, DistanceMetric.HAVERSINE.distanceToKey(4e7));
+    }
+
+    @Test
+    void batchKernel_matchesScalar() {
+        Random random = new Random(3);
+        int size = 37;
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        double[] cosLatitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = 38.0 + random.nextDouble();
+            longitudes[i] = -78.5 + random.nextDouble();
+            cosLatitudes[i] = DistanceMetric.cosLatitude(latitudes[i]);
+        }
+        double latitude = 38.4;
+        double longitude = -78.1;
+        double cosLatitude = DistanceMetric.cosLatitude(latitude);
+        for (DistanceMetric metric : DistanceMetric.values()) {
+            double[] keys = new double[size - 5];
+            metric.keys(latitude, longitude, cosLatitude, latitudes, longitudes, cosLatitudes, 5, size, keys);
+            double[] distances = new double[size - 5];
+            metric.distances(latitude, longitude, cosLatitude, latitudes, longitudes, cosLatitudes, 5, size,
+                    distances);
+            for (int row = 5; row < size; row++) {
+                assertEquals(metric.key(latitude, longitude, cosLatitude, latitudes[row], longitudes[row],
+                        cosLatitudes[row]), keys[row - 5], metric.name());
+                assertEquals(metric.distance(latitude, longitude, latitudes[row], longitudes[row]),
+                        distances[row - 5], 1e-6, metric.name());
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package edu.virginia.sde.hw5;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An on-disk cache of HTTP responses that revalidates with conditional GETs. Each URL's last body is stored with
+ * its ETag and Last-Modified validators. The next request sends them back as If-None-Match and If-Modified-Since,
+ * so an unchanged feed comes back as an empty 304 and is read from disk. Responses are requested gzip-encoded and
+ * stored decoded. A downloaded body is handed to the caller as it arrives and copied to disk on the way, so parsing
+ * overlaps the download; it only replaces the cached copy once all of it has been read.
+ */
+public class HttpResponseCache {
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    private final Path directory;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public HttpResponseCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * The number of requests answered with 304 Not Modified and served from disk
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * The number of requests that downloaded a full body
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Open the body of url, from disk if the server says the cached copy is still current. URLs that are not
+     * http or https are opened directly and not cached. A new body is read straight off the connection and cached
+     * when the stream reaches its end or is closed; closing it early reads the rest of the body first.
+     *
+     * @throws IOException if the request fails or the server answers with anything but 200 or 304
+     */
+    public InputStream open(URL url) throws IOException {
+        if (!url.getProtocol().equals("http") && !url.getProtocol().equals("https")) {
+            return url.openStream();
+        }
+        Files.createDirectories(directory);
+        String key = cacheKey(url);
+        Path bodyFile = directory.resolve(key + ".body");
+        Path metadataFile = directory.resolve(key + ".properties");
+        Properties metadata = Files.exists(bodyFile) ? readMetadata(metadataFile) : new Properties();
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        boolean disconnect = true;
+        try {
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (metadata.getProperty(ETAG) != null) {
+                connection.setRequestProperty("If-None-Match", metadata.getProperty(ETAG));
+            }
+            if (metadata.getProperty(LAST_MODIFIED) != null) {
+                connection.setRequestProperty("If-Modified-Since", metadata.getProperty(LAST_MODIFIED));
+            }
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && Files.exists(bodyFile)) {
+                hits.incrementAndGet();
+                return Files.newInputStream(bodyFile);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected HTTP status " + status + " from " + url);
+            }
+            misses.incrementAndGet();
+            InputStream body = new CachingInputStream(connection, bodyFile, metadataFile);
+            disconnect = false;
+            return body;
+        } finally {
+            if (disconnect) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Write the validators of a response whose body has just been stored
+     */
+    private void storeMetadata(HttpURLConnection connection, Path metadataFile) throws IOException {
+        Properties metadata = new Properties();
+        metadata.setProperty("url", connection.getURL().toString());
+        if (connection.getHeaderField(ETAG) != null) {
+            metadata.setProperty(ETAG, connection.getHeaderField(ETAG));
+        }
+        if (connection.getHeaderField(LAST_MODIFIED) != null) {
+            metadata.setProperty(LAST_MODIFIED, connection.getHeaderField(LAST_MODIFIED));
+        }
+        Path temporaryMetadata = Files.createTempFile(directory, "metadata", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporaryMetadata, StandardCharsets.UTF_8)) {
+                metadata.store(writer, null);
+            }
+            Files.move(temporaryMetadata, metadataFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryMetadata);
+        }
+    }
+
+    /**
+     * The body of a 200 response, copied to a temporary file as it is read and moved into place once all of it has
+     * been read, so a failed download never replaces a good cached copy. The validators are written after the body
+     * they describe. Closing the stream disconnects.
+     */
+    private final class CachingInputStream extends FilterInputStream {
+        private final HttpURLConnection connection;
+        private final Path bodyFile;
+        private final Path metadataFile;
+        private final Path temporaryBody;
+        private final OutputStream copy;
+        private boolean failed;
+        private boolean closed;
+
+        CachingInputStream(HttpURLConnection connection, Path bodyFile, Path metadataFile) throws IOException {
+            super(decode(connection));
+            this.connection = connection;
+            this.bodyFile = bodyFile;
+            this.metadataFile = metadataFile;
+            temporaryBody = Files.createTempFile(directory, "download", ".tmp");
+            try {
+                copy = Files.newOutputStream(temporaryBody);
+            } catch (IOException e) {
+                Files.deleteIfExists(temporaryBody);
+                throw e;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                int read = in.read(buffer, offset, length);
+                if (read > 0) {
+                    copy.write(buffer, offset, read);
+                }
+                return read;
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] skipped = new byte[(int) Math.min(n, 8192)];
+            int read = read(skipped, 0, skipped.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (!failed) {
+                    transferTo(OutputStream.nullOutputStream());
+                }
+                copy.close();
+                if (!failed) {
+                    Files.move(temporaryBody, bodyFile, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    storeMetadata(connection, metadataFile);
+                }
+            } finally {
+                try {
+                    copy.close();
+                    Files.deleteIfExists(temporaryBody);
+                    in.close();
+                } finally {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    private static InputStream decode(HttpURLConnection connection) throws IOException {
+        InputStream inputStream = connection.getInputStream();
+        if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            return new GZIPInputStream(inputStream);
+        }
+        return inputStream;
+    }
+
+    private static Properties readMetadata(Path metadataFile) throws IOException {
+        Properties metadata = new Properties();
+        if (Files.exists(metadataFile)) {
+            try (Reader reader = Files.newBufferedReader(metadataFile, StandardCharsets.UTF_8)) {
+                metadata.load(reader);
+            }
+        }
+        return metadata;
+    }
+
+    private static String cacheKey(URL url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(url.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by the Java platform", e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package edu.virginia.sde.hw5;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpResponseCacheTest {
+    private HttpServer server;
+    private URL url;
+    private HttpResponseCache cache;
+    private String body;
+    private String etag;
+    private boolean truncate;
+    private final List<String> receivedIfNoneMatch = new ArrayList<>();
+    private final List<Integer> sentStatuses = new ArrayList<>();
+
+    @TempDir
+    Path cacheDirectory;
+
+    @BeforeEach
+    void setup() throws IOException {
+        body = "{\"stops\": []}";
+        etag = "\"v1\"";
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stops", exchange -> {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            receivedIfNoneMatch.add(ifNoneMatch);
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(ifNoneMatch)) {
+                sentStatuses.add(304);
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                var compressed = new ByteArrayOutputStream();
+                try (var gzip = new GZIPOutputStream(compressed)) {
+                    gzip.write(bytes);
+                }
+                bytes = compressed.toByteArray();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            sentStatuses.add(200);
+            exchange.sendResponseHeaders(200, bytes.length);
+            //a truncated response stops halfway through, so the client sees the body end early
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes, 0, truncate ? bytes.length / 2 : bytes.length);
+            }
+        });
+        server.start();
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/stops");
+        cache = new HttpResponseCache(cacheDirectory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private String read() throws IOException {
+        try (InputStream inputStream = cache.open(url)) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void open_firstRequestDownloads() throws IOException {
+        assertEquals(body, read());
+        assertEquals(List.of(200), sentStatuses);
+        assertNull(receivedIfNoneMatch.get(0));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void open_unchangedServedFromDisk() throws IOException {
+        read();
+        assertEquals(body, read());
+        assertEquals(List.of(200, 304), sentStatuses);
+        assertEquals("\"v1\"", receivedIfNoneMatch.get(1));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void open_changedDownloadsAgain() throws IOException {
+        read();
+        body = "{\"stops\": [1]}";
+        etag = "\"v2\"";
+        assertEquals(body, read());
+        assertEquals(List.of(200, 200), sentStatuses);
+        assertEquals(body, read());
+        assertEquals(List.of(200, 200, 304), sentStatuses);
+    }
+
+    @Test
+    void open_sharedAcrossInstances() throws IOException {
+        read();
+        cache = new HttpResponseCache(cacheDirectory);
+        assertEquals(body, read());
+        assertEquals(List.of(200, 304), sentStatuses);
+    }
+
+    @Test
+    void webServiceReader_throughCache() {
+        var reader = new WebServiceReader(url, cache);
+        assertTrue(reader.getJSONObject().getJSONArray("stops").isEmpty());
+        assertTrue(reader.getJSONObject().getJSONArray("stops").isEmpty());
+        assertEquals(List.of(200, 304), sentStatuses);
+    }
+
+    private long cachedBodies() throws IOException {
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            return files.filter(file -> file.toString().endsWith(".body")).count();
+        }
+    }
+
+    @Test
+    void open_cachesBodyOnceFullyRead() throws IOException {
+        body = "{\"stops\": [" + "{\"id\": 1}, ".repeat(1000) + "{\"id\": 2}]}";
+        try (InputStream inputStream = cache.open(url)) {
+            assertEquals('{', inputStream.read());
+            assertEquals(0, cachedBodies());
+            assertEquals(body.substring(1), new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertEquals(1, cachedBodies());
+        assertEquals(body, read());
+        assertEquals(List.of(200, 304), sentStatuses);
+    }
+
+    @Test
+    void open_closedEarly_cachesCompleteBody() throws IOException {
+        body = "{\"stops\": [" + "{\"id\": 1}, ".repeat(1000) + "{\"id\": 2}]}";
+        try (InputStream inputStream = cache.open(url)) {
+            assertEquals('{', inputStream.read());
+        }
+        assertEquals(body, read());
+        assertEquals(List.of(200, 304), sentStatuses);
+    }
+
+    @Test
+    void open_failedDownload_keepsCachedCopy() throws IOException {
+        read();
+        body = "{\"stops\": [1]}";
+        etag = "\"v2\"";
+        truncate = true;
+        assertThrows(IOException.class, this::read);
+
+        truncate = false;
+        assertEquals("\"v1\"", receivedIfNoneMatch.get(1));
+        assertEquals(body, read());
+        assertEquals("\"v1\"", receivedIfNoneMatch.get(2));
+        assertEquals(List.of(200, 200, 200), sentStatuses);
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package edu.virginia.sde.hw5;
+
+import java.util.List;
+
+/**
+ * An itinerary from one stop to another as a sequence of rides, transferring between lines at shared stops
+ */
+public class Journey {
+    private final List<JourneyLeg> legs;
+    private final double distance;
+
+    public Journey(List<JourneyLeg> legs) {
+        this.legs = List.copyOf(legs);
+        double total = 0.0;
+        for (JourneyLeg leg : this.legs) {
+            total += leg.getDistance();
+        }
+        this.distance = total;
+    }
+
+    public List<JourneyLeg> getLegs() {
+        return legs;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public int getTransfers() {
+        return Math.max(legs.size() - 1, 0);
+    }
+
+    public Stop getOrigin() {
+        return legs.get(0).getBoardingStop();
+    }
+
+    public Stop getDestination() {
+        return legs.get(legs.size() - 1).getAlightingStop();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Journey journey = (Journey) o;
+
+        return legs.equals(journey.legs);
+    }
+
+    @Override
+    public int hashCode() {
+        return legs.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Journey{" +
+                "distance=" + distance +
+                ", transfers=" + getTransfers() +
+                ", legs=" + legs +
+                '}';
+    }
+}
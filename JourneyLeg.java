@@ -0,0 +1,66 @@
+package edu.virginia.sde.hw5;
+
+/**
+ * One ride of a Journey: board busLine at boardingStop and stay on until alightingStop
+ */
+public class JourneyLeg {
+    private final BusLine busLine;
+    private final Stop boardingStop;
+    private final Stop alightingStop;
+    private final double distance;
+
+    public JourneyLeg(BusLine busLine, Stop boardingStop, Stop alightingStop, double distance) {
+        this.busLine = busLine;
+        this.boardingStop = boardingStop;
+        this.alightingStop = alightingStop;
+        this.distance = distance;
+    }
+
+    public BusLine getBusLine() {
+        return busLine;
+    }
+
+    public Stop getBoardingStop() {
+        return boardingStop;
+    }
+
+    public Stop getAlightingStop() {
+        return alightingStop;
+    }
+
+    /**
+     * The distance ridden along the BusLine's Route between the two stops
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        JourneyLeg that = (JourneyLeg) o;
+
+        return busLine.equals(that.busLine) && boardingStop.equals(that.boardingStop)
+                && alightingStop.equals(that.alightingStop);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = busLine.hashCode();
+        result = 31 * result + boardingStop.hashCode();
+        result = 31 * result + alightingStop.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "JourneyLeg{" +
+                "busLine=" + busLine.getShortName() +
+                ", boardingStop=" + boardingStop.getName() +
+                ", alightingStop=" + alightingStop.getName() +
+                ", distance=" + distance +
+                '}';
+    }
+}
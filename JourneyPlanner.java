@@ -0,0 +1,243 @@
+package edu.virginia.sde.hw5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans journeys that may transfer between bus lines, using a round-based search in the style of RAPTOR: round k
+ * finds the shortest distance to every stop using exactly k rides, by scanning only the Routes that pass through
+ * stops improved in round k - 1. The network is flattened into primitive arrays once, so a query only allocates a
+ * few arrays per round.
+ */
+public class JourneyPlanner {
+    private final Stop[] stops;
+    private final Map<Integer, Integer> stopIndexById;
+    private final BusLine[] busLines;
+
+    /* Route r occupies [routeOffsets[r], routeOffsets[r + 1]) of routeStops and routeCumulative */
+    private final int[] routeOffsets;
+    private final int[] routeStops;
+    private final double[] routeCumulative;
+
+    /* Stop s occurs at the routeStops indices stopOccurrences[stopOffsets[s] .. stopOffsets[s + 1]) */
+    private final int[] stopOffsets;
+    private final int[] stopOccurrences;
+    private final int[] occurrenceRoutes;
+
+    /**
+     * @throws IllegalArgumentException if a Route visits a stop that is not in stops
+     */
+    public JourneyPlanner(List<Stop> stops, List<BusLine> busLines) {
+        this(stops, busLines, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * A planner that measures ride lengths under metric
+     * @throws IllegalArgumentException if a Route visits a stop that is not in stops
+     */
+    public JourneyPlanner(List<Stop> stops, List<BusLine> busLines, DistanceMetric metric) {
+        this.stops = stops.toArray(new Stop[0]);
+        this.stopIndexById = new HashMap<>();
+        for (int i = 0; i < this.stops.length; i++) {
+            stopIndexById.putIfAbsent(this.stops[i].getId(), i);
+        }
+        this.busLines = busLines.toArray(new BusLine[0]);
+
+        int totalRouteStops = 0;
+        for (BusLine busLine : this.busLines) {
+            totalRouteStops += busLine.getRoute().size();
+        }
+        routeOffsets = new int[this.busLines.length + 1];
+        routeStops = new int[totalRouteStops];
+        routeCumulative = new double[totalRouteStops];
+        int[] occurrencesPerStop = new int[this.stops.length];
+        int next = 0;
+        for (int r = 0; r < this.busLines.length; r++) {
+            routeOffsets[r] = next;
+            Route route = this.busLines[r].getRoute();
+            for (int position = 0; position < route.size(); position++) {
+                Stop stop = route.get(position);
+                Integer stopIndex = stopIndexById.get(stop.getId());
+                if (stopIndex == null) {
+                    throw new IllegalArgumentException("Bus line " + this.busLines[r].getId()
+                            + " visits unknown stop " + stop.getId());
+                }
+                routeStops[next] = stopIndex;
+                routeCumulative[next] = position == 0 ? 0.0
+                        : routeCumulative[next - 1] + route.get(position - 1).distanceTo(stop, metric);
+                occurrencesPerStop[stopIndex]++;
+                next++;
+            }
+        }
+        routeOffsets[this.busLines.length] = next;
+
+        stopOffsets = new int[this.stops.length + 1];
+        for (int s = 0; s < this.stops.length; s++) {
+            stopOffsets[s + 1] = stopOffsets[s] + occurrencesPerStop[s];
+        }
+        stopOccurrences = new int[totalRouteStops];
+        occurrenceRoutes = new int[totalRouteStops];
+        int[] fill = Arrays.copyOf(stopOffsets, this.stops.length);
+        for (int r = 0; r < this.busLines.length; r++) {
+            for (int a = routeOffsets[r]; a < routeOffsets[r + 1]; a++) {
+                int slot = fill[routeStops[a]]++;
+                stopOccurrences[slot] = a;
+                occurrenceRoutes[slot] = r;
+            }
+        }
+    }
+
+    /**
+     * Find journeys from source to destination with at most maxTransfers transfers. One journey is returned for
+     * each number of rides that gets there shorter than every journey with fewer rides, so no returned journey is
+     * beaten on both distance and transfers by another. The result is ranked by distance, then by transfers.
+     *
+     * @return an empty list if destination cannot be reached, or if source and destination are the same stop
+     * @throws IllegalArgumentException if either stop is unknown or maxTransfers is negative
+     */
+    public List<Journey> plan(int sourceStopId, int destinationStopId, int maxTransfers) {
+        if (maxTransfers < 0) {
+            throw new IllegalArgumentException("maxTransfers must not be negative: " + maxTransfers);
+        }
+        int source = stopIndex(sourceStopId);
+        int destination = stopIndex(destinationStopId);
+        if (source == destination) {
+            return List.of();
+        }
+        int rounds = maxTransfers + 1;
+        int n = stops.length;
+
+        double[] best = new double[n];
+        Arrays.fill(best, Double.POSITIVE_INFINITY);
+        best[source] = 0.0;
+        double[][] arrival = new double[rounds + 1][];
+        arrival[0] = best.clone();
+        int[][] legRoute = new int[rounds + 1][];
+        int[][] legBoard = new int[rounds + 1][];
+        int[][] legAlight = new int[rounds + 1][];
+
+        boolean[] marked = new boolean[n];
+        boolean[] nextMarked = new boolean[n];
+        int[] markedStops = new int[n];
+        int markedCount = 1;
+        markedStops[0] = source;
+        marked[source] = true;
+        int[] nextMarkedStops = new int[n];
+        int[] routeStart = new int[busLines.length];
+        Arrays.fill(routeStart, -1);
+        int[] touchedRoutes = new int[busLines.length];
+
+        for (int k = 1; k <= rounds && markedCount > 0; k++) {
+            double[] previous = arrival[k - 1];
+            double[] current = previous.clone();
+            int[] routeOfLeg = new int[n];
+            Arrays.fill(routeOfLeg, -1);
+            int[] boardOfLeg = new int[n];
+            int[] alightOfLeg = new int[n];
+
+            int touchedCount = 0;
+            for (int m = 0; m < markedCount; m++) {
+                int stop = markedStops[m];
+                for (int o = stopOffsets[stop]; o < stopOffsets[stop + 1]; o++) {
+                    int route = occurrenceRoutes[o];
+                    if (routeStart[route] < 0) {
+                        touchedRoutes[touchedCount++] = route;
+                        routeStart[route] = stopOccurrences[o];
+                    } else {
+                        routeStart[route] = Math.min(routeStart[route], stopOccurrences[o]);
+                    }
+                }
+            }
+
+            int nextCount = 0;
+            for (int t = 0; t < touchedCount; t++) {
+                int route = touchedRoutes[t];
+                int end = routeOffsets[route + 1];
+                double boardValue = Double.POSITIVE_INFINITY;
+                int boardAt = -1;
+                for (int a = routeStart[route]; a < end; a++) {
+                    int stop = routeStops[a];
+                    if (boardAt >= 0) {
+                        double candidate = boardValue + routeCumulative[a];
+                        if (candidate < best[stop] && candidate < best[destination]) {
+                            current[stop] = candidate;
+                            best[stop] = candidate;
+                            routeOfLeg[stop] = route;
+                            boardOfLeg[stop] = boardAt;
+                            alightOfLeg[stop] = a;
+                            if (!nextMarked[stop]) {
+                                nextMarked[stop] = true;
+                                nextMarkedStops[nextCount++] = stop;
+                            }
+                        }
+                    }
+                    if (marked[stop] && previous[stop] - routeCumulative[a] < boardValue) {
+                        boardValue = previous[stop] - routeCumulative[a];
+                        boardAt = a;
+                    }
+                }
+                routeStart[route] = -1;
+            }
+
+            for (int m = 0; m < markedCount; m++) {
+                marked[markedStops[m]] = false;
+            }
+            boolean[] swapMarked = marked;
+            marked = nextMarked;
+            nextMarked = swapMarked;
+            int[] swapStops = markedStops;
+            markedStops = nextMarkedStops;
+            nextMarkedStops = swapStops;
+            markedCount = nextCount;
+
+            arrival[k] = current;
+            legRoute[k] = routeOfLeg;
+            legBoard[k] = boardOfLeg;
+            legAlight[k] = alightOfLeg;
+        }
+
+        List<Journey> journeys = new ArrayList<>();
+        for (int k = 1; k <= rounds && arrival[k] != null; k++) {
+            if (legRoute[k][destination] >= 0) {
+                journeys.add(reconstruct(k, source, destination, legRoute, legBoard, legAlight));
+            }
+        }
+        journeys.sort(Comparator.comparingDouble(Journey::getDistance).thenComparingInt(Journey::getTransfers));
+        return journeys;
+    }
+
+    private Journey reconstruct(int round, int source, int destination,
+                                int[][] legRoute, int[][] legBoard, int[][] legAlight) {
+        List<JourneyLeg> legs = new ArrayList<>();
+        int stop = destination;
+        int k = round;
+        while (stop != source) {
+            //a stop keeps its label from the last round that improved it
+            while (legRoute[k][stop] < 0) {
+                k--;
+            }
+            int board = legBoard[k][stop];
+            int alight = legAlight[k][stop];
+            int boardStop = routeStops[board];
+            legs.add(new JourneyLeg(busLines[legRoute[k][stop]], stops[boardStop], stops[stop],
+                    routeCumulative[alight] - routeCumulative[board]));
+            stop = boardStop;
+            k--;
+        }
+        Collections.reverse(legs);
+        return new Journey(legs);
+    }
+
+    private int stopIndex(int stopId) {
+        Integer index = stopIndexById.get(stopId);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown stop " + stopId);
+        }
+        return index;
+    }
+}
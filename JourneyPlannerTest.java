@@ -0,0 +1,84 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JourneyPlannerTest {
+    private Stop stopA, stopB, stopC, stopD, stopE;
+    private BusLine lineAB, lineBC, lineCD, lineLongAD;
+    private JourneyPlanner planner;
+
+    @BeforeEach
+    void setup() {
+        stopA = new Stop(1, "a", 0.0, 0.0);
+        stopB = new Stop(2, "b", 0.0, 1.0);
+        stopC = new Stop(3, "c", 0.0, 2.0);
+        stopD = new Stop(4, "d", 0.0, 3.0);
+        stopE = new Stop(5, "e", 5.0, 5.0);
+        lineAB = line(1, stopA, stopB);
+        lineBC = line(2, stopB, stopC);
+        lineCD = line(3, stopC, stopD);
+        lineLongAD = line(4, stopA, stopE, stopD);
+        planner = new JourneyPlanner(List.of(stopA, stopB, stopC, stopD, stopE),
+                List.of(lineAB, lineBC, lineCD, lineLongAD));
+    }
+
+    private BusLine line(int id, Stop... stops) {
+        return new BusLine(id, true, "line " + id, "L" + id, new Route(new ArrayList<>(List.of(stops))));
+    }
+
+    @Test
+    void plan_directOnly() {
+        var journeys = planner.plan(1, 4, 0);
+        assertEquals(1, journeys.size());
+        var journey = journeys.get(0);
+        assertEquals(0, journey.getTransfers());
+        assertEquals(List.of(new JourneyLeg(lineLongAD, stopA, stopD, 0.0)), journey.getLegs());
+        assertEquals(stopA.distanceTo(stopE) + stopE.distanceTo(stopD), journey.getDistance(), 1e-9);
+    }
+
+    @Test
+    void plan_transfersBeatDirect() {
+        var journeys = planner.plan(1, 4, 2);
+        assertEquals(2, journeys.size());
+        var shortest = journeys.get(0);
+        assertEquals(2, shortest.getTransfers());
+        assertEquals(3.0, shortest.getDistance(), 1e-9);
+        assertEquals(List.of(lineAB, lineBC, lineCD),
+                shortest.getLegs().stream().map(JourneyLeg::getBusLine).toList());
+        assertEquals(stopA, shortest.getOrigin());
+        assertEquals(stopD, shortest.getDestination());
+        assertEquals(0, journeys.get(1).getTransfers());
+    }
+
+    @Test
+    void plan_notEnoughTransfers() {
+        assertTrue(planner.plan(1, 3, 0).isEmpty());
+        assertEquals(1, planner.plan(1, 3, 1).size());
+    }
+
+    @Test
+    void plan_unreachable() {
+        assertTrue(planner.plan(4, 1, 3).isEmpty());
+    }
+
+    @Test
+    void plan_sameStop() {
+        assertTrue(planner.plan(2, 2, 3).isEmpty());
+    }
+
+    @Test
+    void plan_unknownStop() {
+        assertThrows(IllegalArgumentException.class, () -> planner.plan(1, 99, 1));
+    }
+
+    @Test
+    void plan_negativeTransfers() {
+        assertThrows(IllegalArgumentException.class, () -> planner.plan(1, 4, -1));
+    }
+}
@@ -0,0 +1,115 @@
+package edu.virginia.sde.hw5;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A registry of OperationMetrics by name. operation() looks an existing operation up without allocating, so it can
+ * be called on every invocation of the code it measures. Everything recorded can be read as OperationStatistics,
+ * printed as a text table with dump(), or published over JMX with registerMBean().
+ */
+public class Metrics implements MetricsMXBean {
+    public static final String JMX_DOMAIN = "edu.virginia.sde.hw5";
+
+    private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private volatile ObjectName registeredName;
+
+    /**
+     * Returns the metrics for the named operation, creating them on first use
+     */
+    public OperationMetrics operation(String name) {
+        OperationMetrics operation = operations.get(name);
+        if (operation == null) {
+            operation = operations.computeIfAbsent(name, OperationMetrics::new);
+        }
+        return operation;
+    }
+
+    /**
+     * Returns statistics for every operation that has been used, in name order
+     */
+    @Override
+    public List<OperationStatistics> getOperations() {
+        List<OperationStatistics> statistics = new ArrayList<>();
+        for (OperationMetrics operation : operations.values()) {
+            statistics.add(operation.getStatistics());
+        }
+        statistics.sort(Comparator.comparing(OperationStatistics::getName));
+        return statistics;
+    }
+
+    /**
+     * Render every operation as one row of a plain text table, with latencies in microseconds
+     */
+    @Override
+    public String dump() {
+        List<OperationStatistics> statistics = getOperations();
+        int nameWidth = "operation".length();
+        for (OperationStatistics operation : statistics) {
+            nameWidth = Math.max(nameWidth, operation.getName().length());
+        }
+        String header = "%-" + nameWidth + "s %10s %8s %12s %12s %10s %10s %10s %10s%n";
+        String row = "%-" + nameWidth + "s %10d %8d %12d %12d %10.1f %10.1f %10.1f %10.1f%n";
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(header, "operation", "calls", "errors", "rows read", "rows written",
+                "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (OperationStatistics operation : statistics) {
+            text.append(String.format(row, operation.getName(), operation.getCalls(), operation.getErrors(),
+                    operation.getRowsRead(), operation.getRowsWritten(), micros(operation.getP50Nanos()),
+                    micros(operation.getP99Nanos()), micros(operation.getP999Nanos()),
+                    micros(operation.getMaxNanos())));
+        }
+        return text.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (OperationMetrics operation : operations.values()) {
+            operation.reset();
+        }
+    }
+
+    /**
+     * Publish this registry in the platform MBean server as edu.virginia.sde.hw5:type=Metrics,name=name
+     * @throws IllegalStateException if this registry is already registered
+     * @throws JMException if the name is malformed or already taken
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        if (registeredName != null) {
+            throw new IllegalStateException("Already registered as " + registeredName);
+        }
+        ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Remove this registry from the platform MBean server, if registerMBean() published it
+     */
+    public synchronized void unregisterMBean() throws MBeanRegistrationException {
+        if (registeredName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(registeredName);
+        } catch (InstanceNotFoundException e) {
+            //someone else already unregistered it
+        }
+        registeredName = null;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
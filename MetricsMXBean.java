@@ -0,0 +1,14 @@
+package edu.virginia.sde.hw5;
+
+import java.util.List;
+
+/**
+ * The JMX view of a Metrics registry
+ */
+public interface MetricsMXBean {
+    List<OperationStatistics> getOperations();
+
+    String dump();
+
+    void reset();
+}
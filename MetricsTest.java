@@ -0,0 +1,95 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+    @Test
+    void histogram_bucketsAreContiguous() {
+        for (long value = 0; value < 100_000; value++) {
+            int bucket = LatencyHistogram.bucketIndex(value);
+            assertTrue(value <= LatencyHistogram.bucketUpperBound(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.bucketUpperBound(bucket - 1));
+        }
+        assertTrue(LatencyHistogram.bucketIndex(Long.MAX_VALUE) >= 0);
+    }
+
+    @Test
+    void histogram_percentilesWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 10_000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_000, histogram.getPercentile(0.5), 5_000_000 * 0.04);
+        assertEquals(9_900_000, histogram.getPercentile(0.99), 9_900_000 * 0.04);
+        assertEquals(9_990_000, histogram.getPercentile(0.999), 9_990_000 * 0.04);
+        assertEquals(10_000_000, histogram.getPercentile(1));
+    }
+
+    @Test
+    void histogram_emptyAndNegative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.99));
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        assertThrows(IllegalArgumentException.class, () -> histogram.getPercentile(1.5));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    void operation_recordsCallsErrorsAndRows() {
+        Metrics metrics = new Metrics();
+        OperationMetrics operation = metrics.operation("getStops");
+        assertSame(operation, metrics.operation("getStops"));
+
+        List<Integer> rows = operation.completedRead(System.nanoTime(), List.of(1, 2, 3));
+        assertEquals(List.of(1, 2, 3), rows);
+        operation.recordSuccess(System.nanoTime(), 0, 4);
+        IllegalStateException error = new IllegalStateException("boom");
+        operation.recordFailure(System.nanoTime(), error);
+
+        OperationStatistics statistics = metrics.getOperations().get(0);
+        assertEquals("getStops", statistics.getName());
+        assertEquals(3, statistics.getCalls());
+        assertEquals(1, statistics.getErrors());
+        assertEquals(3, statistics.getRowsRead());
+        assertEquals(4, statistics.getRowsWritten());
+        assertEquals(error.toString(), statistics.getLastError());
+        assertTrue(metrics.dump().contains("getStops"));
+
+        metrics.reset();
+        assertEquals(0, operation.getCalls());
+        assertNull(operation.getLastError());
+    }
+
+    @Test
+    void registerMBean_exposesOperations() throws JMException {
+        Metrics metrics = new Metrics();
+        metrics.operation("getClosestStop").recordSuccess(System.nanoTime(), 1, 0);
+        ObjectName name = metrics.registerMBean("MetricsTest");
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+            assertEquals(1, operations.length);
+            assertEquals("getClosestStop", operations[0].get("name"));
+            assertEquals(1L, operations[0].get("calls"));
+            String dump = (String) server.invoke(name, "dump", new Object[0], new String[0]);
+            assertTrue(dump.contains("getClosestStop"));
+            assertThrows(IllegalStateException.class, () -> metrics.registerMBean("MetricsTest"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+}
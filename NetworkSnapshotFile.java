@@ -0,0 +1,425 @@
+package edu.virginia.sde.hw5;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A read-only network held in a memory-mapped file. The file stores stops (sorted by id), bus lines (sorted by id)
+ * and each line's Route as rows into the stop table, in flat little-endian int, double and char sections. open()
+ * maps the file and checks its header; every accessor then reads straight from the mapping, so a process can
+ * answer lookups as soon as the file is mapped, without reading the database or building Stop and BusLine objects.
+ * toTransitNetwork() builds the full object graph when a caller needs it.
+ * <p>
+ * The header records the database's data generation the network was read at (see
+ * DatabaseDriver.getDataGeneration()), so a reader can tell a file that lags the database from a current one.
+ * <p>
+ * write() produces a new file beside the old one and renames it into place, so a reader never sees a partly
+ * written snapshot. A reader that already mapped the old file keeps its view until it opens the new one. Null
+ * names are stored as empty strings.
+ */
+public final class NetworkSnapshotFile {
+    private static final int MAGIC = 0x534E4C42;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 40;
+
+    private final Path path;
+    private final int generation;
+    private final int stopCount;
+    private final int busLineCount;
+    private final IntBuffer stopIds;
+    private final DoubleBuffer stopLatitudes;
+    private final DoubleBuffer stopLongitudes;
+    private final IntBuffer stopNameOffsets;
+    private final IntBuffer busLineIds;
+    private final IntBuffer busLineFlags;
+    /* Line i's short name is names[lineNameOffsets[2i], lineNameOffsets[2i + 1]), and its long name runs on to
+     * lineNameOffsets[2i + 2] */
+    private final IntBuffer lineNameOffsets;
+    private final IntBuffer routeOffsets;
+    private final IntBuffer routeStopRows;
+    private final CharBuffer names;
+
+    private NetworkSnapshotFile(Path path, ByteBuffer buffer, Layout layout) {
+        this.path = path;
+        this.generation = buffer.getInt(32);
+        this.stopCount = layout.stopCount;
+        this.busLineCount = layout.busLineCount;
+        stopIds = section(buffer, layout.stopIds, stopCount * Integer.BYTES).asIntBuffer();
+        stopLatitudes = section(buffer, layout.stopLatitudes, stopCount * Double.BYTES).asDoubleBuffer();
+        stopLongitudes = section(buffer, layout.stopLongitudes, stopCount * Double.BYTES).asDoubleBuffer();
+        stopNameOffsets = section(buffer, layout.stopNameOffsets, (stopCount + 1) * Integer.BYTES).asIntBuffer();
+        busLineIds = section(buffer, layout.busLineIds, busLineCount * Integer.BYTES).asIntBuffer();
+        busLineFlags = section(buffer, layout.busLineFlags, busLineCount * Integer.BYTES).asIntBuffer();
+        lineNameOffsets = section(buffer, layout.lineNameOffsets, (2 * busLineCount + 1) * Integer.BYTES)
+                .asIntBuffer();
+        routeOffsets = section(buffer, layout.routeOffsets, (busLineCount + 1) * Integer.BYTES).asIntBuffer();
+        routeStopRows = section(buffer, layout.routeStopRows, layout.routeStopCount * Integer.BYTES).asIntBuffer();
+        names = section(buffer, layout.names, layout.nameLength * Character.BYTES).asCharBuffer();
+    }
+
+    private static ByteBuffer section(ByteBuffer buffer, int offset, int length) {
+        return buffer.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Map a snapshot file read-only
+     * @throws IOException if the file cannot be read or is not a complete snapshot of a version this code reads
+     */
+    public static NetworkSnapshotFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a network snapshot: " + path);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a network snapshot: " + path);
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported network snapshot version " + buffer.getInt(4) + ": " + path);
+            }
+            Layout layout;
+            try {
+                layout = new Layout(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16), buffer.getInt(20));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt network snapshot: " + path, e);
+            }
+            if (layout.size != size || buffer.getLong(24) != size) {
+                throw new IOException("Truncated network snapshot: " + path);
+            }
+            return new NetworkSnapshotFile(path, buffer, layout);
+        }
+    }
+
+    /**
+     * Write the stops and bus lines of a snapshot read at the given data generation
+     */
+    public static void write(Path path, TransitNetwork network, int generation) throws IOException {
+        write(path, network.getStops(), network.getBusLines(), generation);
+    }
+
+    /**
+     * Write stops and deep bus lines (lines with their Routes populated), read at the given data generation, to
+     * path, replacing any existing file. Duplicate ids keep their first occurrence.
+     *
+     * @throws IllegalArgumentException if a Route visits a stop that is not in stops
+     */
+    public static void write(Path path, List<Stop> stops, List<BusLine> busLines, int generation)
+            throws IOException {
+        Map<Integer, Stop> stopsById = new LinkedHashMap<>();
+        for (Stop stop : stops) {
+            stopsById.putIfAbsent(stop.getId(), stop);
+        }
+        List<Stop> sortedStops = new ArrayList<>(stopsById.values());
+        sortedStops.sort(Comparator.comparingInt(Stop::getId));
+        Map<Integer, Integer> rowsById = new HashMap<>();
+        for (int row = 0; row < sortedStops.size(); row++) {
+            rowsById.put(sortedStops.get(row).getId(), row);
+        }
+        Map<Integer, BusLine> busLinesById = new LinkedHashMap<>();
+        for (BusLine busLine : busLines) {
+            busLinesById.putIfAbsent(busLine.getId(), busLine);
+        }
+        List<BusLine> sortedBusLines = new ArrayList<>(busLinesById.values());
+        sortedBusLines.sort(Comparator.comparingInt(BusLine::getId));
+
+        int routeStopCount = 0;
+        int nameLength = 0;
+        for (Stop stop : sortedStops) {
+            nameLength += name(stop.getName()).length();
+        }
+        for (BusLine busLine : sortedBusLines) {
+            routeStopCount += busLine.getRoute().size();
+            nameLength += name(busLine.getShortName()).length() + name(busLine.getLongName()).length();
+        }
+        Layout layout = new Layout(sortedStops.size(), sortedBusLines.size(), routeStopCount, nameLength);
+        ByteBuffer buffer = ByteBuffer.allocate(layout.size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, layout.stopCount);
+        buffer.putInt(12, layout.busLineCount);
+        buffer.putInt(16, layout.routeStopCount);
+        buffer.putInt(20, layout.nameLength);
+        buffer.putLong(24, layout.size);
+        buffer.putInt(32, generation);
+
+        int nameOffset = 0;
+        for (int row = 0; row < sortedStops.size(); row++) {
+            Stop stop = sortedStops.get(row);
+            buffer.putInt(layout.stopIds + row * Integer.BYTES, stop.getId());
+            buffer.putDouble(layout.stopLatitudes + row * Double.BYTES, stop.getLatitude());
+            buffer.putDouble(layout.stopLongitudes + row * Double.BYTES, stop.getLongitude());
+            buffer.putInt(layout.stopNameOffsets + row * Integer.BYTES, nameOffset);
+            nameOffset = putName(buffer, layout, nameOffset, stop.getName());
+        }
+        buffer.putInt(layout.stopNameOffsets + sortedStops.size() * Integer.BYTES, nameOffset);
+        int routeOffset = 0;
+        for (int line = 0; line < sortedBusLines.size(); line++) {
+            BusLine busLine = sortedBusLines.get(line);
+            buffer.putInt(layout.busLineIds + line * Integer.BYTES, busLine.getId());
+            buffer.putInt(layout.busLineFlags + line * Integer.BYTES, busLine.isActive() ? 1 : 0);
+            buffer.putInt(layout.lineNameOffsets + 2 * line * Integer.BYTES, nameOffset);
+            nameOffset = putName(buffer, layout, nameOffset, busLine.getShortName());
+            buffer.putInt(layout.lineNameOffsets + (2 * line + 1) * Integer.BYTES, nameOffset);
+            nameOffset = putName(buffer, layout, nameOffset, busLine.getLongName());
+            buffer.putInt(layout.routeOffsets + line * Integer.BYTES, routeOffset);
+            for (Stop stop : busLine.getRoute()) {
+                Integer row = rowsById.get(stop.getId());
+                if (row == null) {
+                    throw new IllegalArgumentException("Bus line " + busLine.getId() + " visits unknown stop "
+                            + stop.getId());
+                }
+                buffer.putInt(layout.routeStopRows + routeOffset++ * Integer.BYTES, row);
+            }
+        }
+        buffer.putInt(layout.lineNameOffsets + 2 * sortedBusLines.size() * Integer.BYTES, nameOffset);
+        buffer.putInt(layout.routeOffsets + sortedBusLines.size() * Integer.BYTES, routeOffset);
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static String name(String name) {
+        return name == null ? "" : name;
+    }
+
+    private static int putName(ByteBuffer buffer, Layout layout, int offset, String name) {
+        String text = name(name);
+        for (int i = 0; i < text.length(); i++) {
+            buffer.putChar(layout.names + (offset + i) * Character.BYTES, text.charAt(i));
+        }
+        return offset + text.length();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * The data generation of the database the network was read from
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    public int getStopCount() {
+        return stopCount;
+    }
+
+    public int getStopId(int row) {
+        return stopIds.get(row);
+    }
+
+    public double getStopLatitude(int row) {
+        return stopLatitudes.get(row);
+    }
+
+    public double getStopLongitude(int row) {
+        return stopLongitudes.get(row);
+    }
+
+    public String getStopName(int row) {
+        return nameAt(stopNameOffsets.get(row), stopNameOffsets.get(row + 1));
+    }
+
+    /**
+     * Returns the row of the stop with the given id, or -1 if there is none
+     */
+    public int findStopRow(int stopId) {
+        return binarySearch(stopIds, stopCount, stopId);
+    }
+
+    /**
+     * Return the row of the closest stop to a given coordinate (using Euclidean distance, the same as
+     * Stop.distanceTo), or -1 if there are no stops. When several stops are equally close, the lowest row wins.
+     */
+    public int nearestStopRow(double latitude, double longitude) {
+        int bestRow = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int row = 0; row < stopCount; row++) {
+            double latDiff = latitude - stopLatitudes.get(row);
+            double longDiff = longitude - stopLongitudes.get(row);
+            double distance = (latDiff * latDiff) + (longDiff * longDiff);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestRow = row;
+            }
+        }
+        return bestRow;
+    }
+
+    public int getBusLineCount() {
+        return busLineCount;
+    }
+
+    public int getBusLineId(int line) {
+        return busLineIds.get(line);
+    }
+
+    public boolean isBusLineActive(int line) {
+        return busLineFlags.get(line) != 0;
+    }
+
+    public String getBusLineShortName(int line) {
+        return nameAt(lineNameOffsets.get(2 * line), lineNameOffsets.get(2 * line + 1));
+    }
+
+    public String getBusLineLongName(int line) {
+        return nameAt(lineNameOffsets.get(2 * line + 1), lineNameOffsets.get(2 * line + 2));
+    }
+
+    /**
+     * Returns the line index of the bus line with the given id, or -1 if there is none
+     */
+    public int findBusLineRow(int busLineId) {
+        return binarySearch(busLineIds, busLineCount, busLineId);
+    }
+
+    public int getRouteLength(int line) {
+        return routeOffsets.get(line + 1) - routeOffsets.get(line);
+    }
+
+    /**
+     * Returns the stop row at a position on a line's Route
+     * @throws IndexOutOfBoundsException if position is not on the Route
+     */
+    public int getRouteStopRow(int line, int position) {
+        return routeStopRows.get(routeOffsets.get(line) + Objects.checkIndex(position, getRouteLength(line)));
+    }
+
+    /**
+     * Build Stop, BusLine and Route objects for everything in the file and index them
+     */
+    public TransitNetwork toTransitNetwork() {
+        List<Stop> stops = new ArrayList<>(stopCount);
+        for (int row = 0; row < stopCount; row++) {
+            stops.add(new Stop(getStopId(row), getStopName(row), getStopLatitude(row), getStopLongitude(row)));
+        }
+        List<BusLine> busLines = new ArrayList<>(busLineCount);
+        for (int line = 0; line < busLineCount; line++) {
+            List<Stop> routeStops = new ArrayList<>(getRouteLength(line));
+            for (int position = 0; position < getRouteLength(line); position++) {
+                routeStops.add(stops.get(getRouteStopRow(line, position)));
+            }
+            busLines.add(new BusLine(getBusLineId(line), isBusLineActive(line), getBusLineLongName(line),
+                    getBusLineShortName(line), new Route(Collections.unmodifiableList(routeStops))));
+        }
+        return new TransitNetwork(stops, busLines);
+    }
+
+    private String nameAt(int start, int end) {
+        char[] chars = new char[end - start];
+        names.get(start, chars);
+        return new String(chars);
+    }
+
+    private static int binarySearch(IntBuffer sortedIds, int size, int id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = sortedIds.get(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The byte offset of each section for the given counts. Sections follow the header in field order, each
+     * starting on an 8-byte boundary.
+     */
+    private static final class Layout {
+        private final int stopCount;
+        private final int busLineCount;
+        private final int routeStopCount;
+        private final int nameLength;
+        private final int stopIds;
+        private final int stopLatitudes;
+        private final int stopLongitudes;
+        private final int stopNameOffsets;
+        private final int busLineIds;
+        private final int busLineFlags;
+        private final int lineNameOffsets;
+        private final int routeOffsets;
+        private final int routeStopRows;
+        private final int names;
+        private final int size;
+
+        /**
+         * @throws IllegalArgumentException if a count is negative or the file would not fit in one mapping
+         */
+        Layout(int stopCount, int busLineCount, int routeStopCount, int nameLength) {
+            if (stopCount < 0 || busLineCount < 0 || routeStopCount < 0 || nameLength < 0) {
+                throw new IllegalArgumentException("Negative section length");
+            }
+            this.stopCount = stopCount;
+            this.busLineCount = busLineCount;
+            this.routeStopCount = routeStopCount;
+            this.nameLength = nameLength;
+            long offset = HEADER_BYTES;
+            stopIds = (int) offset;
+            offset = align(offset + (long) stopCount * Integer.BYTES);
+            stopLatitudes = (int) offset;
+            offset = align(offset + (long) stopCount * Double.BYTES);
+            stopLongitudes = (int) offset;
+            offset = align(offset + (long) stopCount * Double.BYTES);
+            stopNameOffsets = (int) offset;
+            offset = align(offset + (stopCount + 1L) * Integer.BYTES);
+            busLineIds = (int) offset;
+            offset = align(offset + (long) busLineCount * Integer.BYTES);
+            busLineFlags = (int) offset;
+            offset = align(offset + (long) busLineCount * Integer.BYTES);
+            lineNameOffsets = (int) offset;
+            offset = align(offset + (2L * busLineCount + 1) * Integer.BYTES);
+            routeOffsets = (int) offset;
+            offset = align(offset + (busLineCount + 1L) * Integer.BYTES);
+            routeStopRows = (int) offset;
+            offset = align(offset + (long) routeStopCount * Integer.BYTES);
+            names = (int) offset;
+            offset = align(offset + (long) nameLength * Character.BYTES);
+            if (offset > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Network too large for one snapshot file");
+            }
+            size = (int) offset;
+        }
+
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+    }
+}
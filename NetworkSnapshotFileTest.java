@@ -0,0 +1,177 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkSnapshotFileTest {
+    private static final Stop RICE_HALL = new Stop(7, "Whitehead Rd @ Rice Hall", 38.0316, -78.5108);
+    private static final Stop EMMET = new Stop(3, "Emmet St @ Ivy Rd", 38.0345, -78.5006);
+    private static final Stop CORNER = new Stop(12, "University Ave @ The Corner", 38.0350, -78.4990);
+
+    @TempDir
+    Path directory;
+
+    private static List<BusLine> busLines() {
+        return List.of(
+                new BusLine(20, false, "Night Pilot", "NP", new Route(List.of(CORNER))),
+                new BusLine(4, true, "Northline", "NL", new Route(List.of(RICE_HALL, EMMET, CORNER))));
+    }
+
+    @Test
+    void write_thenOpen_roundTrips() throws IOException {
+        Path path = directory.resolve("network.snapshot");
+        NetworkSnapshotFile.write(path, List.of(RICE_HALL, EMMET, CORNER, new Stop(3, "Duplicate", 0, 0)),
+                busLines(), 5);
+
+        NetworkSnapshotFile snapshotFile = NetworkSnapshotFile.open(path);
+        assertEquals(5, snapshotFile.getGeneration());
+        assertEquals(3, snapshotFile.getStopCount());
+        assertEquals(3, snapshotFile.getStopId(0));
+        assertEquals("Emmet St @ Ivy Rd", snapshotFile.getStopName(0));
+        assertEquals(38.0316, snapshotFile.getStopLatitude(1));
+        assertEquals(-78.4990, snapshotFile.getStopLongitude(2));
+        assertEquals(2, snapshotFile.findStopRow(12));
+        assertEquals(-1, snapshotFile.findStopRow(5));
+
+        assertEquals(2, snapshotFile.getBusLineCount());
+        int northline = snapshotFile.findBusLineRow(4);
+        assertEquals(0, northline);
+        assertTrue(snapshotFile.isBusLineActive(northline));
+        assertEquals("NL", snapshotFile.getBusLineShortName(northline));
+        assertEquals("Northline", snapshotFile.getBusLineLongName(northline));
+        assertEquals(3, snapshotFile.getRouteLength(northline));
+        assertEquals(1, snapshotFile.getRouteStopRow(northline, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshotFile.getRouteStopRow(northline, 3));
+        assertFalse(snapshotFile.isBusLineActive(1));
+    }
+
+    @Test
+    void nearestStopRow() throws IOException {
+        Path path = directory.resolve("network.snapshot");
+        NetworkSnapshotFile.write(path, List.of(RICE_HALL, EMMET, CORNER), busLines(), 0);
+        NetworkSnapshotFile snapshotFile = NetworkSnapshotFile.open(path);
+
+        assertEquals(7, snapshotFile.getStopId(snapshotFile.nearestStopRow(38.0310, -78.5110)));
+        assertEquals(12, snapshotFile.getStopId(snapshotFile.nearestStopRow(38.0351, -78.4980)));
+    }
+
+    @Test
+    void toTransitNetwork() throws IOException {
+        Path path = directory.resolve("network.snapshot");
+        NetworkSnapshotFile.write(path, List.of(RICE_HALL, EMMET, CORNER), busLines(), 0);
+
+        TransitNetwork network = NetworkSnapshotFile.open(path).toTransitNetwork();
+        assertEquals(List.of(3, 7, 12), network.getStops().stream().map(Stop::getId).toList());
+        BusLine northline = network.getBusLineById(4).orElseThrow();
+        assertEquals(List.of(7, 3, 12), northline.getRoute().getStops().stream().map(Stop::getId).toList());
+        assertSame(network.getStops().get(2), northline.getRoute().get(2));
+    }
+
+    @Test
+    void write_unknownRouteStop_throws() {
+        Path path = directory.resolve("network.snapshot");
+        assertThrows(IllegalArgumentException.class,
+                () -> NetworkSnapshotFile.write(path, List.of(RICE_HALL), busLines(), 0));
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    void open_notASnapshot_throws() throws IOException {
+        Path path = directory.resolve("network.snapshot");
+        Files.writeString(path, "this is not a network snapshot file");
+        assertThrows(IOException.class, () -> NetworkSnapshotFile.open(path));
+    }
+
+    @Test
+    void open_truncated_throws() throws IOException {
+        Path path = directory.resolve("network.snapshot");
+        NetworkSnapshotFile.write(path, List.of(RICE_HALL, EMMET, CORNER), busLines(), 0);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+        assertThrows(IOException.class, () -> NetworkSnapshotFile.open(path));
+    }
+
+    private DatabaseDriver writeDatabase() throws SQLException {
+        DatabaseDriver databaseDriver = new DatabaseDriver(directory.resolve("test.sqlite").toString());
+        databaseDriver.connect();
+        databaseDriver.createTables();
+        databaseDriver.addStops(List.of(RICE_HALL, EMMET, CORNER));
+        databaseDriver.addBusLines(busLines());
+        databaseDriver.commit();
+        databaseDriver.disconnect();
+        return databaseDriver;
+    }
+
+    @Test
+    void busLineService_coldStartsFromSnapshotFile() throws SQLException {
+        Path snapshotPath = directory.resolve("network.snapshot");
+        DatabaseDriver databaseDriver = writeDatabase();
+
+        BusLineService first = new BusLineService(databaseDriver, snapshotPath);
+        assertEquals(3, first.getStops().size());
+        assertEquals(1, first.getMetrics().operation("loadNetwork").getCalls());
+        assertTrue(Files.exists(snapshotPath));
+
+        BusLineService second = new BusLineService(databaseDriver, snapshotPath);
+        assertEquals(List.of(7, 3, 12), second.getBusLineById(4).orElseThrow().getRoute().getStops().stream()
+                .map(Stop::getId).toList());
+        assertEquals(0, second.getMetrics().operation("loadNetwork").getCalls());
+        assertEquals(1, second.getMetrics().operation("readSnapshotFile").getCalls());
+
+        second.addStops(List.of(new Stop(30, "Alderman Rd", 38.0330, -78.5130)));
+        BusLineService third = new BusLineService(databaseDriver, snapshotPath);
+        assertEquals(4, third.getStops().size());
+        assertEquals(0, third.getMetrics().operation("loadNetwork").getCalls());
+    }
+
+    @Test
+    void busLineService_corruptedBody_fallsBackToDatabase() throws SQLException, IOException {
+        Path snapshotPath = directory.resolve("network.snapshot");
+        DatabaseDriver databaseDriver = writeDatabase();
+        new BusLineService(databaseDriver, snapshotPath).getStops();
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        Arrays.fill(bytes, 40, bytes.length, (byte) 0x7F);
+        Files.write(snapshotPath, bytes);
+
+        BusLineService busLineService = new BusLineService(databaseDriver, snapshotPath);
+        assertEquals(List.of(7, 3, 12), busLineService.getBusLineById(4).orElseThrow().getRoute().getStops().stream()
+                .map(Stop::getId).toList());
+        OperationMetrics readSnapshotFile = busLineService.getMetrics().operation("readSnapshotFile");
+        assertEquals(1, readSnapshotFile.getErrors());
+        assertInstanceOf(RuntimeException.class, readSnapshotFile.getLastError());
+        assertEquals(1, busLineService.getMetrics().operation("loadNetwork").getCalls());
+        assertEquals(3, NetworkSnapshotFile.open(snapshotPath).toTransitNetwork().getStops().size());
+    }
+
+    @Test
+    void busLineService_staleSnapshotFile_fallsBackToDatabase() throws SQLException, IOException {
+        Path snapshotPath = directory.resolve("network.snapshot");
+        DatabaseDriver databaseDriver = writeDatabase();
+        new BusLineService(databaseDriver, snapshotPath).getStops();
+        assertEquals(0, NetworkSnapshotFile.open(snapshotPath).getGeneration());
+
+        databaseDriver.connect();
+        new DatabaseSynchronizer(databaseDriver).synchronize(List.of(RICE_HALL, EMMET), List.of(
+                new BusLine(4, true, "Northline", "NL", new Route(List.of(RICE_HALL, EMMET)))));
+        assertEquals(1, databaseDriver.getDataGeneration());
+        databaseDriver.disconnect();
+
+        BusLineService busLineService = new BusLineService(databaseDriver, snapshotPath);
+        assertEquals(2, busLineService.getStops().size());
+        OperationMetrics readSnapshotFile = busLineService.getMetrics().operation("readSnapshotFile");
+        assertEquals(1, readSnapshotFile.getErrors());
+        assertTrue(readSnapshotFile.getLastError().getMessage().startsWith("Stale"),
+                readSnapshotFile.getLastError()::getMessage);
+        assertEquals(1, busLineService.getMetrics().operation("loadNetwork").getCalls());
+        assertEquals(1, NetworkSnapshotFile.open(snapshotPath).getGeneration());
+    }
+}
@@ -1,5 +1,6 @@
 package edu.virginia.sde.hw5;
 
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.List;
 
@@ -7,41 +8,54 @@ public class OfficialSubmittedDatabase {
     public static void main(String[] args) {
         Configuration configuration = new Configuration();
         DatabaseDriver databaseDriver = new DatabaseDriver(configuration);
-        BusLineReader readBusLine = new BusLineReader(configuration);
-        StopReader readBusStop = new StopReader(configuration);
+        TransitFeedFetcher feedFetcher = new TransitFeedFetcher(configuration);
+        feedFetcher.start();
+        BusLineReader readBusLine = new BusLineReader(configuration, feedFetcher);
+        StopReader readBusStop = new StopReader(feedFetcher);
         Route routeReader = new Route();
         double routes = routeReader.getRouteDistance();
 
         try {
             databaseDriver.connect();
-            List<Stop> stops = readBusStop.getStops();
-            List <BusLine> buslines = readBusLine.getBusLines();
-            databaseDriver.clearTables();
-            databaseDriver.createTables();
-            databaseDriver.addStops(stops);
-            databaseDriver.addBusLines(buslines);
+            try {
+                List<Stop> stops = readBusStop.getStops();
+                List <BusLine> buslines = readBusLine.getBusLines();
+                readBusLine.getUnknownStopIds().forEach((lineId, stopIds) ->
+                        System.out.println("Bus line " + lineId + " references unknown stops " + stopIds));
+                databaseDriver.createTables();
+                databaseDriver.commit();
+                //only a first load into an empty database skips durability; a refresh writes a small difference to
+                //a live database, which a crash under the bulk load profile could corrupt
+                if (databaseDriver.getAllStops().isEmpty() && databaseDriver.getBusLines().isEmpty()) {
+                    databaseDriver.beginBulkLoad();
+                }
+                String snapshotFilename = configuration.getSnapshotFilename();
+                Path snapshotPath = snapshotFilename == null ? null : Path.of(snapshotFilename);
+                SyncReport syncReport = new DatabaseSynchronizer(databaseDriver, snapshotPath)
+                        .synchronize(stops, buslines);
 //            databaseDriver.getRouteForBusLine(routeReader);
-            databaseDriver.commit();
-
-
-
+                System.out.println("Synchronized database: " + syncReport);
+            } finally {
+                //roll back anything left uncommitted by a failure, checked or not, and always hand the file back
+                try {
+                    if (databaseDriver.isBulkLoad()) {
+                        databaseDriver.endBulkLoad();
+                    } else {
+                        databaseDriver.rollback();
+                    }
+                } finally {
+                    try {
+                        databaseDriver.disconnect();
+                    } finally {
+                        databaseDriver.close();
+                    }
+                }
+            }
         } catch (SQLException e) {
 //            throw new RuntimeException(e);
             System.out.println("Error adding values to the database" + e.getMessage());
-        }
-        try {
-            databaseDriver.rollback();
-        }
-        catch (SQLException exe) {
-            System.out.println("Error rolling back" + exe.getMessage());
-        }
-        finally {
-            try {
-                databaseDriver.disconnect();
-            }
-            catch (SQLException e) {
-                System.out.println("Error disconnecting" + e.getMessage());
-            }
+        } finally {
+            feedFetcher.close();
         }
 
     }
@@ -0,0 +1,98 @@
+package edu.virginia.sde.hw5;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency, call, error and row counts for one named operation. Callers take System.nanoTime() before the work and
+ * hand it to one of the record methods afterwards; none of them allocate, so instrumentation can stay on in
+ * production. The completedRead overloads return their argument, so a read can be recorded in its return statement.
+ */
+public final class OperationMetrics {
+    private final String name;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private volatile Throwable lastError;
+
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void recordSuccess(long startNanos, long rowsRead, long rowsWritten) {
+        latencies.record(System.nanoTime() - startNanos);
+        if (rowsRead != 0) {
+            this.rowsRead.add(rowsRead);
+        }
+        if (rowsWritten != 0) {
+            this.rowsWritten.add(rowsWritten);
+        }
+    }
+
+    /**
+     * Failed calls count towards latency as well, since a slow failure is still time spent
+     */
+    public void recordFailure(long startNanos, Throwable error) {
+        latencies.record(System.nanoTime() - startNanos);
+        errors.increment();
+        lastError = error;
+    }
+
+    public <T extends Collection<?>> T completedRead(long startNanos, T rows) {
+        recordSuccess(startNanos, rows.size(), 0);
+        return rows;
+    }
+
+    public <T> Optional<T> completedRead(long startNanos, Optional<T> row) {
+        recordSuccess(startNanos, row.isPresent() ? 1 : 0, 0);
+        return row;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    public long getCalls() {
+        return latencies.getCount();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getRowsRead() {
+        return rowsRead.sum();
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    /**
+     * The most recent failure, or null if the operation has never failed
+     */
+    public Throwable getLastError() {
+        return lastError;
+    }
+
+    public OperationStatistics getStatistics() {
+        Throwable error = lastError;
+        return new OperationStatistics(name, getCalls(), getErrors(), getRowsRead(), getRowsWritten(),
+                latencies.getPercentile(0.5), latencies.getPercentile(0.99), latencies.getPercentile(0.999),
+                latencies.getMax(), error == null ? null : error.toString());
+    }
+
+    public void reset() {
+        latencies.reset();
+        errors.reset();
+        rowsRead.reset();
+        rowsWritten.reset();
+        lastError = null;
+    }
+}
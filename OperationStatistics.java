@@ -0,0 +1,75 @@
+package edu.virginia.sde.hw5;
+
+/**
+ * A point-in-time copy of one operation's OperationMetrics. Latencies are in nanoseconds. JMX clients see each
+ * OperationStatistics as a CompositeData with one item per getter.
+ */
+public final class OperationStatistics {
+    private final String name;
+    private final long calls;
+    private final long errors;
+    private final long rowsRead;
+    private final long rowsWritten;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+    private final String lastError;
+
+    public OperationStatistics(String name, long calls, long errors, long rowsRead, long rowsWritten,
+                               long p50Nanos, long p99Nanos, long p999Nanos, long maxNanos, String lastError) {
+        this.name = name;
+        this.calls = calls;
+        this.errors = errors;
+        this.rowsRead = rowsRead;
+        this.rowsWritten = rowsWritten;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+        this.lastError = lastError;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * The most recent failure's toString(), or null if the operation has never failed
+     */
+    public String getLastError() {
+        return lastError;
+    }
+}
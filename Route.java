@@ -2,13 +2,30 @@ package edu.virginia.sde.hw5;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 
+/**
+ * The ordered stops of a bus line. Cumulative distances along the Route (one array per DistanceMetric, Euclidean
+ * unless a metric is given) and the position of each stop id are built on first use and dropped by add(), so
+ * distance and position queries are O(1) after the first. Building them is
+ * idempotent, so a Route that is no longer modified can be read from several threads. Changes made to the stop list
+ * without going through add() are not seen by those caches.
+ */
 public class Route implements Iterable<Stop> {
     private final List<Stop> stopList;
 
+    /* cumulativeDistances.get(metric.ordinal())[i] is the distance from the first stop to the stop at position i */
+    private volatile AtomicReferenceArray<double[]> cumulativeDistances;
+
+    /* The first position of each stop id on the Route */
+    private volatile Map<Integer, Integer> positionsByStopId;
+
     public Route(List<Stop> stopList) {
         this.stopList = stopList;
     }
@@ -31,25 +48,96 @@ public class Route implements Iterable<Stop> {
 
     public void add(Stop newStop) {
         stopList.add(newStop);
+        cumulativeDistances = null;
+        positionsByStopId = null;
     }
 
+    /**
+     * Whether this Route visits a stop with the same id. Uses the position index once indexOf() has built it;
+     * otherwise scans, matching canonical Stops (see StopIdentityMap) by identity before comparing ids.
+     */
     public boolean contains(Stop newStop) {
-        return stopList.contains(newStop);
+        if (newStop == null) {
+            return false;
+        }
+        Map<Integer, Integer> positions = positionsByStopId;
+        if (positions != null) {
+            return positions.containsKey(newStop.getId());
+        }
+        int stopId = newStop.getId();
+        for (Stop stop : stopList) {
+            if (stop == newStop || stop.getId() == stopId) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public List<Stop> getStops() {
         return Collections.unmodifiableList(stopList);
     }
 
+    /**
+     * Returns the first position of a stop (by id) on this Route, or -1 if the Route doesn't visit it
+     */
+    public int indexOf(Stop stop) {
+        Map<Integer, Integer> positions = positionsByStopId;
+        if (positions == null) {
+            positions = new HashMap<>();
+            for (int i = 0; i < stopList.size(); i++) {
+                positions.putIfAbsent(stopList.get(i).getId(), i);
+            }
+            positionsByStopId = positions;
+        }
+        return positions.getOrDefault(stop.getId(), -1);
+    }
+
     public double getRouteDistance() {
-        double totalDistance = 0.0;
-        for (int i = 0; i < size() - 1; i++) {
-            Stop segmentStart = get(i);
-            Stop segmentEnd = get(i+1);
-            double segmentDistance = segmentStart.distanceTo(segmentEnd);
-            totalDistance += segmentDistance;
+        return getRouteDistance(DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * Returns the length of this Route under metric: degrees for EUCLIDEAN, metres otherwise
+     */
+    public double getRouteDistance(DistanceMetric metric) {
+        double[] cumulative = getCumulativeDistances(metric);
+        return cumulative.length == 0 ? 0.0 : cumulative[cumulative.length - 1];
+    }
+
+    /**
+     * Returns the distance travelled along this Route between two positions, in either order
+     * @throws IndexOutOfBoundsException if either position is not on the Route
+     */
+    public double distanceBetween(int fromIndex, int toIndex) {
+        return distanceBetween(fromIndex, toIndex, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * Returns the distance travelled along this Route between two positions under metric, in either order
+     * @throws IndexOutOfBoundsException if either position is not on the Route
+     */
+    public double distanceBetween(int fromIndex, int toIndex, DistanceMetric metric) {
+        double[] cumulative = getCumulativeDistances(metric);
+        Objects.checkIndex(fromIndex, cumulative.length);
+        Objects.checkIndex(toIndex, cumulative.length);
+        return Math.abs(cumulative[toIndex] - cumulative[fromIndex]);
+    }
+
+    private double[] getCumulativeDistances(DistanceMetric metric) {
+        AtomicReferenceArray<double[]> byMetric = cumulativeDistances;
+        if (byMetric == null) {
+            byMetric = new AtomicReferenceArray<>(DistanceMetric.values().length);
+            cumulativeDistances = byMetric;
+        }
+        double[] cumulative = byMetric.get(metric.ordinal());
+        if (cumulative == null) {
+            cumulative = new double[stopList.size()];
+            for (int i = 1; i < cumulative.length; i++) {
+                cumulative[i] = cumulative[i - 1] + stopList.get(i - 1).distanceTo(stopList.get(i), metric);
+            }
+            byMetric.set(metric.ordinal(), cumulative);
         }
-        return totalDistance;
+        return cumulative;
     }
 
     @Override
@@ -0,0 +1,51 @@
+package edu.virginia.sde.hw5;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BusLines read by one DatabaseDriver query, whose Routes are loaded together the first time any of them is
+ * asked for its Route. Listing lines stays a single cheap query, and touching their Routes costs one more query
+ * for the whole batch instead of one per line. The Routes are as of that first access, not as of the listing.
+ */
+final class RouteBatch {
+    private final DatabaseDriver databaseDriver;
+    private List<BusLine> busLines = new ArrayList<>();
+
+    RouteBatch(DatabaseDriver databaseDriver) {
+        this.databaseDriver = databaseDriver;
+    }
+
+    /**
+     * Create a BusLine whose Route is loaded with the rest of this batch
+     */
+    BusLine newBusLine(int id, boolean isActive, String longName, String shortName) {
+        BusLine busLine = new BusLine(id, isActive, longName, shortName, this);
+        busLines.add(busLine);
+        return busLine;
+    }
+
+    /**
+     * Set the Route of every line in the batch that has not been given one since it was read. Only the first call
+     * queries the database.
+     *
+     * @throws RuntimeException if the database could not be read
+     */
+    synchronized void load() {
+        if (busLines == null) {
+            return;
+        }
+        Map<Integer, Route> routes;
+        try {
+            routes = databaseDriver.getRoutesForBusLines(busLines);
+        } catch (SQLException e) {
+            throw new RuntimeException("Error accessing database", e);
+        }
+        for (BusLine busLine : busLines) {
+            busLine.setLoadedRoute(this, routes.getOrDefault(busLine.getId(), new Route()));
+        }
+        busLines = null;
+    }
+}
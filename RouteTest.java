@@ -69,6 +69,25 @@ class RouteTest {
         assertTrue(route.contains(stopB));
     }
 
+    @Test
+    void contains_matchesById() {
+        Stop first = new Stop(1, "a", 0.0, 0.0);
+        route = new Route(new ArrayList<>(List.of(first, new Stop(2, "b", 0.0, 1.0))));
+        assertTrue(route.contains(new Stop(2, "b", 0.0, 1.0)));
+        assertFalse(route.contains(new Stop(3, "c", 0.0, 2.0)));
+        route.indexOf(first);
+        assertTrue(route.contains(first));
+        assertFalse(route.contains(new Stop(3, "c", 0.0, 2.0)));
+    }
+
+    @Test
+    void contains_null() {
+        route = new Route(new ArrayList<>(List.of(new Stop(1, "a", 0.0, 0.0))));
+        assertFalse(route.contains(null));
+        route.indexOf(route.get(0));
+        assertFalse(route.contains(null));
+    }
+
     @Test
     void getStops() {
         route = new Route(new ArrayList<>(List.of(stopA, stopB)));
@@ -86,4 +105,55 @@ class RouteTest {
         route = new Route(new ArrayList<>(List.of(stopA, stopB, stopC)));
         assertEquals(6.0, route.getRouteDistance());
     }
+
+    @Test
+    void getRouteDistance_empty() {
+        assertEquals(0.0, emptyRoute.getRouteDistance());
+    }
+
+    @Test
+    void getRouteDistance_afterAdd() {
+        route = new Route();
+        route.add(new Stop(1, "a", 0.0, 0.0));
+        route.add(new Stop(2, "b", 3.0, 4.0));
+        assertEquals(5.0, route.getRouteDistance());
+        route.add(new Stop(3, "c", 4.0, 4.0));
+        assertEquals(6.0, route.getRouteDistance());
+    }
+
+    @Test
+    void distanceBetween() {
+        route = new Route(new ArrayList<>(List.of(new Stop(1, "a", 0.0, 0.0),
+                new Stop(2, "b", 3.0, 4.0), new Stop(3, "c", 4.0, 4.0))));
+        assertEquals(1.0, route.distanceBetween(1, 2));
+        assertEquals(6.0, route.distanceBetween(2, 0));
+        assertEquals(0.0, route.distanceBetween(1, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> route.distanceBetween(0, 3));
+    }
+
+    @Test
+    void distanceBetween_metric() {
+        route = new Route(new ArrayList<>(List.of(new Stop(1, "a", 60.0, 0.0),
+                new Stop(2, "b", 60.0, 1.0), new Stop(3, "c", 61.0, 1.0))));
+        assertEquals(2.0, route.getRouteDistance());
+        double east = DistanceMetric.HAVERSINE.distance(60.0, 0.0, 60.0, 1.0);
+        double north = DistanceMetric.HAVERSINE.distance(60.0, 1.0, 61.0, 1.0);
+        assertEquals(east + north, route.getRouteDistance(DistanceMetric.HAVERSINE), 1e-6);
+        assertEquals(north, route.distanceBetween(2, 1, DistanceMetric.HAVERSINE), 1e-6);
+        route.add(new Stop(4, "d", 61.0, 2.0));
+        assertEquals(3.0, route.getRouteDistance());
+        assertTrue(route.getRouteDistance(DistanceMetric.HAVERSINE) > east + north);
+    }
+
+    @Test
+    void indexOf() {
+        Stop a = new Stop(1, "a", 0.0, 0.0);
+        Stop b = new Stop(2, "b", 3.0, 4.0);
+        route = new Route(new ArrayList<>(List.of(a, b, a)));
+        assertEquals(0, route.indexOf(a));
+        assertEquals(1, route.indexOf(b));
+        assertEquals(-1, route.indexOf(new Stop(3, "c", 4.0, 4.0)));
+        route.add(new Stop(3, "c", 4.0, 4.0));
+        assertEquals(3, route.indexOf(new Stop(3, "c", 4.0, 4.0)));
+    }
 }
\ No newline at end of file
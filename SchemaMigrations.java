@@ -0,0 +1,138 @@
+package edu.virginia.sde.hw5;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * The ordered schema migrations for the database. Each applied migration is recorded as a row in SchemaVersion, so
+ * migrate() only runs the ones a database file has not seen yet. Files created before SchemaVersion existed are at
+ * version 0 and are upgraded in place; migration 1 is a no-op on them since their tables already exist.
+ * Migrations are only ever appended, never edited, once they have shipped.
+ */
+public final class SchemaMigrations {
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Create Stops, BusLines and Routes",
+                    "CREATE TABLE IF NOT EXISTS Stops (" +
+                            "ID INTEGER PRIMARY KEY, " +
+                            "StopName TEXT NOT NULL, " +
+                            "Latitude REAL NOT NULL, " +
+                            "Longitude REAL NOT NULL)",
+                    "CREATE TABLE IF NOT EXISTS BusLines (" +
+                            "ID INTEGER PRIMARY KEY, " +
+                            "IsActive BOOLEAN NOT NULL, " +
+                            "LongName TEXT NOT NULL, " +
+                            "ShortName TEXT NOT NULL)",
+                    "CREATE TABLE IF NOT EXISTS Routes (" +
+                            "ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            "BusLineID INTEGER NOT NULL, " +
+                            "StopID INTEGER NOT NULL, " +
+                            "RouteOrder INTEGER NOT NULL, " +
+                            "FOREIGN KEY (BusLineID) REFERENCES BusLines(ID) ON DELETE CASCADE, " +
+                            "FOREIGN KEY (StopID) REFERENCES Stops(ID) ON DELETE CASCADE)"),
+            //a Route is always read in order for one line, so its rows are stored clustered by that key
+            new Migration(2, "Key Routes by (BusLineID, RouteOrder) without a rowid",
+                    "CREATE TABLE RoutesByLine (" +
+                            "BusLineID INTEGER NOT NULL, " +
+                            "StopID INTEGER NOT NULL, " +
+                            "RouteOrder INTEGER NOT NULL, " +
+                            "PRIMARY KEY (BusLineID, RouteOrder), " +
+                            "FOREIGN KEY (BusLineID) REFERENCES BusLines(ID) ON DELETE CASCADE, " +
+                            "FOREIGN KEY (StopID) REFERENCES Stops(ID) ON DELETE CASCADE) WITHOUT ROWID",
+                    "INSERT INTO RoutesByLine (BusLineID, StopID, RouteOrder) " +
+                            "SELECT BusLineID, StopID, RouteOrder FROM Routes",
+                    "DROP TABLE Routes",
+                    "ALTER TABLE RoutesByLine RENAME TO Routes"),
+            //RoutesByStop also serves the ON DELETE CASCADE from Stops; the name indexes match the NOCASE lookups
+            new Migration(3, "Index Routes by stop and BusLines by name",
+                    "CREATE INDEX IF NOT EXISTS RoutesByStop ON Routes (StopID, BusLineID)",
+                    "CREATE INDEX IF NOT EXISTS BusLinesByShortName ON BusLines (ShortName COLLATE NOCASE)",
+                    "CREATE INDEX IF NOT EXISTS BusLinesByLongName ON BusLines (LongName COLLATE NOCASE)"),
+            //StopNames is an external-content trigram index over Stops.StopName, kept current by the triggers;
+            //StopsByName serves prefix LIKE, which trigrams cannot answer for prefixes under three characters
+            new Migration(4, "Index stop names for prefix, substring and fuzzy search",
+                    "CREATE VIRTUAL TABLE StopNames USING fts5(" +
+                            "StopName, content='Stops', content_rowid='ID', tokenize='trigram')",
+                    "CREATE TRIGGER StopNamesInsert AFTER INSERT ON Stops BEGIN " +
+                            "INSERT INTO StopNames (rowid, StopName) VALUES (new.ID, new.StopName); END",
+                    "CREATE TRIGGER StopNamesDelete AFTER DELETE ON Stops BEGIN " +
+                            "INSERT INTO StopNames (StopNames, rowid, StopName) " +
+                            "VALUES ('delete', old.ID, old.StopName); END",
+                    "CREATE TRIGGER StopNamesUpdate AFTER UPDATE OF StopName ON Stops BEGIN " +
+                            "INSERT INTO StopNames (StopNames, rowid, StopName) " +
+                            "VALUES ('delete', old.ID, old.StopName); " +
+                            "INSERT INTO StopNames (rowid, StopName) VALUES (new.ID, new.StopName); END",
+                    "INSERT INTO StopNames (StopNames) VALUES ('rebuild')",
+                    "CREATE INDEX IF NOT EXISTS StopsByName ON Stops (StopName COLLATE NOCASE)"));
+
+    public static final int LATEST_VERSION = MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+
+    private SchemaMigrations() { }
+
+    /**
+     * Apply every migration newer than the database's current version, in order, on the given connection. Nothing
+     * is committed; the caller commits or rolls back.
+     *
+     * @throws IllegalStateException if the database was written by a newer version of this code
+     */
+    public static void migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS SchemaVersion (" +
+                    "Version INTEGER PRIMARY KEY, " +
+                    "Description TEXT NOT NULL, " +
+                    "AppliedAt TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+        int current = getVersion(connection);
+        if (current > LATEST_VERSION) {
+            throw new IllegalStateException("Database schema version " + current
+                    + " is newer than the latest known version " + LATEST_VERSION);
+        }
+        String recordSQL = "INSERT INTO SchemaVersion (Version, Description) VALUES (?, ?)";
+        try (Statement statement = connection.createStatement();
+             PreparedStatement record = connection.prepareStatement(recordSQL)) {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+                for (String sql : migration.statements) {
+                    statement.execute(sql);
+                }
+                record.setInt(1, migration.version);
+                record.setString(2, migration.description);
+                record.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Returns the highest migration applied to the database, or 0 if none have been
+     */
+    public static int getVersion(Connection connection) throws SQLException {
+        String sql = "SELECT name FROM sqlite_master WHERE type = 'table' AND name = 'SchemaVersion'";
+        try (Statement statement = connection.createStatement();
+             ResultSet tables = statement.executeQuery(sql)) {
+            if (!tables.next()) {
+                return 0;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultset = statement.executeQuery("SELECT MAX(Version) FROM SchemaVersion")) {
+            return resultset.next() ? resultset.getInt(1) : 0;
+        }
+    }
+
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final String[] statements;
+
+        Migration(int version, String description, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+        }
+    }
+}
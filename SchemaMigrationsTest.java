@@ -0,0 +1,145 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigrationsTest {
+    private DatabaseDriver databaseDriver;
+    private String databaseFilename;
+
+    @TempDir
+    Path databaseDirectory;
+
+    @BeforeEach
+    void setup() {
+        databaseFilename = databaseDirectory.resolve("test.sqlite").toString();
+        databaseDriver = new DatabaseDriver(databaseFilename);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        databaseDriver.disconnect();
+    }
+
+    private void createLoadedDatabase() throws SQLException {
+        databaseDriver.connect();
+        databaseDriver.createTables();
+        Stop a = new Stop(1, "a", 38.0, -78.0);
+        Stop b = new Stop(2, "b", 38.1, -78.1);
+        databaseDriver.addStops(List.of(a, b));
+        databaseDriver.addBusLines(List.of(
+                new BusLine(1, true, "Line One", "L1", new Route(new ArrayList<>(List.of(a, b, a))))));
+        databaseDriver.commit();
+    }
+
+    /**
+     * The plan's detail lines, e.g. "SEARCH Stops USING INTEGER PRIMARY KEY (rowid=?)"
+     */
+    private List<String> queryPlan(String sql, Object parameter) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFilename);
+             PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            statement.setObject(1, parameter);
+            try (ResultSet resultset = statement.executeQuery()) {
+                while (resultset.next()) {
+                    plan.add(resultset.getString("detail"));
+                }
+            }
+        }
+        return plan;
+    }
+
+    private void assertNoScans(List<String> plan) {
+        assertFalse(plan.isEmpty());
+        for (String step : plan) {
+            assertFalse(step.startsWith("SCAN"), () -> "full scan in " + plan);
+        }
+    }
+
+    @Test
+    void createTables_newDatabase() throws SQLException {
+        createLoadedDatabase();
+        assertEquals(SchemaMigrations.LATEST_VERSION, databaseDriver.getSchemaVersion());
+        assertEquals(3, databaseDriver.getRouteForBusLine(new BusLine(1, true, "Line One", "L1")).size());
+    }
+
+    @Test
+    void createTables_twice() throws SQLException {
+        createLoadedDatabase();
+        databaseDriver.createTables();
+        databaseDriver.commit();
+        assertEquals(SchemaMigrations.LATEST_VERSION, databaseDriver.getSchemaVersion());
+        assertEquals(2, databaseDriver.getAllStops().size());
+    }
+
+    @Test
+    void createTables_upgradesUnversionedDatabase() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFilename);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE Stops (ID INTEGER PRIMARY KEY, StopName TEXT NOT NULL, " +
+                    "Latitude REAL NOT NULL, Longitude REAL NOT NULL)");
+            statement.execute("CREATE TABLE BusLines (ID INTEGER PRIMARY KEY, IsActive BOOLEAN NOT NULL, " +
+                    "LongName TEXT NOT NULL, ShortName TEXT NOT NULL)");
+            statement.execute("CREATE TABLE Routes (ID INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "BusLineID INTEGER NOT NULL, StopID INTEGER NOT NULL, RouteOrder INTEGER NOT NULL, " +
+                    "FOREIGN KEY (BusLineID) REFERENCES BusLines(ID) ON DELETE CASCADE, " +
+                    "FOREIGN KEY (StopID) REFERENCES Stops(ID) ON DELETE CASCADE)");
+            statement.execute("INSERT INTO Stops VALUES (1, 'a', 38.0, -78.0), (2, 'b', 38.1, -78.1)");
+            statement.execute("INSERT INTO BusLines VALUES (1, 1, 'Line One', 'L1')");
+            statement.execute("INSERT INTO Routes (BusLineID, StopID, RouteOrder) VALUES (1, 2, 0), (1, 1, 1)");
+        }
+
+        databaseDriver.connect();
+        assertEquals(0, databaseDriver.getSchemaVersion());
+        databaseDriver.createTables();
+        databaseDriver.commit();
+
+        assertEquals(SchemaMigrations.LATEST_VERSION, databaseDriver.getSchemaVersion());
+        Route route = databaseDriver.getRouteForBusLine(new BusLine(1, true, "Line One", "L1"));
+        assertEquals(List.of(2, 1), route.getStops().stream().map(Stop::getId).toList());
+        assertEquals(1, databaseDriver.getBusLineByShortName("l1").orElseThrow().getId());
+    }
+
+    @Test
+    void getBusLineByShortName_wildcardsAreLiteral() throws SQLException {
+        createLoadedDatabase();
+        assertTrue(databaseDriver.getBusLineByShortName("L_").isEmpty());
+        assertTrue(databaseDriver.getBusLineByLongName("Line%").isEmpty());
+        assertTrue(databaseDriver.getBusLineByLongName("LINE ONE").isPresent());
+    }
+
+    @Test
+    void queryPlans_useIndexes() throws SQLException {
+        createLoadedDatabase();
+        assertNoScans(queryPlan(DatabaseDriver.STOP_BY_ID_SQL, 1));
+        assertNoScans(queryPlan(DatabaseDriver.BUS_LINE_BY_ID_SQL, 1));
+        assertNoScans(queryPlan(DatabaseDriver.BUS_LINE_BY_SHORT_NAME_SQL, "L1"));
+        assertNoScans(queryPlan(DatabaseDriver.BUS_LINE_BY_LONG_NAME_SQL, "Line One"));
+        assertNoScans(queryPlan(DatabaseDriver.BUS_LINES_BY_STOP_SQL, 1));
+        assertNoScans(queryPlan(DatabaseDriver.ROUTE_FOR_BUS_LINE_SQL, 1));
+    }
+
+    @Test
+    void queryPlans_routeAccessPaths() throws SQLException {
+        createLoadedDatabase();
+        assertTrue(queryPlan(DatabaseDriver.BUS_LINES_BY_STOP_SQL, 1).stream()
+                .anyMatch(step -> step.contains("COVERING INDEX RoutesByStop")));
+        List<String> routePlan = queryPlan(DatabaseDriver.ROUTE_FOR_BUS_LINE_SQL, 1);
+        assertTrue(routePlan.stream().anyMatch(step -> step.contains("USING PRIMARY KEY (BusLineID=?)")));
+        assertTrue(routePlan.stream().noneMatch(step -> step.contains("TEMP B-TREE")), () -> "sort in " + routePlan);
+    }
+}
@@ -0,0 +1,71 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementCacheTest {
+    private Connection connection;
+    private StatementCache cache;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        cache = new StatementCache(connection, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        cache.close();
+        connection.close();
+    }
+
+    @Test
+    void prepare_reusesStatement() throws SQLException {
+        PreparedStatement first = cache.prepare("SELECT ?");
+        first.setInt(1, 7);
+        PreparedStatement second = cache.prepare("SELECT ?");
+        assertSame(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void prepare_clearsParameters() throws SQLException {
+        cache.prepare("SELECT ?").setInt(1, 7);
+        PreparedStatement statement = cache.prepare("SELECT ?");
+        statement.setInt(1, 8);
+        try (ResultSet resultset = statement.executeQuery()) {
+            assertTrue(resultset.next());
+            assertEquals(8, resultset.getInt(1));
+        }
+    }
+
+    @Test
+    void prepare_evictsLeastRecentlyUsed() throws SQLException {
+        PreparedStatement one = cache.prepare("SELECT 1");
+        PreparedStatement two = cache.prepare("SELECT 2");
+        cache.prepare("SELECT 1");
+        cache.prepare("SELECT 3");
+        assertEquals(2, cache.size());
+        assertTrue(two.isClosed());
+        assertFalse(one.isClosed());
+        assertNotSame(two, cache.prepare("SELECT 2"));
+    }
+
+    @Test
+    void close() throws SQLException {
+        PreparedStatement statement = cache.prepare("SELECT 1");
+        cache.close();
+        assertTrue(statement.isClosed());
+        assertEquals(0, cache.size());
+    }
+}
@@ -1,9 +1,13 @@
 package edu.virginia.sde.hw5;
 
+/**
+ * A bus stop. Stops are immutable, so one canonical Stop per id can be shared by every Route that visits it (see
+ * StopIdentityMap); equality is by id.
+ */
 public class Stop {
-    private int id;
-    private String name;
-    private double latitude, longitude;
+    private final int id;
+    private final String name;
+    private final double latitude, longitude;
 
     public Stop(int id, String name, double latitude, double longitude) {
         this.id = id;
@@ -12,41 +16,22 @@ public class Stop {
         this.longitude = longitude;
     }
 
-    public Stop() {
-    }
-
     public int getId() {
         return id;
     }
 
-    public void setId(int id) {
-        this.id = id;
-    }
-
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
     public double getLatitude() {
         return latitude;
     }
 
-    public void setLatitude(double latitude) {
-        this.latitude = latitude;
-    }
-
     public double getLongitude() {
         return longitude;
     }
 
-    public void setLongitude(double longitude) {
-        this.longitude = longitude;
-    }
-
     public double distanceTo(double latitude, double longitude) {
         double latDiff = latitude - this.latitude;
         double longDiff = longitude - this.longitude;
@@ -56,6 +41,13 @@ public class Stop {
         return distanceTo(other.latitude, other.longitude);
     }
 
+    /**
+     * Returns the distance to another stop under the given metric: degrees for EUCLIDEAN, metres otherwise
+     */
+    public double distanceTo(Stop other, DistanceMetric metric) {
+        return metric.distance(latitude, longitude, other.latitude, other.longitude);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,101 @@
+package edu.virginia.sde.hw5;
+
+import java.util.List;
+
+/**
+ * One canonical Stop per id for a single consistent view of the data, so a stop served by many lines is one object
+ * rather than one per Route row that visits it. Readers look a row's id up before building a Stop, and only read
+ * its name and coordinates the first time the id is seen. Ids are kept in an open-addressed int table, so lookups
+ * do not box them. A map is not thread-safe, and must be cleared whenever the data it mirrors may have changed.
+ */
+public final class StopIdentityMap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] stopIds;
+    private Stop[] stops;
+    private int size;
+
+    public StopIdentityMap() {
+        clear();
+    }
+
+    /**
+     * Returns the canonical Stop with the given id, or null if the map has not seen it
+     */
+    public Stop get(int stopId) {
+        int mask = stops.length - 1;
+        for (int slot = slot(stopId, mask); stops[slot] != null; slot = (slot + 1) & mask) {
+            if (stopIds[slot] == stopId) {
+                return stops[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the canonical Stop with stop's id, making stop the canonical one if the map has not seen its id
+     */
+    public Stop intern(Stop stop) {
+        Stop canonical = get(stop.getId());
+        if (canonical != null) {
+            return canonical;
+        }
+        if (2 * (size + 1) > stops.length) {
+            resize(stops.length * 2);
+        }
+        put(stop);
+        size++;
+        return stop;
+    }
+
+    /**
+     * Intern every stop in order, so the first Stop with each id becomes the canonical one
+     */
+    public void internAll(List<Stop> stops) {
+        for (Stop stop : stops) {
+            intern(stop);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forget every Stop and release the table
+     */
+    public void clear() {
+        stopIds = new int[INITIAL_CAPACITY];
+        stops = new Stop[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    private void put(Stop stop) {
+        int mask = stops.length - 1;
+        int slot = slot(stop.getId(), mask);
+        while (stops[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        stopIds[slot] = stop.getId();
+        stops[slot] = stop;
+    }
+
+    private void resize(int capacity) {
+        Stop[] oldStops = stops;
+        stopIds = new int[capacity];
+        stops = new Stop[capacity];
+        for (Stop stop : oldStops) {
+            if (stop != null) {
+                put(stop);
+            }
+        }
+    }
+
+    /**
+     * Spread sequential ids across the table before masking
+     */
+    private static int slot(int stopId, int mask) {
+        int hash = stopId * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,46 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StopIdentityMapTest {
+    @Test
+    void intern_firstStopIsCanonical() {
+        StopIdentityMap stops = new StopIdentityMap();
+        Stop first = new Stop(7, "Rice Hall", 38.0, -78.0);
+        Stop copy = new Stop(7, "Rice Hall", 38.0, -78.0);
+        assertSame(first, stops.intern(first));
+        assertSame(first, stops.intern(copy));
+        assertSame(first, stops.get(7));
+        assertNull(stops.get(8));
+        assertEquals(1, stops.size());
+    }
+
+    @Test
+    void internAll_growsPastInitialCapacity() {
+        StopIdentityMap stops = new StopIdentityMap();
+        List<Stop> created = new ArrayList<>();
+        for (int id = -500; id < 500; id++) {
+            created.add(new Stop(id * 64, "stop " + id, 0.0, 0.0));
+        }
+        stops.internAll(created);
+        assertEquals(1000, stops.size());
+        for (Stop stop : created) {
+            assertSame(stop, stops.get(stop.getId()));
+        }
+        assertNull(stops.get(1));
+    }
+
+    @Test
+    void clear() {
+        StopIdentityMap stops = new StopIdentityMap();
+        stops.intern(new Stop(1, "a", 0.0, 0.0));
+        stops.clear();
+        assertEquals(0, stops.size());
+        assertNull(stops.get(1));
+    }
+}
@@ -0,0 +1,133 @@
+package edu.virginia.sde.hw5;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An inverted index from stop id to the bus lines that visit it and the positions on each Route where they do.
+ * Each stop's posting list is sorted by line, so the lines shared by two stops are found by merging two lists
+ * rather than scanning every Route. Segment lengths come from Route.distanceBetween, so each is a single
+ * subtraction.
+ */
+public class StopLineIndex {
+    private final List<BusLine> busLines;
+    private final Map<Integer, Postings> postingsByStopId;
+
+    public StopLineIndex(List<BusLine> busLines) {
+        this.busLines = List.copyOf(busLines);
+        Map<Integer, Postings> postings = new HashMap<>();
+        for (int line = 0; line < this.busLines.size(); line++) {
+            Route route = this.busLines.get(line).getRoute();
+            for (int position = 0; position < route.size(); position++) {
+                postings.computeIfAbsent(route.get(position).getId(), id -> new Postings()).add(line, position);
+            }
+        }
+        postings.values().forEach(Postings::trim);
+        this.postingsByStopId = postings;
+    }
+
+    /**
+     * Find the BusLine with the shortest ride from source to destination, measured along the Route in travel
+     * order: destination has to come after source on the Route. If a line visits either stop more than once, its
+     * shortest such segment is used. Ties go to the line that comes first.
+     *
+     * @return Optional.empty() if no line visits source and then destination
+     */
+    public Optional<BusLine> getShortestRide(int sourceStopId, int destinationStopId) {
+        return getShortestRide(sourceStopId, destinationStopId, DistanceMetric.EUCLIDEAN);
+    }
+
+    /**
+     * The same as getShortestRide(int, int), with ride lengths measured under metric
+     */
+    public Optional<BusLine> getShortestRide(int sourceStopId, int destinationStopId, DistanceMetric metric) {
+        Postings from = postingsByStopId.get(sourceStopId);
+        Postings to = postingsByStopId.get(destinationStopId);
+        if (from == null || to == null) {
+            return Optional.empty();
+        }
+        boolean sameStop = sourceStopId == destinationStopId;
+        int bestLine = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        int i = 0;
+        int j = 0;
+        while (i < from.size && j < to.size) {
+            int line = from.lines[i];
+            if (line < to.lines[j]) {
+                i++;
+            } else if (line > to.lines[j]) {
+                j++;
+            } else {
+                int fromEnd = from.endOfLine(i);
+                int toEnd = to.endOfLine(j);
+                double distance = shortestSegment(line, from, i, fromEnd, to, j, toEnd, sameStop, metric);
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    bestLine = line;
+                }
+                i = fromEnd;
+                j = toEnd;
+            }
+        }
+        return bestLine < 0 ? Optional.empty() : Optional.of(busLines.get(bestLine));
+    }
+
+    /**
+     * For each destination position, the best source is the closest one before it, so both position lists are
+     * walked once together.
+     */
+    private double shortestSegment(int line, Postings from, int fromStart, int fromEnd,
+                                   Postings to, int toStart, int toEnd, boolean sameStop,
+                                   DistanceMetric metric) {
+        Route route = busLines.get(line).getRoute();
+        double best = Double.POSITIVE_INFINITY;
+        int source = fromStart;
+        int lastSourcePosition = -1;
+        for (int k = toStart; k < toEnd; k++) {
+            int destinationPosition = to.positions[k];
+            while (source < fromEnd && (from.positions[source] < destinationPosition
+                    || (sameStop && from.positions[source] == destinationPosition))) {
+                lastSourcePosition = from.positions[source++];
+            }
+            if (lastSourcePosition >= 0) {
+                best = Math.min(best, route.distanceBetween(lastSourcePosition, destinationPosition, metric));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * (line, position) pairs for one stop in two parallel arrays, sorted by line and then position
+     */
+    private static class Postings {
+        private int[] lines = new int[4];
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int line, int position) {
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            lines[size] = line;
+            positions[size] = position;
+            size++;
+        }
+
+        void trim() {
+            lines = Arrays.copyOf(lines, size);
+            positions = Arrays.copyOf(positions, size);
+        }
+
+        int endOfLine(int start) {
+            int end = start;
+            while (end < size && lines[end] == lines[start]) {
+                end++;
+            }
+            return end;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StopLineIndexTest {
+    private Stop stopA, stopB, stopC, stopD;
+
+    @BeforeEach
+    void setup() {
+        stopA = new Stop(1, "a", 0.0, 0.0);
+        stopB = new Stop(2, "b", 0.0, 1.0);
+        stopC = new Stop(3, "c", 0.0, 2.0);
+        stopD = new Stop(4, "d", 0.0, 10.0);
+    }
+
+    private BusLine line(int id, Stop... stops) {
+        return new BusLine(id, true, "line " + id, "L" + id, new Route(new ArrayList<>(List.of(stops))));
+    }
+
+    @Test
+    void getShortestRide_segmentNotWholeRoute() {
+        BusLine longRouteShortRide = line(1, stopA, stopB, stopD);
+        BusLine shortRouteLongRide = line(2, stopA, stopC, stopB);
+        var index = new StopLineIndex(List.of(longRouteShortRide, shortRouteLongRide));
+        assertEquals(Optional.of(longRouteShortRide), index.getShortestRide(1, 2));
+    }
+
+    @Test
+    void getShortestRide_wrongDirection() {
+        var index = new StopLineIndex(List.of(line(1, stopA, stopB, stopC)));
+        assertTrue(index.getShortestRide(3, 1).isEmpty());
+    }
+
+    @Test
+    void getShortestRide_loopUsesClosestBoarding() {
+        BusLine loop = line(1, stopA, stopD, stopA, stopB);
+        BusLine direct = line(2, stopA, stopC, stopB);
+        var index = new StopLineIndex(List.of(direct, loop));
+        assertEquals(Optional.of(loop), index.getShortestRide(1, 2));
+    }
+
+    @Test
+    void getShortestRide_tieGoesToFirstLine() {
+        BusLine first = line(1, stopA, stopB);
+        BusLine second = line(2, stopC, stopA, stopB);
+        var index = new StopLineIndex(List.of(first, second));
+        assertEquals(Optional.of(first), index.getShortestRide(1, 2));
+    }
+
+    @Test
+    void getShortestRide_sameStop() {
+        BusLine busLine = line(1, stopA, stopB);
+        var index = new StopLineIndex(List.of(busLine));
+        assertEquals(Optional.of(busLine), index.getShortestRide(2, 2));
+    }
+
+    @Test
+    void getShortestRide_noSharedLine() {
+        var index = new StopLineIndex(List.of(line(1, stopA, stopB), line(2, stopC, stopD)));
+        assertTrue(index.getShortestRide(1, 4).isEmpty());
+    }
+
+    @Test
+    void getShortestRide_unknownStop() {
+        var index = new StopLineIndex(List.of(line(1, stopA, stopB)));
+        assertTrue(index.getShortestRide(1, 99).isEmpty());
+    }
+}
@@ -4,15 +4,34 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.net.URL;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class StopReader {
 
     private final URL busStopsApiUrl;
 
+    private final HttpResponseCache responseCache;
+
+    /* When set, stops come from this shared fetcher instead of a request made by this reader */
+    private final TransitFeedFetcher feedFetcher;
+
     public StopReader(Configuration configuration) {
         this.busStopsApiUrl = configuration.getBusStopsURL();
+        this.responseCache = configuration.getResponseCache();
+        this.feedFetcher = null;
+    }
+
+    /**
+     * Creates a reader that returns the fetcher's shared stops rather than requesting them again
+     */
+    public StopReader(TransitFeedFetcher feedFetcher) {
+        this.busStopsApiUrl = null;
+        this.responseCache = null;
+        this.feedFetcher = feedFetcher;
     }
 
     /**
@@ -20,16 +39,49 @@ public class StopReader {
      * @return List of stops
      */
     public List<Stop> getStops() {
-        WebServiceReader webServiceReader = new WebServiceReader(busStopsApiUrl);
-        JSONObject jsonRoot = webServiceReader.getJSONObject();
-        List<Stop> stopList = new LinkedList<>();
-        JSONArray stopArray = jsonRoot.getJSONArray("stops");
-        for(Object busStop: stopArray){
-            if(busStop instanceof JSONObject stops){
-                var coordinates = stops.getJSONArray("position");
-                stopList.add(new Stop(stops.getInt("id"), stops.getString("name"), coordinates.getDouble(0), coordinates.getDouble(1)));
-            }
-        }
+        List<Stop> stopList = new ArrayList<>();
+        forEachStop(stopList::add);
         return stopList;
     }
+
+    /**
+     * Stream the stops from the "stops" json URL, handing each Stop to consumer as soon as it is parsed
+     */
+    public void forEachStop(Consumer<Stop> consumer) {
+        if (feedFetcher != null) {
+            feedFetcher.getStops().forEach(consumer);
+            return;
+        }
+        WebServiceReader webServiceReader = new WebServiceReader(busStopsApiUrl, responseCache);
+        webServiceReader.streamArrays(Map.of("stops", stops -> consumer.accept(toStop(stops))));
+    }
+
+    /**
+     * Stream both the stops and the routes from the "stops" json URL in a single request. Each route is handed to
+     * routeConsumer as its BusLine id and its stop ids in order.
+     */
+    public void forEachStopAndRoute(Consumer<Stop> stopConsumer, BiConsumer<Integer, int[]> routeConsumer) {
+        if (feedFetcher != null) {
+            feedFetcher.getStops().forEach(stopConsumer);
+            feedFetcher.getRouteStopIds().forEach(routeConsumer);
+            return;
+        }
+        WebServiceReader webServiceReader = new WebServiceReader(busStopsApiUrl, responseCache);
+        webServiceReader.streamArrays(Map.of(
+                "stops", stops -> stopConsumer.accept(toStop(stops)),
+                "routes", routes -> routeConsumer.accept(routes.getInt("id"), toStopIds(routes.getJSONArray("stops")))));
+    }
+
+    private static Stop toStop(JSONObject stops) {
+        var coordinates = stops.getJSONArray("position");
+        return new Stop(stops.getInt("id"), stops.getString("name"), coordinates.getDouble(0), coordinates.getDouble(1));
+    }
+
+    private static int[] toStopIds(JSONArray stopArray) {
+        int[] stopIds = new int[stopArray.length()];
+        for (int i = 0; i < stopIds.length; i++) {
+            stopIds[i] = stopArray.getInt(i);
+        }
+        return stopIds;
+    }
 }
@@ -0,0 +1,251 @@
+package edu.virginia.sde.hw5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A static 2-d tree over Stop latitude/longitude. The index is built once from a snapshot of stops and answers
+ * nearest, k-nearest and radius queries without touching the database. Distances are Euclidean on degrees, the
+ * same as Stop.distanceTo.
+ */
+public class StopSpatialIndex {
+    private final Stop[] stops;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    public StopSpatialIndex(Collection<Stop> stops) {
+        this.stops = stops.toArray(new Stop[0]);
+        latitudes = new double[this.stops.length];
+        longitudes = new double[this.stops.length];
+        for (int i = 0; i < this.stops.length; i++) {
+            latitudes[i] = this.stops[i].getLatitude();
+            longitudes[i] = this.stops[i].getLongitude();
+        }
+        build(0, this.stops.length, 0);
+    }
+
+    public int size() {
+        return stops.length;
+    }
+
+    public boolean isEmpty() {
+        return stops.length == 0;
+    }
+
+    /**
+     * Return the closest stop to a given coordinate, or Optional.empty() if the index has no stops
+     */
+    public Optional<Stop> nearest(double latitude, double longitude) {
+        if (isEmpty()) {
+            return Optional.empty();
+        }
+        var best = new Neighbors(1);
+        search(0, stops.length, 0, latitude, longitude, best);
+        return Optional.of(stops[best.indices[0]]);
+    }
+
+    /**
+     * Return up to k stops closest to a given coordinate, nearest first
+     * @throws IllegalArgumentException if k is negative
+     */
+    public List<Stop> kNearest(double latitude, double longitude, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        var best = new Neighbors(Math.min(k, stops.length));
+        if (best.capacity > 0) {
+            search(0, stops.length, 0, latitude, longitude, best);
+        }
+        return best.toSortedList();
+    }
+
+    /**
+     * Return every stop within radius (inclusive) of a given coordinate, nearest first
+     * @throws IllegalArgumentException if radius is negative or NaN
+     */
+    public List<Stop> withinRadius(double latitude, double longitude, double radius) {
+        if (!(radius >= 0)) {
+            throw new IllegalArgumentException("radius must not be negative: " + radius);
+        }
+        var found = new Neighbors(stops.length);
+        collectWithin(0, stops.length, 0, latitude, longitude, radius * radius, found);
+        return found.toSortedList();
+    }
+
+    /*
+     * The tree is stored implicitly: the median of [lo, hi) on the current axis sits at the middle index, the
+     * left subtree is [lo, mid) and the right subtree is (mid, hi). Even depths split on latitude, odd on longitude.
+     */
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis(depth));
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    private void search(int lo, int hi, int depth, double latitude, double longitude, Neighbors best) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        best.offer(mid, squaredDistance(mid, latitude, longitude));
+        double delta = (axis(depth) == 0 ? latitude - latitudes[mid] : longitude - longitudes[mid]);
+        if (delta < 0) {
+            search(lo, mid, depth + 1, latitude, longitude, best);
+            if (delta * delta < best.worst()) {
+                search(mid + 1, hi, depth + 1, latitude, longitude, best);
+            }
+        } else {
+            search(mid + 1, hi, depth + 1, latitude, longitude, best);
+            if (delta * delta < best.worst()) {
+                search(lo, mid, depth + 1, latitude, longitude, best);
+            }
+        }
+    }
+
+    private void collectWithin(int lo, int hi, int depth, double latitude, double longitude,
+                               double squaredRadius, Neighbors found) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double distance = squaredDistance(mid, latitude, longitude);
+        if (distance <= squaredRadius) {
+            found.offer(mid, distance);
+        }
+        double delta = (axis(depth) == 0 ? latitude - latitudes[mid] : longitude - longitudes[mid]);
+        if (delta <= 0 || delta * delta <= squaredRadius) {
+            collectWithin(lo, mid, depth + 1, latitude, longitude, squaredRadius, found);
+        }
+        if (delta >= 0 || delta * delta <= squaredRadius) {
+            collectWithin(mid + 1, hi, depth + 1, latitude, longitude, squaredRadius, found);
+        }
+    }
+
+    private double squaredDistance(int index, double latitude, double longitude) {
+        double latDiff = latitude - latitudes[index];
+        double longDiff = longitude - longitudes[index];
+        return (latDiff * latDiff) + (longDiff * longDiff);
+    }
+
+    private static int axis(int depth) {
+        return depth & 1;
+    }
+
+    private double coordinate(int index, int axis) {
+        return axis == 0 ? latitudes[index] : longitudes[index];
+    }
+
+    /**
+     * Quickselect over [left, right] so that the element at k is in its sorted position on the given axis
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (right > left) {
+            double pivot = coordinate((left + right) >>> 1, axis);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (coordinate(i, axis) < pivot) i++;
+                while (coordinate(j, axis) > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        Stop stop = stops[i];
+        stops[i] = stops[j];
+        stops[j] = stop;
+        double latitude = latitudes[i];
+        latitudes[i] = latitudes[j];
+        latitudes[j] = latitude;
+        double longitude = longitudes[i];
+        longitudes[i] = longitudes[j];
+        longitudes[j] = longitude;
+    }
+
+    /**
+     * A bounded max-heap of (index, squared distance) pairs, so the current worst candidate is at the root
+     */
+    private class Neighbors {
+        private final int capacity;
+        private int[] indices;
+        private double[] distances;
+        private int size;
+
+        Neighbors(int capacity) {
+            this.capacity = capacity;
+            indices = new int[Math.min(capacity, 16)];
+            distances = new double[indices.length];
+        }
+
+        double worst() {
+            return size < capacity ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(int index, double distance) {
+            if (size < capacity) {
+                if (size == indices.length) {
+                    int grown = Math.min(capacity, indices.length * 2);
+                    indices = Arrays.copyOf(indices, grown);
+                    distances = Arrays.copyOf(distances, grown);
+                }
+                int child = size++;
+                while (child > 0) {
+                    int parent = (child - 1) >>> 1;
+                    if (distances[parent] >= distance) break;
+                    indices[child] = indices[parent];
+                    distances[child] = distances[parent];
+                    child = parent;
+                }
+                indices[child] = index;
+                distances[child] = distance;
+            } else if (capacity > 0 && distance < distances[0]) {
+                siftDown(index, distance);
+            }
+        }
+
+        private void siftDown(int index, double distance) {
+            int parent = 0;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= size) break;
+                if (child + 1 < size && distances[child + 1] > distances[child]) child++;
+                if (distances[child] <= distance) break;
+                indices[parent] = indices[child];
+                distances[parent] = distances[child];
+                parent = child;
+            }
+            indices[parent] = index;
+            distances[parent] = distance;
+        }
+
+        List<Stop> toSortedList() {
+            Stop[] sorted = new Stop[size];
+            while (size > 0) {
+                int root = indices[0];
+                size--;
+                if (size > 0) {
+                    siftDown(indices[size], distances[size]);
+                }
+                sorted[size] = stops[root];
+            }
+            return new ArrayList<>(Arrays.asList(sorted));
+        }
+    }
+}
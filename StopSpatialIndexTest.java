@@ -0,0 +1,83 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StopSpatialIndexTest {
+    private List<Stop> stops;
+    private StopSpatialIndex index;
+
+    @BeforeEach
+    void setup() {
+        Random random = new Random(42);
+        stops = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            stops.add(new Stop(i, "stop " + i, 38.0 + random.nextDouble(), -78.5 + random.nextDouble()));
+        }
+        index = new StopSpatialIndex(stops);
+    }
+
+    private List<Stop> bruteForceNearest(double latitude, double longitude) {
+        var sorted = new ArrayList<>(stops);
+        sorted.sort(Comparator.comparingDouble(stop -> stop.distanceTo(latitude, longitude)));
+        return sorted;
+    }
+
+    @Test
+    void nearest_empty() {
+        assertTrue(new StopSpatialIndex(List.of()).nearest(38.0, -78.0).isEmpty());
+    }
+
+    @Test
+    void nearest() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++) {
+            double latitude = 38.0 + random.nextDouble();
+            double longitude = -78.5 + random.nextDouble();
+            assertEquals(bruteForceNearest(latitude, longitude).get(0),
+                    index.nearest(latitude, longitude).orElseThrow());
+        }
+    }
+
+    @Test
+    void nearest_exactMatch() {
+        Stop stop = stops.get(500);
+        assertEquals(stop, index.nearest(stop.getLatitude(), stop.getLongitude()).orElseThrow());
+    }
+
+    @Test
+    void kNearest() {
+        assertEquals(bruteForceNearest(38.5, -78.0).subList(0, 10), index.kNearest(38.5, -78.0, 10));
+    }
+
+    @Test
+    void kNearest_moreThanSize() {
+        assertEquals(stops.size(), index.kNearest(38.5, -78.0, 5000).size());
+    }
+
+    @Test
+    void kNearest_negative() {
+        assertThrows(IllegalArgumentException.class, () -> index.kNearest(38.5, -78.0, -1));
+    }
+
+    @Test
+    void withinRadius() {
+        var expected = bruteForceNearest(38.5, -78.0).stream()
+                .filter(stop -> stop.distanceTo(38.5, -78.0) <= 0.1)
+                .toList();
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, index.withinRadius(38.5, -78.0, 0.1));
+    }
+
+    @Test
+    void withinRadius_none() {
+        assertTrue(index.withinRadius(0.0, 0.0, 1.0).isEmpty());
+    }
+}
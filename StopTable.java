@@ -0,0 +1,362 @@
+package edu.virginia.sde.hw5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A columnar, read-only copy of a set of stops: ids, latitudes and longitudes in parallel primitive arrays, and
+ * every name in one shared char buffer addressed by offsets. Rows are numbered 0 to size() - 1 in the order the
+ * stops were given. Full-table scans read only the two coordinate arrays, and use SIMD through
+ * jdk.incubator.vector when the JVM was started with --add-modules jdk.incubator.vector, falling back to a plain
+ * loop otherwise. Both paths return exactly the same results. Distances are Euclidean on degrees, the same as
+ * Stop.distanceTo, unless a query is given a DistanceMetric; each row's cos(latitude) is precomputed for those.
+ * Metric queries run the metric's batch kernel over blocks of rows, so they allocate only their result.
+ */
+public final class StopTable {
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /* Rows per call to DistanceMetric.keys(), small enough that the keys stay in L1 */
+    private static final int KEY_BLOCK = 256;
+
+    private final int[] ids;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] cosLatitudes;
+    private final char[] names;
+    /* Row i's name is names[nameOffsets[i], nameOffsets[i + 1]) */
+    private final int[] nameOffsets;
+
+    public StopTable(Collection<Stop> stops) {
+        int size = stops.size();
+        ids = new int[size];
+        latitudes = new double[size];
+        longitudes = new double[size];
+        cosLatitudes = new double[size];
+        nameOffsets = new int[size + 1];
+        int nameLength = 0;
+        for (Stop stop : stops) {
+            nameLength += stop.getName() == null ? 0 : stop.getName().length();
+        }
+        names = new char[nameLength];
+        int row = 0;
+        for (Stop stop : stops) {
+            ids[row] = stop.getId();
+            latitudes[row] = stop.getLatitude();
+            longitudes[row] = stop.getLongitude();
+            cosLatitudes[row] = DistanceMetric.cosLatitude(stop.getLatitude());
+            String name = stop.getName() == null ? "" : stop.getName();
+            name.getChars(0, name.length(), names, nameOffsets[row]);
+            nameOffsets[row + 1] = nameOffsets[row] + name.length();
+            row++;
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public boolean isEmpty() {
+        return ids.length == 0;
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public double getLatitude(int row) {
+        return latitudes[row];
+    }
+
+    public double getLongitude(int row) {
+        return longitudes[row];
+    }
+
+    public double getCosLatitude(int row) {
+        return cosLatitudes[row];
+    }
+
+    public String getName(int row) {
+        return new String(names, nameOffsets[row], nameOffsets[row + 1] - nameOffsets[row]);
+    }
+
+    /**
+     * Materialize a row as a new Stop
+     */
+    public Stop getStop(int row) {
+        return new Stop(ids[row], getName(row), latitudes[row], longitudes[row]);
+    }
+
+    /**
+     * Return the row of the closest stop to a given coordinate, or -1 if the table is empty. When several stops are
+     * equally close, the lowest row wins.
+     */
+    public int nearestRow(double latitude, double longitude) {
+        if (VECTORIZED) {
+            return StopTableVectorScan.nearestRow(latitudes, longitudes, latitude, longitude);
+        }
+        return nearestRowScalar(latitude, longitude);
+    }
+
+    /**
+     * Return the closest stop to a given coordinate, or Optional.empty() if the table is empty
+     */
+    public Optional<Stop> nearest(double latitude, double longitude) {
+        int row = nearestRow(latitude, longitude);
+        return row < 0 ? Optional.empty() : Optional.of(getStop(row));
+    }
+
+    /**
+     * Return the rows of every stop inside a latitude/longitude box (bounds inclusive), in ascending order
+     * @throws IllegalArgumentException if a minimum is greater than its maximum, or any bound is NaN
+     */
+    public int[] rowsWithinBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        if (!(minLatitude <= maxLatitude) || !(minLongitude <= maxLongitude)) {
+            throw new IllegalArgumentException("Invalid box: [" + minLatitude + ", " + minLongitude + "] to ["
+                    + maxLatitude + ", " + maxLongitude + "]");
+        }
+        if (VECTORIZED) {
+            return StopTableVectorScan.rowsWithinBox(latitudes, longitudes,
+                    minLatitude, minLongitude, maxLatitude, maxLongitude);
+        }
+        return rowsWithinBoxScalar(minLatitude, minLongitude, maxLatitude, maxLongitude);
+    }
+
+    /**
+     * Return every stop inside a latitude/longitude box (bounds inclusive), in table order
+     * @throws IllegalArgumentException if a minimum is greater than its maximum, or any bound is NaN
+     */
+    public List<Stop> withinBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        int[] rows = rowsWithinBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        List<Stop> stops = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            stops.add(getStop(row));
+        }
+        return stops;
+    }
+
+    /**
+     * Return the row of the closest stop to a given coordinate under metric, or -1 if the table is empty. When
+     * several stops are equally close, the lowest row wins.
+     */
+    public int nearestRow(double latitude, double longitude, DistanceMetric metric) {
+        if (metric == DistanceMetric.EUCLIDEAN) {
+            return nearestRow(latitude, longitude);
+        }
+        double cosLatitude = DistanceMetric.cosLatitude(latitude);
+        int[] rows = new int[Math.min(KEY_BLOCK, size())];
+        double[] keys = new double[rows.length];
+        int bestRow = -1;
+        double bestKey = Double.POSITIVE_INFINITY;
+        for (int from = 0; from < size(); from += KEY_BLOCK) {
+            int to = Math.min(size(), from + KEY_BLOCK);
+            int count = metric.keysWithin(latitude, longitude, cosLatitude, latitudes, longitudes, cosLatitudes,
+                    from, to, bestKey, rows, keys);
+            for (int i = 0; i < count; i++) {
+                if (keys[i] < bestKey) {
+                    bestKey = keys[i];
+                    bestRow = rows[i];
+                }
+            }
+        }
+        return bestRow;
+    }
+
+    /**
+     * Return the rows of up to k stops closest to a given coordinate under metric, nearest first, with ties in row
+     * order
+     * @throws IllegalArgumentException if k is negative
+     */
+    public int[] kNearestRows(double latitude, double longitude, int k, DistanceMetric metric) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k must not be negative: " + k);
+        }
+        RowHeap nearest = new RowHeap(Math.min(k, size()));
+        if (nearest.capacity > 0) {
+            scan(latitude, longitude, metric, Double.POSITIVE_INFINITY, nearest);
+        }
+        return nearest.drainSorted();
+    }
+
+    /**
+     * Return the rows of every stop within distance (inclusive) of a given coordinate under metric, nearest first,
+     * with ties in row order. distance is in degrees for EUCLIDEAN and metres otherwise.
+     * @throws IllegalArgumentException if distance is negative or NaN
+     */
+    public int[] rowsWithinDistance(double latitude, double longitude, double distance, DistanceMetric metric) {
+        if (!(distance >= 0)) {
+            throw new IllegalArgumentException("distance must not be negative: " + distance);
+        }
+        RowHeap found = new RowHeap(size());
+        scan(latitude, longitude, metric, metric.distanceToKey(distance), found);
+        return found.drainSorted();
+    }
+
+    /**
+     * Write the distance from a given coordinate to every row under metric into distances, which must hold at least
+     * size() values
+     */
+    public void distances(double latitude, double longitude, DistanceMetric metric, double[] distances) {
+        Objects.checkFromIndexSize(0, size(), distances.length);
+        metric.distances(latitude, longitude, DistanceMetric.cosLatitude(latitude), latitudes, longitudes,
+                cosLatitudes, 0, size(), distances);
+    }
+
+    /**
+     * Offer every row whose key is at most maxKey to found. Once found is full, only rows that can still displace
+     * its worst entry are asked for.
+     */
+    private void scan(double latitude, double longitude, DistanceMetric metric, double maxKey, RowHeap found) {
+        double cosLatitude = DistanceMetric.cosLatitude(latitude);
+        int[] rows = new int[Math.min(KEY_BLOCK, size())];
+        double[] keys = new double[rows.length];
+        for (int from = 0; from < size(); from += KEY_BLOCK) {
+            int to = Math.min(size(), from + KEY_BLOCK);
+            int count = metric.keysWithin(latitude, longitude, cosLatitude, latitudes, longitudes, cosLatitudes,
+                    from, to, Math.min(maxKey, found.worst()), rows, keys);
+            for (int i = 0; i < count; i++) {
+                found.offer(rows[i], keys[i]);
+            }
+        }
+    }
+
+    int nearestRowScalar(double latitude, double longitude) {
+        return nearestRowScalar(latitudes, longitudes, 0, latitudes.length, latitude, longitude, -1,
+                Double.POSITIVE_INFINITY);
+    }
+
+    int[] rowsWithinBoxScalar(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        RowBuffer rows = new RowBuffer();
+        appendRowsWithinBox(latitudes, longitudes, 0, latitudes.length,
+                minLatitude, minLongitude, maxLatitude, maxLongitude, rows);
+        return rows.toArray();
+    }
+
+    /**
+     * Scan rows [from, to) for a stop strictly closer than bestDistance (squared), starting from bestRow
+     */
+    static int nearestRowScalar(double[] latitudes, double[] longitudes, int from, int to,
+                                double latitude, double longitude, int bestRow, double bestDistance) {
+        for (int row = from; row < to; row++) {
+            double latDiff = latitude - latitudes[row];
+            double longDiff = longitude - longitudes[row];
+            double distance = (latDiff * latDiff) + (longDiff * longDiff);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestRow = row;
+            }
+        }
+        return bestRow;
+    }
+
+    static void appendRowsWithinBox(double[] latitudes, double[] longitudes, int from, int to,
+                                    double minLatitude, double minLongitude, double maxLatitude,
+                                    double maxLongitude, RowBuffer rows) {
+        for (int row = from; row < to; row++) {
+            double latitude = latitudes[row];
+            double longitude = longitudes[row];
+            if (latitude >= minLatitude && latitude <= maxLatitude
+                    && longitude >= minLongitude && longitude <= maxLongitude) {
+                rows.add(row);
+            }
+        }
+    }
+
+    /**
+     * A bounded max-heap of (row, key) pairs ordered by key and then row, so the worst candidate is at the root and
+     * ties keep the lowest rows
+     */
+    private static final class RowHeap {
+        private final int capacity;
+        private int[] rows;
+        private double[] keys;
+        private int size;
+
+        RowHeap(int capacity) {
+            this.capacity = capacity;
+            rows = new int[Math.min(capacity, 16)];
+            keys = new double[rows.length];
+        }
+
+        double worst() {
+            return size < capacity ? Double.POSITIVE_INFINITY : keys[0];
+        }
+
+        void offer(int row, double key) {
+            if (size < capacity) {
+                if (size == rows.length) {
+                    int grown = Math.min(capacity, rows.length * 2);
+                    rows = Arrays.copyOf(rows, grown);
+                    keys = Arrays.copyOf(keys, grown);
+                }
+                int child = size++;
+                while (child > 0) {
+                    int parent = (child - 1) >>> 1;
+                    if (!after(row, key, rows[parent], keys[parent])) break;
+                    rows[child] = rows[parent];
+                    keys[child] = keys[parent];
+                    child = parent;
+                }
+                rows[child] = row;
+                keys[child] = key;
+            } else if (capacity > 0 && after(rows[0], keys[0], row, key)) {
+                siftDown(row, key);
+            }
+        }
+
+        private void siftDown(int row, double key) {
+            int parent = 0;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= size) break;
+                if (child + 1 < size && after(rows[child + 1], keys[child + 1], rows[child], keys[child])) child++;
+                if (!after(rows[child], keys[child], row, key)) break;
+                rows[parent] = rows[child];
+                keys[parent] = keys[child];
+                parent = child;
+            }
+            rows[parent] = row;
+            keys[parent] = key;
+        }
+
+        /* Whether (row, key) ranks after (otherRow, otherKey) */
+        private static boolean after(int row, double key, int otherRow, double otherKey) {
+            return key > otherKey || (key == otherKey && row > otherRow);
+        }
+
+        int[] drainSorted() {
+            int[] sorted = new int[size];
+            while (size > 0) {
+                int root = rows[0];
+                size--;
+                if (size > 0) {
+                    siftDown(rows[size], keys[size]);
+                }
+                sorted[size] = root;
+            }
+            return sorted;
+        }
+    }
+
+    /**
+     * A growable int array of matching rows
+     */
+    static final class RowBuffer {
+        private int[] rows = new int[16];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(rows, size);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StopTableTest {
+    private List<Stop> stops;
+    private StopTable table;
+
+    @BeforeEach
+    void setup() {
+        Random random = new Random(42);
+        stops = new ArrayList<>();
+        //an odd count leaves a scalar tail after the last whole vector
+        for (int i = 0; i < 1003; i++) {
+            stops.add(new Stop(i, "stop " + i, 38.0 + random.nextDouble(), -78.5 + random.nextDouble()));
+        }
+        table = new StopTable(stops);
+    }
+
+    private int bruteForceNearest(double latitude, double longitude) {
+        int best = 0;
+        for (int i = 1; i < stops.size(); i++) {
+            if (stops.get(i).distanceTo(latitude, longitude) < stops.get(best).distanceTo(latitude, longitude)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    void columns() {
+        Stop stop = stops.get(17);
+        assertEquals(stops.size(), table.size());
+        assertEquals(stop.getId(), table.getId(17));
+        assertEquals(stop.getName(), table.getName(17));
+        assertEquals(stop.getLatitude(), table.getLatitude(17));
+        assertEquals(stop.getLongitude(), table.getLongitude(17));
+        assertEquals(stop.toString(), table.getStop(17).toString());
+    }
+
+    @Test
+    void nearest_empty() {
+        StopTable empty = new StopTable(List.of());
+        assertEquals(-1, empty.nearestRow(38.0, -78.0));
+        assertTrue(empty.nearest(38.0, -78.0).isEmpty());
+    }
+
+    @Test
+    void nearestRow() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++) {
+            double latitude = 38.0 + random.nextDouble();
+            double longitude = -78.5 + random.nextDouble();
+            int expected = bruteForceNearest(latitude, longitude);
+            assertEquals(expected, table.nearestRow(latitude, longitude));
+            assertEquals(expected, table.nearestRowScalar(latitude, longitude));
+        }
+    }
+
+    @Test
+    void nearestRow_tieGoesToLowestRow() {
+        StopTable duplicates = new StopTable(List.of(new Stop(1, "a", 1.0, 1.0), new Stop(2, "b", 0.0, 0.0),
+                new Stop(3, "c", 0.0, 0.0), new Stop(4, "d", 0.0, 0.0), new Stop(5, "e", 0.0, 0.0)));
+        assertEquals(1, duplicates.nearestRow(0.0, 0.0));
+        assertEquals(1, duplicates.nearestRowScalar(0.0, 0.0));
+    }
+
+    private List<Integer> bruteForceByDistance(double latitude, double longitude, DistanceMetric metric) {
+        List<Integer> rows = new ArrayList<>();
+        for (int i = 0; i < stops.size(); i++) {
+            rows.add(i);
+        }
+        rows.sort(Comparator.comparingDouble((Integer row) -> metric.distance(latitude, longitude,
+                stops.get(row).getLatitude(), stops.get(row).getLongitude())).thenComparingInt(row -> row));
+        return rows;
+    }
+
+    @Test
+    void metricQueries_matchBruteForce() {
+        double latitude = 38.41;
+        double longitude = -78.07;
+        for (DistanceMetric metric : DistanceMetric.values()) {
+            List<Integer> expected = bruteForceByDistance(latitude, longitude, metric);
+            assertEquals(expected.get(0), table.nearestRow(latitude, longitude, metric), metric.name());
+            assertEquals(expected.subList(0, 10),
+                    Arrays.stream(table.kNearestRows(latitude, longitude, 10, metric)).boxed().toList());
+
+            Stop tenth = stops.get(expected.get(9));
+            double radius = metric.distance(latitude, longitude, tenth.getLatitude(), tenth.getLongitude());
+            int[] within = table.rowsWithinDistance(latitude, longitude, radius, metric);
+            assertEquals(expected.subList(0, within.length), Arrays.stream(within).boxed().toList());
+            assertTrue(within.length >= 9, metric.name());
+
+            double[] distances = new double[table.size()];
+            table.distances(latitude, longitude, metric, distances);
+            assertEquals(radius, distances[expected.get(9)], radius * 1e-9);
+        }
+    }
+
+    @Test
+    void metricQueries_greatCircleRanksDifferently() {
+        //at 60 degrees north a degree of longitude is half as long as a degree of latitude
+        StopTable north = new StopTable(List.of(new Stop(1, "north", 60.6, 0.0), new Stop(2, "east", 60.0, 0.9)));
+        assertEquals(0, north.nearestRow(60.0, 0.0, DistanceMetric.EUCLIDEAN));
+        assertEquals(1, north.nearestRow(60.0, 0.0, DistanceMetric.EQUIRECTANGULAR));
+        assertEquals(1, north.nearestRow(60.0, 0.0, DistanceMetric.HAVERSINE));
+        assertArrayEquals(new int[]{1, 0}, north.kNearestRows(60.0, 0.0, 5, DistanceMetric.HAVERSINE));
+        assertArrayEquals(new int[0], north.kNearestRows(60.0, 0.0, 0, DistanceMetric.HAVERSINE));
+        assertThrows(IllegalArgumentException.class,
+                () -> north.rowsWithinDistance(60.0, 0.0, -1, DistanceMetric.HAVERSINE));
+    }
+
+    @Test
+    void rowsWithinBox() {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < stops.size(); i++) {
+            Stop stop = stops.get(i);
+            if (stop.getLatitude() >= 38.2 && stop.getLatitude() <= 38.4
+                    && stop.getLongitude() >= -78.3 && stop.getLongitude() <= -78.1) {
+                expected.add(i);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        int[] rows = table.rowsWithinBox(38.2, -78.3, 38.4, -78.1);
+        assertEquals(expected, Arrays.stream(rows).boxed().toList());
+        assertArrayEquals(rows, table.rowsWithinBoxScalar(38.2, -78.3, 38.4, -78.1));
+    }
+
+    @Test
+    void rowsWithinBox_inclusiveBounds() {
+        Stop stop = stops.get(500);
+        assertArrayEquals(new int[]{500}, table.rowsWithinBox(stop.getLatitude(), stop.getLongitude(),
+                stop.getLatitude(), stop.getLongitude()));
+    }
+
+    @Test
+    void rowsWithinBox_invalid() {
+        assertThrows(IllegalArgumentException.class, () -> table.rowsWithinBox(38.4, -78.3, 38.2, -78.1));
+    }
+}
@@ -0,0 +1,67 @@
+package edu.virginia.sde.hw5;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels for StopTable's full-table scans. This class links against jdk.incubator.vector, so it must only be
+ * loaded when StopTable.VECTORIZED is true. Distances are computed lane-wise with the same multiplies and adds as
+ * the scalar loop, and ties go to the lowest row, so results always match StopTable's scalar fallback.
+ */
+final class StopTableVectorScan {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private StopTableVectorScan() { }
+
+    /**
+     * Whole vectors are only checked against the best distance so far; the rare vector that holds a closer stop
+     * is rescanned with the scalar loop to find which lane it was.
+     */
+    static int nearestRow(double[] latitudes, double[] longitudes, double latitude, double longitude) {
+        int bestRow = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        DoubleVector queryLatitude = DoubleVector.broadcast(SPECIES, latitude);
+        DoubleVector queryLongitude = DoubleVector.broadcast(SPECIES, longitude);
+        int upperBound = SPECIES.loopBound(latitudes.length);
+        int row = 0;
+        for (; row < upperBound; row += SPECIES.length()) {
+            DoubleVector latDiff = queryLatitude.sub(DoubleVector.fromArray(SPECIES, latitudes, row));
+            DoubleVector longDiff = queryLongitude.sub(DoubleVector.fromArray(SPECIES, longitudes, row));
+            DoubleVector distance = latDiff.mul(latDiff).add(longDiff.mul(longDiff));
+            if (distance.compare(VectorOperators.LT, bestDistance).anyTrue()) {
+                bestRow = StopTable.nearestRowScalar(latitudes, longitudes, row, row + SPECIES.length(),
+                        latitude, longitude, bestRow, bestDistance);
+                double bestLatDiff = latitude - latitudes[bestRow];
+                double bestLongDiff = longitude - longitudes[bestRow];
+                bestDistance = (bestLatDiff * bestLatDiff) + (bestLongDiff * bestLongDiff);
+            }
+        }
+        return StopTable.nearestRowScalar(latitudes, longitudes, row, latitudes.length,
+                latitude, longitude, bestRow, bestDistance);
+    }
+
+    static int[] rowsWithinBox(double[] latitudes, double[] longitudes, double minLatitude, double minLongitude,
+                               double maxLatitude, double maxLongitude) {
+        StopTable.RowBuffer rows = new StopTable.RowBuffer();
+        int upperBound = SPECIES.loopBound(latitudes.length);
+        int row = 0;
+        for (; row < upperBound; row += SPECIES.length()) {
+            DoubleVector rowLatitudes = DoubleVector.fromArray(SPECIES, latitudes, row);
+            DoubleVector rowLongitudes = DoubleVector.fromArray(SPECIES, longitudes, row);
+            VectorMask<Double> inside = rowLatitudes.compare(VectorOperators.GE, minLatitude)
+                    .and(rowLatitudes.compare(VectorOperators.LE, maxLatitude))
+                    .and(rowLongitudes.compare(VectorOperators.GE, minLongitude))
+                    .and(rowLongitudes.compare(VectorOperators.LE, maxLongitude));
+            if (inside.anyTrue()) {
+                for (long lanes = inside.toLong(); lanes != 0; lanes &= lanes - 1) {
+                    rows.add(row + Long.numberOfTrailingZeros(lanes));
+                }
+            }
+        }
+        StopTable.appendRowsWithinBox(latitudes, longitudes, row, latitudes.length,
+                minLatitude, minLongitude, maxLatitude, maxLongitude, rows);
+        return rows.toArray();
+    }
+}
@@ -0,0 +1,80 @@
+package edu.virginia.sde.hw5;
+
+/**
+ * Counts of the rows a DatabaseSynchronizer changed, per table
+ */
+public class SyncReport {
+    private final int stopsInserted, stopsUpdated, stopsDeleted;
+    private final int busLinesInserted, busLinesUpdated, busLinesDeleted;
+    private final int routesReplaced, routeRowsWritten;
+
+    public SyncReport(int stopsInserted, int stopsUpdated, int stopsDeleted,
+                      int busLinesInserted, int busLinesUpdated, int busLinesDeleted,
+                      int routesReplaced, int routeRowsWritten) {
+        this.stopsInserted = stopsInserted;
+        this.stopsUpdated = stopsUpdated;
+        this.stopsDeleted = stopsDeleted;
+        this.busLinesInserted = busLinesInserted;
+        this.busLinesUpdated = busLinesUpdated;
+        this.busLinesDeleted = busLinesDeleted;
+        this.routesReplaced = routesReplaced;
+        this.routeRowsWritten = routeRowsWritten;
+    }
+
+    public int getStopsInserted() {
+        return stopsInserted;
+    }
+
+    public int getStopsUpdated() {
+        return stopsUpdated;
+    }
+
+    public int getStopsDeleted() {
+        return stopsDeleted;
+    }
+
+    public int getBusLinesInserted() {
+        return busLinesInserted;
+    }
+
+    public int getBusLinesUpdated() {
+        return busLinesUpdated;
+    }
+
+    public int getBusLinesDeleted() {
+        return busLinesDeleted;
+    }
+
+    /**
+     * The number of BusLines, new or existing, whose Routes rows were (re)written
+     */
+    public int getRoutesReplaced() {
+        return routesReplaced;
+    }
+
+    /**
+     * The number of Routes rows inserted for new and changed Routes
+     */
+    public int getRouteRowsWritten() {
+        return routeRowsWritten;
+    }
+
+    public boolean isUnchanged() {
+        return stopsInserted + stopsUpdated + stopsDeleted + busLinesInserted + busLinesUpdated + busLinesDeleted
+                + routesReplaced == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncReport{" +
+                "stopsInserted=" + stopsInserted +
+                ", stopsUpdated=" + stopsUpdated +
+                ", stopsDeleted=" + stopsDeleted +
+                ", busLinesInserted=" + busLinesInserted +
+                ", busLinesUpdated=" + busLinesUpdated +
+                ", busLinesDeleted=" + busLinesDeleted +
+                ", routesReplaced=" + routesReplaced +
+                ", routeRowsWritten=" + routeRowsWritten +
+                '}';
+    }
+}
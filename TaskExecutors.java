@@ -0,0 +1,27 @@
+package edu.virginia.sde.hw5;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for blocking I/O tasks. On a JDK with virtual threads every task gets its own virtual thread; on older
+ * JDKs tasks run on a cached pool of daemon platform threads, so an unused executor never keeps the JVM alive.
+ */
+public final class TaskExecutors {
+    private TaskExecutors() { }
+
+    public static ExecutorService newPerTaskExecutor(String threadNamePrefix) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            AtomicInteger threadCount = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, threadNamePrefix + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package edu.virginia.sde.hw5;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Fetches the stops and lines endpoints once each, concurrently, and shares the parsed results. StopReader and
+ * BusLineReader instances built on the same fetcher read from these results instead of making requests of their
+ * own, so a full refresh costs two requests and takes as long as the slower one. A request that fails is reported
+ * to every caller waiting on it and started again by the next call, so one failure is not kept for good.
+ * <p>
+ * A fetcher made without an executor runs its requests on one of its own and shuts it down in close(); an executor
+ * passed in stays the caller's to shut down.
+ */
+public class TransitFeedFetcher implements AutoCloseable {
+    private final StopReader stopReader;
+    private final URL busLinesApiUrl;
+    private final HttpResponseCache responseCache;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+
+    private CompletableFuture<StopFeed> stopFeed;
+    private CompletableFuture<List<BusLine>> lineRecords;
+
+    public TransitFeedFetcher(Configuration configuration, Executor executor) {
+        this(configuration, executor, false);
+    }
+
+    public TransitFeedFetcher(Configuration configuration) {
+        this(configuration, TaskExecutors.newPerTaskExecutor("transit-feed"), true);
+    }
+
+    private TransitFeedFetcher(Configuration configuration, Executor executor, boolean ownsExecutor) {
+        this.stopReader = new StopReader(configuration);
+        this.busLinesApiUrl = configuration.getBusLinesURL();
+        this.responseCache = configuration.getResponseCache();
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Start each request that has not been started yet or that failed. Every getter calls this, so it only needs to
+     * be called directly to get the requests going before the results are needed.
+     */
+    public synchronized void start() {
+        if (stopFeed == null || stopFeed.isCompletedExceptionally()) {
+            stopFeed = CompletableFuture.supplyAsync(() -> {
+                List<Stop> stops = new ArrayList<>();
+                Map<Integer, int[]> routeStopIds = new HashMap<>();
+                stopReader.forEachStopAndRoute(stops::add, routeStopIds::putIfAbsent);
+                return new StopFeed(Collections.unmodifiableList(stops), Collections.unmodifiableMap(routeStopIds));
+            }, executor);
+        }
+        if (lineRecords == null || lineRecords.isCompletedExceptionally()) {
+            lineRecords = CompletableFuture.supplyAsync(() -> {
+                List<BusLine> busLines = new ArrayList<>();
+                new WebServiceReader(busLinesApiUrl, responseCache).streamArrays(Map.of("lines",
+                        lines -> busLines.add(BusLineReader.toBusLine(lines))));
+                return Collections.unmodifiableList(busLines);
+            }, executor);
+        }
+    }
+
+    /**
+     * The stops from the stops endpoint, in feed order
+     */
+    public List<Stop> getStops() {
+        return await(startedStopFeed()).stops();
+    }
+
+    /**
+     * Each route's stop ids in order, keyed by BusLine id, from the stops endpoint
+     */
+    public Map<Integer, int[]> getRouteStopIds() {
+        return await(startedStopFeed()).routeStopIds();
+    }
+
+    /**
+     * The BusLines from the lines endpoint, with empty Routes. BusLineReader fills in the Routes.
+     */
+    public List<BusLine> getLineRecords() {
+        return await(startedLineRecords());
+    }
+
+    /**
+     * Shut down the executor if this fetcher made it, letting requests already started finish. Results already
+     * fetched can still be read afterwards.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private synchronized CompletableFuture<StopFeed> startedStopFeed() {
+        start();
+        return stopFeed;
+    }
+
+    private synchronized CompletableFuture<List<BusLine>> startedLineRecords() {
+        start();
+        return lineRecords;
+    }
+
+    /**
+     * Wait for a request, rethrowing its failure as it was thrown on the fetch thread
+     */
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record StopFeed(List<Stop> stops, Map<Integer, int[]> routeStopIds) { }
+}
@@ -0,0 +1,142 @@
+package edu.virginia.sde.hw5;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransitFeedFetcherTest {
+    private static final String STOPS_BODY = "{\"stops\": [{\"id\": 1, \"name\": \"Rice Hall\", " +
+            "\"position\": [38.0316, -78.5108]}, " +
+            "{\"id\": 2, \"name\": \"Rice St\", \"position\": [38.0330, -78.5100]}], " +
+            "\"routes\": [{\"id\": 7, \"stops\": [2, 1]}]}";
+    private static final String LINES_BODY = "{\"lines\": [{\"id\": 7, \"is_active\": true, " +
+            "\"long_name\": \"Line Seven\", \"short_name\": \"L7\"}]}";
+
+    private HttpServer server;
+    private Configuration configuration;
+    private final AtomicInteger stopsRequests = new AtomicInteger();
+    private final AtomicInteger linesRequests = new AtomicInteger();
+    private final AtomicInteger stopsFailuresLeft = new AtomicInteger();
+    private final CountDownLatch responsesReleased = new CountDownLatch(1);
+    private final ExecutorService callers = Executors.newFixedThreadPool(8);
+    private TransitFeedFetcher feedFetcher;
+
+    @BeforeEach
+    void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/stops", exchange -> {
+            stopsRequests.incrementAndGet();
+            if (stopsFailuresLeft.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+                return;
+            }
+            respond(exchange, STOPS_BODY);
+        });
+        server.createContext("/lines", exchange -> {
+            linesRequests.incrementAndGet();
+            respond(exchange, LINES_BODY);
+        });
+        server.start();
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        configuration = new Configuration(new URL(baseUrl + "/stops"), new URL(baseUrl + "/lines"), null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        responsesReleased.countDown();
+        if (feedFetcher != null) {
+            feedFetcher.close();
+        }
+        callers.shutdownNow();
+        server.stop(0);
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        try {
+            responsesReleased.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    @Test
+    void getters_concurrentCallers_fetchEachEndpointOnce() throws Exception {
+        feedFetcher = new TransitFeedFetcher(configuration);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> feedFetcher.getStops().size(), callers));
+            results.add(CompletableFuture.supplyAsync(() -> feedFetcher.getRouteStopIds().size(), callers));
+            results.add(CompletableFuture.supplyAsync(() -> feedFetcher.getLineRecords().size(), callers));
+        }
+        Thread.sleep(100);
+        assertTrue(results.stream().noneMatch(CompletableFuture::isDone));
+        responsesReleased.countDown();
+
+        for (int i = 0; i < results.size(); i += 3) {
+            assertEquals(2, results.get(i).get(5, TimeUnit.SECONDS));
+            assertEquals(1, results.get(i + 1).get(5, TimeUnit.SECONDS));
+            assertEquals(1, results.get(i + 2).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, stopsRequests.get());
+        assertEquals(1, linesRequests.get());
+        assertArrayEquals(new int[] {2, 1}, feedFetcher.getRouteStopIds().get(7));
+        assertEquals("Line Seven", feedFetcher.getLineRecords().get(0).getLongName());
+    }
+
+    @Test
+    void getStops_failedFetch_propagatesAndIsRetried() {
+        responsesReleased.countDown();
+        stopsFailuresLeft.set(1);
+        feedFetcher = new TransitFeedFetcher(configuration);
+
+        assertThrows(RuntimeException.class, () -> feedFetcher.getStops());
+        assertEquals(2, feedFetcher.getStops().size());
+        assertEquals(1, feedFetcher.getLineRecords().size());
+        assertEquals(2, stopsRequests.get());
+        assertEquals(1, linesRequests.get());
+    }
+
+    @Test
+    void close_shutsDownOwnedExecutorOnly() {
+        responsesReleased.countDown();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            TransitFeedFetcher sharedExecutorFetcher = new TransitFeedFetcher(configuration, executor);
+            sharedExecutorFetcher.close();
+            assertFalse(executor.isShutdown());
+            assertEquals(2, sharedExecutorFetcher.getStops().size());
+        } finally {
+            executor.shutdown();
+        }
+
+        feedFetcher = new TransitFeedFetcher(configuration);
+        feedFetcher.close();
+        assertThrows(RejectedExecutionException.class, () -> feedFetcher.start());
+    }
+}
@@ -0,0 +1,221 @@
+package edu.virginia.sde.hw5;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An immutable, fully indexed snapshot of the stops and bus lines in the database. A snapshot never changes after
+ * it is built; writes produce a new snapshot instead. The snapshot builds its own read-only copies of the BusLines
+ * it is given, whose setters and Route.add() throw UnsupportedOperationException, and every Route refers to the
+ * same (immutable) Stop objects returned by getStops(). Every reader can therefore share them without copying.
+ */
+public final class TransitNetwork {
+    private final List<Stop> stops;
+    private final Map<Integer, Stop> stopsById;
+    private final List<BusLine> busLines;
+    private final Map<Integer, BusLine> busLinesById;
+    private final Map<String, BusLine> busLinesByShortName;
+    private final Map<String, BusLine> busLinesByLongName;
+    private final Map<Integer, List<BusLine>> busLinesByStopId;
+    private final StopSpatialIndex stopIndex;
+    private final StopTable stopTable;
+    private final StopLineIndex stopLineIndex;
+    private final JourneyPlanner journeyPlanner;
+    /* Planners for the other metrics, built the first time each is asked for */
+    private final AtomicReferenceArray<JourneyPlanner> journeyPlannersByMetric =
+            new AtomicReferenceArray<>(DistanceMetric.values().length);
+
+    /**
+     * Builds a snapshot from stops and deep bus lines (lines with their Routes populated). Route stops are
+     * resolved to the given Stop objects by id.
+     *
+     * @throws IllegalArgumentException if a Route visits a stop that is not in stops
+     */
+    public TransitNetwork(List<Stop> stops, List<BusLine> busLines) {
+        Map<Integer, Stop> stopMap = new LinkedHashMap<>();
+        for (Stop stop : stops) {
+            stopMap.putIfAbsent(stop.getId(), stop);
+        }
+        this.stopsById = Collections.unmodifiableMap(stopMap);
+        this.stops = List.copyOf(stopMap.values());
+
+        List<BusLine> lineList = new ArrayList<>();
+        Map<Integer, BusLine> lineMap = new HashMap<>();
+        Map<String, BusLine> shortNameMap = new HashMap<>();
+        Map<String, BusLine> longNameMap = new HashMap<>();
+        Map<Integer, List<BusLine>> stopLineMap = new HashMap<>();
+        for (BusLine busLine : busLines) {
+            if (lineMap.containsKey(busLine.getId())) {
+                continue;
+            }
+            List<Stop> routeStops = new ArrayList<>(busLine.getRoute().size());
+            for (Stop routeStop : busLine.getRoute()) {
+                Stop stop = stopMap.get(routeStop.getId());
+                if (stop == null) {
+                    throw new IllegalArgumentException("Bus line " + busLine.getId() + " visits unknown stop "
+                            + routeStop.getId());
+                }
+                routeStops.add(stop);
+            }
+            BusLine copy = BusLine.readOnly(busLine.getId(), busLine.isActive(), busLine.getLongName(),
+                    busLine.getShortName(), new Route(Collections.unmodifiableList(routeStops)));
+            lineList.add(copy);
+            lineMap.put(copy.getId(), copy);
+            //a line with no name is still listed, but cannot be found by that name
+            if (copy.getShortName() != null) {
+                shortNameMap.putIfAbsent(nameKey(copy.getShortName()), copy);
+            }
+            if (copy.getLongName() != null) {
+                longNameMap.putIfAbsent(nameKey(copy.getLongName()), copy);
+            }
+            for (Stop stop : routeStops) {
+                //a line's stops are all added before the next line's, so checking the last entry is enough
+                //to keep a line that revisits a stop from being listed twice
+                List<BusLine> linesAtStop = stopLineMap.computeIfAbsent(stop.getId(), id -> new ArrayList<>());
+                if (linesAtStop.isEmpty() || linesAtStop.get(linesAtStop.size() - 1) != copy) {
+                    linesAtStop.add(copy);
+                }
+            }
+        }
+        stopLineMap.replaceAll((stopId, linesAtStop) -> Collections.unmodifiableList(linesAtStop));
+        this.busLines = Collections.unmodifiableList(lineList);
+        this.busLinesById = Collections.unmodifiableMap(lineMap);
+        this.busLinesByShortName = Collections.unmodifiableMap(shortNameMap);
+        this.busLinesByLongName = Collections.unmodifiableMap(longNameMap);
+        this.busLinesByStopId = Collections.unmodifiableMap(stopLineMap);
+        this.stopIndex = new StopSpatialIndex(this.stops);
+        this.stopTable = new StopTable(this.stops);
+        this.stopLineIndex = new StopLineIndex(this.busLines);
+        this.journeyPlanner = new JourneyPlanner(this.stops, this.busLines);
+    }
+
+    /**
+     * Loads a snapshot of everything in the database using the driver's open connection
+     */
+    public static TransitNetwork load(DatabaseDriver databaseDriver) throws SQLException {
+        return new TransitNetwork(databaseDriver.getAllStops(), databaseDriver.getBusLinesWithRoutes());
+    }
+
+    public static TransitNetwork empty() {
+        return new TransitNetwork(List.of(), List.of());
+    }
+
+    /**
+     * Returns a new snapshot with the given stops added. Stops whose id is already present are ignored.
+     */
+    public TransitNetwork withStops(List<Stop> newStops) {
+        List<Stop> allStops = new ArrayList<>(stops);
+        allStops.addAll(newStops);
+        return new TransitNetwork(allStops, busLines);
+    }
+
+    /**
+     * Returns a new snapshot with the given deep bus lines added. Lines whose id is already present are ignored.
+     */
+    public TransitNetwork withBusLines(List<BusLine> newBusLines) {
+        List<BusLine> allBusLines = new ArrayList<>(busLines);
+        allBusLines.addAll(newBusLines);
+        return new TransitNetwork(stops, allBusLines);
+    }
+
+    public List<Stop> getStops() {
+        return stops;
+    }
+
+    public Optional<Stop> getStopById(int stopId) {
+        return Optional.ofNullable(stopsById.get(stopId));
+    }
+
+    public boolean containsStop(Stop stop) {
+        return stopsById.containsKey(stop.getId());
+    }
+
+    public List<BusLine> getBusLines() {
+        return busLines;
+    }
+
+    public Optional<BusLine> getBusLineById(int busLineId) {
+        return Optional.ofNullable(busLinesById.get(busLineId));
+    }
+
+    /**
+     * Get BusLine by its full short name (case-insensitive). Return Optional.empty() for a null name
+     */
+    public Optional<BusLine> getBusLineByShortName(String shortName) {
+        if (shortName == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(busLinesByShortName.get(nameKey(shortName)));
+    }
+
+    /**
+     * Get BusLine by its full long name (case-insensitive). Return Optional.empty() for a null name
+     */
+    public Optional<BusLine> getBusLineByLongName(String longName) {
+        if (longName == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(busLinesByLongName.get(nameKey(longName)));
+    }
+
+    /**
+     * Get all BusLines that visit a particular stop
+     */
+    public List<BusLine> getBusLinesByStop(Stop stop) {
+        return busLinesByStopId.getOrDefault(stop.getId(), List.of());
+    }
+
+    /**
+     * Returns a BusLine's route, or Optional.empty() if the line is not in this snapshot
+     */
+    public Optional<Route> getRoute(BusLine busLine) {
+        return getBusLineById(busLine.getId()).map(BusLine::getRoute);
+    }
+
+    public StopSpatialIndex getStopIndex() {
+        return stopIndex;
+    }
+
+    /**
+     * Returns the snapshot's stops in columnar form, in the same order as getStops()
+     */
+    public StopTable getStopTable() {
+        return stopTable;
+    }
+
+    public StopLineIndex getStopLineIndex() {
+        return stopLineIndex;
+    }
+
+    public JourneyPlanner getJourneyPlanner() {
+        return journeyPlanner;
+    }
+
+    /**
+     * Returns a planner that measures rides under metric. Planners for metrics other than EUCLIDEAN are built on
+     * first use; two threads asking at once may both build one, but only the first is kept.
+     */
+    public JourneyPlanner getJourneyPlanner(DistanceMetric metric) {
+        if (metric == DistanceMetric.EUCLIDEAN) {
+            return journeyPlanner;
+        }
+        JourneyPlanner planner = journeyPlannersByMetric.get(metric.ordinal());
+        if (planner == null) {
+            journeyPlannersByMetric.compareAndSet(metric.ordinal(), null, new JourneyPlanner(stops, busLines, metric));
+            planner = journeyPlannersByMetric.get(metric.ordinal());
+        }
+        return planner;
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,43 @@
+package edu.virginia.sde.hw5;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransitNetworkTest {
+    private static final List<Stop> STOPS = List.of(
+            new Stop(1, "Whitehead Rd @ Rice Hall", 38.0316, -78.5108),
+            new Stop(2, "Rice St", 38.0330, -78.5100));
+
+    private static TransitNetwork network() {
+        return new TransitNetwork(STOPS, List.of(
+                new BusLine(1, true, "Line One", "L1", new Route(new ArrayList<>(STOPS))),
+                new BusLine(2, true, null, "L2"),
+                new BusLine(3, false, "Line Three", null)));
+    }
+
+    @Test
+    void getBusLineByName_ignoresCase() {
+        TransitNetwork network = network();
+        assertEquals(1, network.getBusLineByShortName("l1").orElseThrow().getId());
+        assertEquals(1, network.getBusLineByLongName("LINE ONE").orElseThrow().getId());
+    }
+
+    @Test
+    void nullNames_linesStillListedAndFoundByOtherName() {
+        TransitNetwork network = network();
+        assertEquals(List.of(1, 2, 3), network.getBusLines().stream().map(BusLine::getId).toList());
+        assertEquals(2, network.getBusLineByShortName("L2").orElseThrow().getId());
+        assertEquals(3, network.getBusLineByLongName("line three").orElseThrow().getId());
+    }
+
+    @Test
+    void getBusLineByName_null_isEmpty() {
+        TransitNetwork network = network();
+        assertTrue(network.getBusLineByShortName(null).isEmpty());
+        assertTrue(network.getBusLineByLongName(null).isEmpty());
+    }
+}
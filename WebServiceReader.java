@@ -1,33 +1,129 @@
 package edu.virginia.sde.hw5;
 
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class WebServiceReader {
     private final URL url;
+    private final HttpResponseCache responseCache;
 
     public WebServiceReader(URL url) {
+        this(url, null);
+    }
+
+    /**
+     * Creates a reader that goes through responseCache, so unchanged responses are read from disk. A null cache
+     * reads straight from the URL.
+     */
+    public WebServiceReader(URL url, HttpResponseCache responseCache) {
         this.url = url;
+        this.responseCache = responseCache;
     }
 
     /**
      * Extract the JSONObject from the provided URL;
-     * @return
+     * @return the whole response parsed as one JSONObject
      */
     public JSONObject getJSONObject() {
-        try(var inputStream = url.openStream();
+        try(var inputStream = openStream();
+            var inputStreamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+            var bufferedReader = new BufferedReader(inputStreamReader)) {
+            return new JSONObject(new JSONTokener(bufferedReader));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Stream the top-level arrays of the response object, parsing one element at a time straight off the
+     * connection. Each object element of an array whose key is in handlers is passed to that key's handler as soon
+     * as it has been read, so only one element is held in memory at a time. Values under other keys are skipped.
+     *
+     * @throws org.json.JSONException if the response is malformed or ends early; handlers may already have been
+     * given the elements read before the error
+     */
+    public void streamArrays(Map<String, Consumer<JSONObject>> handlers) {
+        try(var inputStream = openStream();
             var inputStreamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
             var bufferedReader = new BufferedReader(inputStreamReader)) {
-            var fileContents = bufferedReader.lines().collect(Collectors.joining("\n"));
-            return new JSONObject(fileContents);
+            JSONTokener tokener = new JSONTokener(bufferedReader);
+            if (nextToken(tokener) != '{') {
+                throw tokener.syntaxError("A JSONObject text must begin with '{'");
+            }
+            if (nextToken(tokener) == '}') {
+                return;
+            }
+            tokener.back();
+            while (true) {
+                if (nextToken(tokener) != '"') {
+                    throw tokener.syntaxError("Expected a quoted key");
+                }
+                String key = tokener.nextString('"');
+                if (nextToken(tokener) != ':') {
+                    throw tokener.syntaxError("Expected ':' after key " + key);
+                }
+                Consumer<JSONObject> handler = handlers.get(key);
+                if (handler != null) {
+                    streamArray(tokener, handler);
+                } else {
+                    tokener.nextValue();
+                }
+                char separator = nextToken(tokener);
+                if (separator == '}') {
+                    return;
+                }
+                if (separator != ',') {
+                    throw tokener.syntaxError("Expected ',' or '}'");
+                }
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private InputStream openStream() throws IOException {
+        return responseCache != null ? responseCache.open(url) : url.openStream();
+    }
+
+    /**
+     * The next non-whitespace character, failing rather than returning the tokener's end-of-input marker
+     */
+    private static char nextToken(JSONTokener tokener) {
+        char next = tokener.nextClean();
+        if (next == 0) {
+            throw tokener.syntaxError("Unexpected end of response");
+        }
+        return next;
+    }
+
+    private static void streamArray(JSONTokener tokener, Consumer<JSONObject> handler) {
+        if (nextToken(tokener) != '[') {
+            throw tokener.syntaxError("A JSONArray text must start with '['");
+        }
+        if (nextToken(tokener) == ']') {
+            return;
+        }
+        tokener.back();
+        while (true) {
+            if (tokener.nextValue() instanceof JSONObject element) {
+                handler.accept(element);
+            }
+            char separator = nextToken(tokener);
+            if (separator == ']') {
+                return;
+            }
+            if (separator != ',') {
+                throw tokener.syntaxError("Expected ',' or ']'");
+            }
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package edu.virginia.sde.hw5;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebServiceReaderTest {
+    @TempDir
+    Path directory;
+
+    private final List<Integer> stopIds = new ArrayList<>();
+    private final List<Integer> lineIds = new ArrayList<>();
+
+    private void stream(String json) throws IOException {
+        Path response = directory.resolve("response.json");
+        Files.writeString(response, json);
+        new WebServiceReader(response.toUri().toURL()).streamArrays(Map.of(
+                "stops", stop -> stopIds.add(stop.getInt("id")),
+                "lines", line -> lineIds.add(line.getInt("id"))));
+    }
+
+    @Test
+    void streamArrays_emptyObject() throws IOException {
+        stream(" { } ");
+        assertTrue(stopIds.isEmpty());
+        assertTrue(lineIds.isEmpty());
+    }
+
+    @Test
+    void streamArrays_emptyArrays() throws IOException {
+        stream("{\"stops\": [], \"lines\": [ ]}");
+        assertTrue(stopIds.isEmpty());
+        assertTrue(lineIds.isEmpty());
+    }
+
+    @Test
+    void streamArrays_handlesEveryElementInOrder() throws IOException {
+        stream("{\"stops\": [{\"id\": 3}, {\"id\": 1}, {\"id\": 2}]}");
+        assertEquals(List.of(3, 1, 2), stopIds);
+    }
+
+    @Test
+    void streamArrays_skipsUnknownKeys() throws IOException {
+        stream("{\"routes\": [{\"id\": 9, \"stops\": [{\"id\": 99}]}, [1, 2]], " +
+                "\"meta\": {\"lines\": [{\"id\": 98}], \"count\": 2}, \"version\": \"1.0\", " +
+                "\"lines\": [{\"id\": 4}], \"empty\": null}");
+        assertEquals(List.of(4), lineIds);
+        assertTrue(stopIds.isEmpty());
+    }
+
+    @Test
+    void streamArrays_keysInAnyOrder() throws IOException {
+        stream("{\"lines\": [{\"id\": 4}, {\"id\": 5}], \"stops\": [{\"id\": 1}]}");
+        assertEquals(List.of(4, 5), lineIds);
+        assertEquals(List.of(1), stopIds);
+    }
+
+    @Test
+    void streamArrays_notAnObject_throws() {
+        assertThrows(JSONException.class, () -> stream("[{\"id\": 1}]"));
+        assertThrows(JSONException.class, () -> stream(""));
+    }
+
+    @Test
+    void streamArrays_malformed_throws() {
+        assertThrows(JSONException.class, () -> stream("{\"stops\" [{\"id\": 1}]}"));
+        assertThrows(JSONException.class, () -> stream("{\"stops\": {\"id\": 1}}"));
+        assertThrows(JSONException.class, () -> stream("{\"stops\": [{\"id\": 1} {\"id\": 2}]}"));
+        assertThrows(JSONException.class, () -> stream("{stops: []}"));
+    }
+
+    @Test
+    void streamArrays_truncated_throws() {
+        JSONException midArray = assertThrows(JSONException.class, () -> stream("{\"stops\": [{\"id\": 1}, "));
+        assertTrue(midArray.getMessage().contains("end of response") || midArray.getMessage().contains("Missing"),
+                midArray::getMessage);
+        JSONException afterArray = assertThrows(JSONException.class, () -> stream("{\"stops\": [{\"id\": 1}]"));
+        assertTrue(afterArray.getMessage().contains("Unexpected end of response"), afterArray::getMessage);
+        assertThrows(JSONException.class, () -> stream("{\"stops\": [{\"id\": 1"));
+        assertThrows(JSONException.class, () -> stream("{\"meta\": {\"a\": 1}, \"lines\""));
+    }
+}
@@ -0,0 +1,67 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Throughput of BusLineReader.getBusLines reading synthetic feeds from local files and assembling every BusLine with
+ * its Route. Reading from files keeps the network out of the measurement, so this covers parsing and joining only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BusLineReaderBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int stopCount;
+
+    private Path feedDirectory;
+    private Configuration configuration;
+    private ExecutorService feedExecutor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        SyntheticNetworkGenerator generator = new SyntheticNetworkGenerator(42);
+        List<Stop> stops = generator.generateStops(stopCount);
+        List<BusLine> busLines = generator.generateBusLines(stops);
+        feedDirectory = Files.createTempDirectory("bus-line-reader-benchmark");
+        Path stopsFeed = feedDirectory.resolve("stops.json");
+        Path linesFeed = feedDirectory.resolve("lines.json");
+        SyntheticNetworkGenerator.writeStopsFeed(stopsFeed, stops, busLines);
+        SyntheticNetworkGenerator.writeLinesFeed(linesFeed, busLines);
+        configuration = new Configuration(stopsFeed.toUri().toURL(), linesFeed.toUri().toURL(), null);
+        feedExecutor = TaskExecutors.newPerTaskExecutor("benchmark-feed");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        feedExecutor.shutdown();
+        try (Stream<Path> files = Files.walk(feedDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<BusLine> getBusLines() {
+        return new BusLineReader(configuration).getBusLines();
+    }
+
+    @Benchmark
+    public List<BusLine> getBusLinesWithFeedFetcher() {
+        TransitFeedFetcher feedFetcher = new TransitFeedFetcher(configuration, feedExecutor);
+        feedFetcher.start();
+        return new BusLineReader(configuration, feedFetcher).getBusLines();
+    }
+}
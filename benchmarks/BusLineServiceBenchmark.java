@@ -0,0 +1,88 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query throughput of BusLineService against a loaded snapshot of a synthetic network. Queries cycle through a
+ * fixed, seeded set of inputs so every run measures the same work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BusLineServiceBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int stopCount;
+
+    private Path databaseFile;
+    private BusLineService busLineService;
+    private double[] latitudes;
+    private double[] longitudes;
+    private Stop[] sources;
+    private Stop[] destinations;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        SyntheticNetworkGenerator generator = new SyntheticNetworkGenerator(42);
+        List<Stop> stops = generator.generateStops(stopCount);
+        List<BusLine> busLines = generator.generateBusLines(stops);
+        databaseFile = Files.createTempFile("bus-line-service-benchmark", ".sqlite");
+        SyntheticNetworkGenerator.writeDatabase(databaseFile.toString(), stops, busLines);
+        busLineService = new BusLineService(new DatabaseDriver(databaseFile.toString()));
+        busLineService.getNetwork();
+
+        Random random = new Random(7);
+        double extent = Math.sqrt(stopCount) * SyntheticNetworkGenerator.GRID_SPACING;
+        latitudes = new double[QUERIES];
+        longitudes = new double[QUERIES];
+        sources = new Stop[QUERIES];
+        destinations = new Stop[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            latitudes[i] = SyntheticNetworkGenerator.ORIGIN_LATITUDE + random.nextDouble() * extent;
+            longitudes[i] = SyntheticNetworkGenerator.ORIGIN_LONGITUDE + random.nextDouble() * extent;
+            //pairs on a common line, so every recommendation has an answer to find
+            Route route = busLines.get(random.nextInt(busLines.size())).getRoute();
+            int from = random.nextInt(route.size());
+            int to = random.nextInt(route.size());
+            sources[i] = route.get(Math.min(from, to));
+            destinations[i] = route.get(Math.max(from, to));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(databaseFile);
+    }
+
+    @Benchmark
+    public Stop getClosestStop() {
+        int i = next++ & (QUERIES - 1);
+        return busLineService.getClosestStop(latitudes[i], longitudes[i]);
+    }
+
+    @Benchmark
+    public Optional<BusLine> getRecommendedBusLine() {
+        int i = next++ & (QUERIES - 1);
+        return busLineService.getRecommendedBusLine(sources[i], destinations[i]);
+    }
+
+    @Benchmark
+    public List<Journey> getJourneys() {
+        int i = next++ & (QUERIES - 1);
+        return busLineService.getJourneys(sources[i], destinations[QUERIES - 1 - i], 2);
+    }
+}
@@ -0,0 +1,64 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point lookups from several threads sharing one DatabaseDriver.concurrent driver, each thread in its own session.
+ * Compare runs with -t 1, 2, 4 and 8 to see read throughput scale with readers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ConcurrentReadBenchmark {
+    private static final int STOP_COUNT = 10_000;
+
+    private Path databaseFile;
+    private DatabaseDriver databaseDriver;
+
+    @State(Scope.Thread)
+    public static class Session {
+        private int next;
+
+        @Setup(Level.Trial)
+        public void connect(ConcurrentReadBenchmark benchmark) throws SQLException {
+            benchmark.databaseDriver.connect();
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect(ConcurrentReadBenchmark benchmark) throws SQLException {
+            benchmark.databaseDriver.disconnect();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        SyntheticNetworkGenerator generator = new SyntheticNetworkGenerator(42);
+        List<Stop> stops = generator.generateStops(STOP_COUNT);
+        databaseFile = Files.createTempFile("concurrent-read-benchmark", ".sqlite");
+        SyntheticNetworkGenerator.writeDatabase(databaseFile.toString(), stops, generator.generateBusLines(stops));
+        databaseDriver = DatabaseDriver.concurrent(databaseFile.toString(), Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        databaseDriver.close();
+        Files.deleteIfExists(databaseFile);
+    }
+
+    @Benchmark
+    public Optional<Stop> getStopById(Session session) throws SQLException {
+        return databaseDriver.getStopById(1 + (session.next++ % STOP_COUNT));
+    }
+}
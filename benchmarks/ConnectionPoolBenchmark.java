@@ -0,0 +1,66 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single DatabaseDriver lookup including connect() and disconnect(), with the driver opening the SQLite
+ * file on every call or leasing from a ConnectionPool
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionPoolBenchmark {
+    private static final int STOP_COUNT = 1000;
+
+    @Param({"false", "true"})
+    public boolean pooled;
+
+    private Path databaseFile;
+    private ConnectionPool connectionPool;
+    private DatabaseDriver databaseDriver;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        SyntheticNetworkGenerator generator = new SyntheticNetworkGenerator(42);
+        List<Stop> stops = generator.generateStops(STOP_COUNT);
+        databaseFile = Files.createTempFile("connection-pool-benchmark", ".sqlite");
+        SyntheticNetworkGenerator.writeDatabase(databaseFile.toString(), stops, generator.generateBusLines(stops));
+        if (pooled) {
+            connectionPool = new ConnectionPool(databaseFile.toString(), 1);
+            databaseDriver = new DatabaseDriver(connectionPool);
+        } else {
+            databaseDriver = new DatabaseDriver(databaseFile.toString());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+        Files.deleteIfExists(databaseFile);
+    }
+
+    @Benchmark
+    public Optional<Stop> getStopById() throws SQLException {
+        int stopId = 1 + (next++ % STOP_COUNT);
+        databaseDriver.connect();
+        try {
+            return databaseDriver.getStopById(stopId);
+        } finally {
+            databaseDriver.disconnect();
+        }
+    }
+}
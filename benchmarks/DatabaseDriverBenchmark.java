@@ -0,0 +1,68 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load a synthetic network into an empty database with DatabaseDriver.addStops and addBusLines, with and
+ * without the bulk load profile. Each measurement is a single load into a fresh file, so it includes the commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DatabaseDriverBenchmark {
+    @Param({"1000", "100000"})
+    public int stopCount;
+
+    @Param({"false", "true"})
+    public boolean bulkLoad;
+
+    private List<Stop> stops;
+    private List<BusLine> busLines;
+    private Path databaseFile;
+    private DatabaseDriver databaseDriver;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        SyntheticNetworkGenerator generator = new SyntheticNetworkGenerator(42);
+        stops = generator.generateStops(stopCount);
+        busLines = generator.generateBusLines(stops);
+    }
+
+    @Setup(Level.Invocation)
+    public void createDatabase() throws IOException, SQLException {
+        databaseFile = Files.createTempFile("database-driver-benchmark", ".sqlite");
+        databaseDriver = new DatabaseDriver(databaseFile.toString());
+        databaseDriver.connect();
+        databaseDriver.createTables();
+        databaseDriver.commit();
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDatabase() throws IOException, SQLException {
+        databaseDriver.disconnect();
+        Files.deleteIfExists(databaseFile);
+    }
+
+    @Benchmark
+    public void addStopsAndBusLines() throws SQLException {
+        if (bulkLoad) {
+            databaseDriver.beginBulkLoad();
+        }
+        databaseDriver.addStops(stops);
+        databaseDriver.addBusLines(busLines);
+        databaseDriver.commit();
+        if (bulkLoad) {
+            databaseDriver.endBulkLoad();
+        }
+    }
+}
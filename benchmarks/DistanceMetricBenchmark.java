@@ -0,0 +1,68 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One point against every stop under each DistanceMetric: the batch kernel on its own, and the nearest and
+ * k-nearest scans built on it. EUCLIDEAN's nearest scan is StopTable's vectorized path, so it is the ceiling the
+ * great-circle metrics are measured against.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistanceMetricBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"1000", "100000"})
+    public int stopCount;
+
+    @Param({"EUCLIDEAN", "EQUIRECTANGULAR", "HAVERSINE"})
+    public DistanceMetric metric;
+
+    private StopTable stopTable;
+    private double[] distances;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Stop> stops = new SyntheticNetworkGenerator(42).generateStops(stopCount);
+        stopTable = new StopTable(stops);
+        distances = new double[stopCount];
+        Random random = new Random(7);
+        double extent = Math.sqrt(stopCount) * SyntheticNetworkGenerator.GRID_SPACING;
+        latitudes = new double[QUERIES];
+        longitudes = new double[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            latitudes[i] = SyntheticNetworkGenerator.ORIGIN_LATITUDE + random.nextDouble() * extent;
+            longitudes[i] = SyntheticNetworkGenerator.ORIGIN_LONGITUDE + random.nextDouble() * extent;
+        }
+    }
+
+    @Benchmark
+    public double[] distancesToAll() {
+        int i = next++ & (QUERIES - 1);
+        stopTable.distances(latitudes[i], longitudes[i], metric, distances);
+        return distances;
+    }
+
+    @Benchmark
+    public int nearestRow() {
+        int i = next++ & (QUERIES - 1);
+        return stopTable.nearestRow(latitudes[i], longitudes[i], metric);
+    }
+
+    @Benchmark
+    public int[] kNearestRows() {
+        int i = next++ & (QUERIES - 1);
+        return stopTable.kNearestRows(latitudes[i], longitudes[i], 10, metric);
+    }
+}
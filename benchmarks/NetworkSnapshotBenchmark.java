@@ -0,0 +1,72 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold-start cost of a synthetic network: loading it from SQLite against mapping its NetworkSnapshotFile, both
+ * on its own and through to a TransitNetwork, and answering a first nearest-stop query straight from the mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkSnapshotBenchmark {
+    @Param({"1000", "100000"})
+    public int stopCount;
+
+    private Path databaseFile;
+    private Path snapshotFile;
+    private double latitude;
+    private double longitude;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        SyntheticNetworkGenerator generator = new SyntheticNetworkGenerator(42);
+        List<Stop> stops = generator.generateStops(stopCount);
+        List<BusLine> busLines = generator.generateBusLines(stops);
+        databaseFile = Files.createTempFile("network-snapshot-benchmark", ".sqlite");
+        SyntheticNetworkGenerator.writeDatabase(databaseFile.toString(), stops, busLines);
+        snapshotFile = Files.createTempFile("network-snapshot-benchmark", ".snapshot");
+        NetworkSnapshotFile.write(snapshotFile, stops, busLines, 0);
+        double extent = Math.sqrt(stopCount) * SyntheticNetworkGenerator.GRID_SPACING;
+        latitude = SyntheticNetworkGenerator.ORIGIN_LATITUDE + extent / 2;
+        longitude = SyntheticNetworkGenerator.ORIGIN_LONGITUDE + extent / 2;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(databaseFile);
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    @Benchmark
+    public TransitNetwork loadFromDatabase() throws SQLException {
+        DatabaseDriver databaseDriver = new DatabaseDriver(databaseFile.toString());
+        databaseDriver.connect();
+        try {
+            return TransitNetwork.load(databaseDriver);
+        } finally {
+            databaseDriver.disconnect();
+        }
+    }
+
+    @Benchmark
+    public TransitNetwork loadFromSnapshotFile() throws IOException {
+        return NetworkSnapshotFile.open(snapshotFile).toTransitNetwork();
+    }
+
+    @Benchmark
+    public int openAndFindNearestStop() throws IOException {
+        NetworkSnapshotFile snapshot = NetworkSnapshotFile.open(snapshotFile);
+        return snapshot.getStopId(snapshot.nearestStopRow(latitude, longitude));
+    }
+}
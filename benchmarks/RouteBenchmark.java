@@ -0,0 +1,42 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of Route distance queries for routes of increasing length. The cumulative distances are built on the
+ * first call, so these measure the cached lookups that ranking relies on.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteBenchmark {
+    @Param({"10", "100", "1000"})
+    public int routeLength;
+
+    private Route route;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        route = new Route(new SyntheticNetworkGenerator(42).generateStops(routeLength));
+    }
+
+    @Benchmark
+    public double getRouteDistance() {
+        return route.getRouteDistance();
+    }
+
+    @Benchmark
+    public double distanceBetween() {
+        return route.distanceBetween(routeLength / 4, routeLength - 1);
+    }
+
+    @Benchmark
+    public int indexOf() {
+        return route.indexOf(route.get(routeLength / 2));
+    }
+}
@@ -0,0 +1,72 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading every BusLine of a synthetic network with its Route: one getRouteForBusLine query per line, the lazy
+ * Routes of getBusLines() (loaded in one batch by the first getRoute()), and the single joined scan of
+ * getBusLinesWithRoutes().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouteLoadingBenchmark {
+    @Param({"1000", "100000"})
+    public int stopCount;
+
+    private Path databaseFile;
+    private DatabaseDriver databaseDriver;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        SyntheticNetworkGenerator generator = new SyntheticNetworkGenerator(42);
+        List<Stop> stops = generator.generateStops(stopCount);
+        databaseFile = Files.createTempFile("route-loading-benchmark", ".sqlite");
+        SyntheticNetworkGenerator.writeDatabase(databaseFile.toString(), stops, generator.generateBusLines(stops));
+        databaseDriver = new DatabaseDriver(databaseFile.toString());
+        databaseDriver.connect();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        databaseDriver.disconnect();
+        Files.deleteIfExists(databaseFile);
+    }
+
+    @Benchmark
+    public int oneQueryPerLine() throws SQLException {
+        int routeStops = 0;
+        for (BusLine busLine : databaseDriver.getBusLines()) {
+            routeStops += databaseDriver.getRouteForBusLine(busLine).size();
+        }
+        return routeStops;
+    }
+
+    @Benchmark
+    public int lazyBatch() {
+        int routeStops = 0;
+        for (BusLine busLine : databaseDriver.getBusLines()) {
+            routeStops += busLine.getRoute().size();
+        }
+        return routeStops;
+    }
+
+    @Benchmark
+    public int joinedScan() throws SQLException {
+        int routeStops = 0;
+        for (BusLine busLine : databaseDriver.getBusLinesWithRoutes()) {
+            routeStops += busLine.getRoute().size();
+        }
+        return routeStops;
+    }
+}
@@ -0,0 +1,57 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autocomplete-style stop name lookups through DatabaseDriver as the network grows. The queries are fixed
+ * fragments of the generator's street names, so every run does the same work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StopNameSearchBenchmark {
+    private static final String[] QUERIES = {"Ma", "Jeff", "ugby St", "Hydralic", "Preston Ave & Cherry"};
+
+    @Param({"1000", "100000"})
+    public int stopCount;
+
+    private Path databaseFile;
+    private DatabaseDriver databaseDriver;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        SyntheticNetworkGenerator generator = new SyntheticNetworkGenerator(42);
+        List<Stop> stops = generator.generateStops(stopCount);
+        databaseFile = Files.createTempFile("stop-name-search-benchmark", ".sqlite");
+        SyntheticNetworkGenerator.writeDatabase(databaseFile.toString(), stops, List.of());
+        databaseDriver = new DatabaseDriver(databaseFile.toString());
+        databaseDriver.connect();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, SQLException {
+        databaseDriver.disconnect();
+        Files.deleteIfExists(databaseFile);
+    }
+
+    @Benchmark
+    public List<Stop> getStopsByNamePrefix() throws SQLException {
+        return databaseDriver.getStopsByNamePrefix(QUERIES[next++ % QUERIES.length], 10);
+    }
+
+    @Benchmark
+    public List<Stop> searchStopsByName() throws SQLException {
+        return databaseDriver.searchStopsByName(QUERIES[next++ % QUERIES.length], 10);
+    }
+}
@@ -0,0 +1,66 @@
+package edu.virginia.sde.hw5;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full-table scans over a StopTable, next to the StopSpatialIndex lookup they compete with. Run once as configured
+ * (vectorized) and once with -PjmhIncludes=StopTable and the module removed from jvmArgsAppend to measure the scalar
+ * fallback.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StopTableBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int stopCount;
+
+    private StopTable stopTable;
+    private StopSpatialIndex stopIndex;
+    private double[] latitudes;
+    private double[] longitudes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Stop> stops = new SyntheticNetworkGenerator(42).generateStops(stopCount);
+        stopTable = new StopTable(stops);
+        stopIndex = new StopSpatialIndex(stops);
+        Random random = new Random(7);
+        double extent = Math.sqrt(stopCount) * SyntheticNetworkGenerator.GRID_SPACING;
+        latitudes = new double[QUERIES];
+        longitudes = new double[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            latitudes[i] = SyntheticNetworkGenerator.ORIGIN_LATITUDE + random.nextDouble() * extent;
+            longitudes[i] = SyntheticNetworkGenerator.ORIGIN_LONGITUDE + random.nextDouble() * extent;
+        }
+    }
+
+    @Benchmark
+    public int nearestRowScan() {
+        int i = next++ & (QUERIES - 1);
+        return stopTable.nearestRow(latitudes[i], longitudes[i]);
+    }
+
+    @Benchmark
+    public int[] rowsWithinBoxScan() {
+        int i = next++ & (QUERIES - 1);
+        return stopTable.rowsWithinBox(latitudes[i], longitudes[i],
+                latitudes[i] + 10 * SyntheticNetworkGenerator.GRID_SPACING,
+                longitudes[i] + 10 * SyntheticNetworkGenerator.GRID_SPACING);
+    }
+
+    @Benchmark
+    public Object nearestSpatialIndex() {
+        int i = next++ & (QUERIES - 1);
+        return stopIndex.nearest(latitudes[i], longitudes[i]);
+    }
+}
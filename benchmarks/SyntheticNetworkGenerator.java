@@ -0,0 +1,201 @@
+package edu.virginia.sde.hw5;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible transit networks of any size for benchmarks. Stops sit on a jittered square grid around
+ * Charlottesville, about 100 m apart, and each bus line walks a monotone staircase across the grid, so routes never
+ * revisit a stop and neighbouring lines share stops where they cross. The same seed always yields the same network.
+ */
+public class SyntheticNetworkGenerator {
+    public static final double ORIGIN_LATITUDE = 38.0;
+    public static final double ORIGIN_LONGITUDE = -78.5;
+    public static final double GRID_SPACING = 0.001;
+
+    /* By default a typical stop is on two lines: one line per 20 stops, each up to 40 stops long */
+    public static final int DEFAULT_STOPS_PER_LINE = 40;
+    public static final int STOPS_PER_LINE_COUNT = 20;
+
+    private static final String[] STREET_NAMES = {
+            "Main", "Market", "Water", "High", "Jefferson", "Preston", "Rugby", "Emmet", "Cherry", "Maple",
+            "Grove", "Park", "Ridge", "Fontaine", "Barracks", "Hydraulic", "Locust", "Monticello", "Avon", "Elliott"
+    };
+    private static final String[] STREET_TYPES = {"St", "Ave", "Rd", "Blvd", "Ln"};
+
+    private final long seed;
+
+    public SyntheticNetworkGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Generate stopCount stops with ids 1 to stopCount, laid out row by row on the grid
+     *
+     * @throws IllegalArgumentException if stopCount is negative
+     */
+    public List<Stop> generateStops(int stopCount) {
+        if (stopCount < 0) {
+            throw new IllegalArgumentException("stopCount must not be negative: " + stopCount);
+        }
+        Random random = new Random(seed);
+        int side = gridSide(stopCount);
+        List<Stop> stops = new ArrayList<>(stopCount);
+        for (int i = 0; i < stopCount; i++) {
+            int row = i / side;
+            int column = i % side;
+            double latitude = ORIGIN_LATITUDE + (row + jitter(random)) * GRID_SPACING;
+            double longitude = ORIGIN_LONGITUDE + (column + jitter(random)) * GRID_SPACING;
+            String name = STREET_NAMES[random.nextInt(STREET_NAMES.length)] + " "
+                    + STREET_TYPES[random.nextInt(STREET_TYPES.length)] + " & "
+                    + STREET_NAMES[random.nextInt(STREET_NAMES.length)] + " "
+                    + STREET_TYPES[random.nextInt(STREET_TYPES.length)] + " #" + (i + 1);
+            stops.add(new Stop(i + 1, name, latitude, longitude));
+        }
+        return stops;
+    }
+
+    /**
+     * Generate the default number of lines for stops: one per STOPS_PER_LINE_COUNT stops, each up to
+     * DEFAULT_STOPS_PER_LINE stops long
+     */
+    public List<BusLine> generateBusLines(List<Stop> stops) {
+        return generateBusLines(stops, Math.max(1, stops.size() / STOPS_PER_LINE_COUNT), DEFAULT_STOPS_PER_LINE);
+    }
+
+    /**
+     * Generate lineCount bus lines with ids 1 to lineCount over stops, which must come from generateStops(). Each
+     * line starts at a random stop and takes up to maxStopsPerLine stops, stopping early at the edge of the grid.
+     *
+     * @throws IllegalArgumentException if stops is empty while lines are requested, or a count is negative
+     */
+    public List<BusLine> generateBusLines(List<Stop> stops, int lineCount, int maxStopsPerLine) {
+        if (lineCount < 0 || maxStopsPerLine < 0) {
+            throw new IllegalArgumentException("lineCount and maxStopsPerLine must not be negative");
+        }
+        if (stops.isEmpty() && lineCount > 0) {
+            throw new IllegalArgumentException("Cannot generate bus lines without stops");
+        }
+        Random random = new Random(~seed);
+        int side = gridSide(stops.size());
+        List<BusLine> busLines = new ArrayList<>(lineCount);
+        for (int line = 1; line <= lineCount; line++) {
+            int current = random.nextInt(stops.size());
+            int rowStep = random.nextBoolean() ? 1 : -1;
+            int columnStep = random.nextBoolean() ? 1 : -1;
+            Route route = new Route();
+            route.add(stops.get(current));
+            while (route.size() < maxStopsPerLine) {
+                int row = current / side;
+                int column = current % side;
+                int down = (row + rowStep) * side + column;
+                int across = row * side + column + columnStep;
+                boolean canMoveDown = row + rowStep >= 0 && down < stops.size();
+                boolean canMoveAcross = column + columnStep >= 0 && column + columnStep < side
+                        && across < stops.size();
+                if (canMoveDown && (!canMoveAcross || random.nextBoolean())) {
+                    current = down;
+                } else if (canMoveAcross) {
+                    current = across;
+                } else {
+                    break;
+                }
+                route.add(stops.get(current));
+            }
+            busLines.add(new BusLine(line, random.nextInt(10) != 0,
+                    "Synthetic Line " + line, "S" + line, route));
+        }
+        return busLines;
+    }
+
+    /**
+     * Create the tables in a SQLite file and bulk load stops and busLines into it
+     */
+    public static void writeDatabase(String sqliteFilename, List<Stop> stops, List<BusLine> busLines)
+            throws SQLException {
+        DatabaseDriver databaseDriver = new DatabaseDriver(sqliteFilename);
+        databaseDriver.connect();
+        try {
+            databaseDriver.createTables();
+            databaseDriver.commit();
+            databaseDriver.beginBulkLoad();
+            databaseDriver.addStops(stops);
+            databaseDriver.addBusLines(busLines);
+            databaseDriver.commit();
+            databaseDriver.endBulkLoad();
+        } finally {
+            databaseDriver.disconnect();
+        }
+    }
+
+    /**
+     * Write a document in the format of the "stops" endpoint, with a "stops" array and a "routes" array
+     */
+    public static void writeStopsFeed(Path file, List<Stop> stops, List<BusLine> busLines) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\"stops\":[");
+            for (int i = 0; i < stops.size(); i++) {
+                Stop stop = stops.get(i);
+                writer.write(i == 0 ? "{\"id\":" : ",{\"id\":");
+                writer.write(Integer.toString(stop.getId()));
+                writer.write(",\"name\":");
+                writer.write(JSONObject.quote(stop.getName()));
+                writer.write(",\"position\":[" + stop.getLatitude() + "," + stop.getLongitude() + "]}");
+            }
+            writer.write("],\"routes\":[");
+            for (int i = 0; i < busLines.size(); i++) {
+                BusLine busLine = busLines.get(i);
+                writer.write(i == 0 ? "{\"id\":" : ",{\"id\":");
+                writer.write(Integer.toString(busLine.getId()));
+                writer.write(",\"stops\":[");
+                Route route = busLine.getRoute();
+                for (int position = 0; position < route.size(); position++) {
+                    if (position > 0) {
+                        writer.write(',');
+                    }
+                    writer.write(Integer.toString(route.get(position).getId()));
+                }
+                writer.write("]}");
+            }
+            writer.write("]}");
+        }
+    }
+
+    /**
+     * Write a document in the format of the "lines" endpoint
+     */
+    public static void writeLinesFeed(Path file, List<BusLine> busLines) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\"lines\":[");
+            for (int i = 0; i < busLines.size(); i++) {
+                BusLine busLine = busLines.get(i);
+                writer.write(i == 0 ? "{\"id\":" : ",{\"id\":");
+                writer.write(Integer.toString(busLine.getId()));
+                writer.write(",\"is_active\":" + busLine.isActive());
+                writer.write(",\"long_name\":");
+                writer.write(JSONObject.quote(busLine.getLongName()));
+                writer.write(",\"short_name\":");
+                writer.write(JSONObject.quote(busLine.getShortName()));
+                writer.write('}');
+            }
+            writer.write("]}");
+        }
+    }
+
+    private static int gridSide(int stopCount) {
+        return Math.max(1, (int) Math.ceil(Math.sqrt(stopCount)));
+    }
+
+    private static double jitter(Random random) {
+        return (random.nextDouble() - 0.5) * 0.6;
+    }
+}